@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Timings and counts of a deployment of features.
+ *
+ * The time spent in each phase of the deployment is given in milliseconds,
+ * the phases being listed in the order they have been run.
+ */
+public class DeploymentStatistics {
+
+    /** Computing the resources and prerequisites of the requested features. */
+    public static final String PHASE_PREPARE = "prepare";
+    /** Downloading the bundles of the features. */
+    public static final String PHASE_DOWNLOAD = "download";
+    /** Resolving the features and bundles. */
+    public static final String PHASE_RESOLVE = "resolve";
+    /** Computing the bundles to install, update or uninstall. */
+    public static final String PHASE_COMPUTE = "compute";
+    public static final String PHASE_STOP = "stop";
+    public static final String PHASE_UNINSTALL = "uninstall";
+    public static final String PHASE_UPDATE = "update";
+    public static final String PHASE_INSTALL = "install";
+    /** Saving the state and installing the configurations of the features. */
+    public static final String PHASE_CONFIGURE = "configure";
+    public static final String PHASE_REFRESH = "refresh";
+    public static final String PHASE_START = "start";
+
+    /** Artifacts provided by the download manager, whether downloaded or found in a local repository. */
+    public static final String PROVIDED_ARTIFACTS = "providedArtifacts";
+    /** Size of the artifacts provided by the download manager. */
+    public static final String PROVIDED_BYTES = "providedBytes";
+    public static final String INSTALLED_FEATURES = "installedFeatures";
+    public static final String UNINSTALLED_FEATURES = "uninstalledFeatures";
+    public static final String STOPPED_BUNDLES = "stoppedBundles";
+    public static final String UNINSTALLED_BUNDLES = "uninstalledBundles";
+    public static final String UPDATED_BUNDLES = "updatedBundles";
+    public static final String INSTALLED_BUNDLES = "installedBundles";
+    public static final String REFRESHED_BUNDLES = "refreshedBundles";
+    public static final String STARTED_BUNDLES = "startedBundles";
+
+    private long startTime;
+    private long endTime;
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private final Map<String, Long> counters = new LinkedHashMap<>();
+
+    /**
+     * Marks the start of the deployment, unless it has already been started.
+     *
+     * @return the current time
+     */
+    public synchronized long start() {
+        long now = System.currentTimeMillis();
+        if (startTime == 0) {
+            startTime = now;
+        }
+        return now;
+    }
+
+    public synchronized void end() {
+        endTime = System.currentTimeMillis();
+    }
+
+    public synchronized void addPhase(String phase, long duration) {
+        Long previous = phases.get(phase);
+        phases.put(phase, previous != null ? previous + duration : duration);
+    }
+
+    public synchronized void addCounter(String counter, long value) {
+        Long previous = counters.get(counter);
+        counters.put(counter, previous != null ? previous + value : value);
+    }
+
+    /**
+     * Adds the timings and counts of another deployment, which has been done as part of this one.
+     */
+    public synchronized void add(DeploymentStatistics other) {
+        synchronized (other) {
+            if (startTime == 0 || other.startTime != 0 && other.startTime < startTime) {
+                startTime = other.startTime;
+            }
+            endTime = Math.max(endTime, other.endTime);
+            for (Map.Entry<String, Long> entry : other.phases.entrySet()) {
+                addPhase(entry.getKey(), entry.getValue());
+            }
+            for (Map.Entry<String, Long> entry : other.counters.entrySet()) {
+                addCounter(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    public synchronized long getStartTime() {
+        return startTime;
+    }
+
+    public synchronized long getDuration() {
+        return endTime >= startTime ? endTime - startTime : 0;
+    }
+
+    public synchronized Map<String, Long> getPhases() {
+        return new LinkedHashMap<>(phases);
+    }
+
+    public synchronized long getPhase(String phase) {
+        Long duration = phases.get(phase);
+        return duration != null ? duration : 0;
+    }
+
+    public synchronized Map<String, Long> getCounters() {
+        return new LinkedHashMap<>(counters);
+    }
+
+    public synchronized long getCounter(String counter) {
+        Long value = counters.get(counter);
+        return value != null ? value : 0;
+    }
+
+    /**
+     * Returns all the statistics as a flat map, the phases being prefixed with <code>phase.</code>
+     */
+    public synchronized Map<String, Long> toMap() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        map.put("startTime", startTime);
+        map.put("duration", getDuration());
+        for (Map.Entry<String, Long> entry : phases.entrySet()) {
+            map.put("phase." + entry.getKey(), entry.getValue());
+        }
+        map.putAll(counters);
+        return map;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DeploymentStatistics[duration=" + getDuration() + ", phases=" + phases + ", counters=" + counters + "]";
+    }
+
+}
@@ -27,6 +27,7 @@ public final class EventConstants {
 
     public static final String FEATURE_NAME = "name";
     public static final String FEATURE_VERSION = "version";
+    public static final String DEPLOYMENT_STATISTICS = "statistics";
 
     public static final String REPOSITORY_NAME = "name";
     public static final String REPOSITORY_URI = "uri";
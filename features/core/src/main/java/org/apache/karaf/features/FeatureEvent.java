@@ -29,13 +29,19 @@ public class FeatureEvent extends EventObject {
     private final Feature feature;
     private final String region;
     private final boolean replay;
+    private final DeploymentStatistics statistics;
 
     public FeatureEvent(EventType type, Feature feature, String region, boolean replay) {
+        this(type, feature, region, replay, null);
+    }
+
+    public FeatureEvent(EventType type, Feature feature, String region, boolean replay, DeploymentStatistics statistics) {
         super(feature);
         this.type = type;
         this.feature = feature;
         this.region = region;
         this.replay = replay;
+        this.statistics = statistics;
     }
 
     public EventType getType() {
@@ -53,4 +59,12 @@ public class FeatureEvent extends EventObject {
     public boolean isReplay() {
         return replay;
     }
+
+    /**
+     * Returns the statistics of the deployment which installed or uninstalled the feature,
+     * or <code>null</code> for replayed events.
+     */
+    public DeploymentStatistics getDeploymentStatistics() {
+        return statistics;
+    }
 }
@@ -142,4 +142,6 @@ public interface FeaturesService {
 
     String[] getRepositoryNames();
 
+    DeploymentStatistics getLastDeploymentStatistics();
+
 }
@@ -28,24 +28,41 @@ public abstract class AbstractRetryableDownloadTask extends AbstractDownloadTask
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractRetryableDownloadTask.class);
 
-    private long scheduleDelay = 250;
     private int scheduleNbRun = 0;
+    private DownloadService downloadService;
 
     public AbstractRetryableDownloadTask(ScheduledExecutorService executorService, String url) {
         super(executorService, url);
     }
 
+    /**
+     * Sets the service giving the retry policy and the content store to use.
+     */
+    public void setDownloadService(DownloadService downloadService) {
+        this.downloadService = downloadService;
+    }
+
     public void run() {
         try {
             try {
-                File file = download();
+                ContentStore store = downloadService != null && ContentStore.isStorable(url)
+                        ? downloadService.getContentStore() : null;
+                File file = store != null ? store.get(url) : null;
+                if (file == null) {
+                    file = download();
+                    if (store != null) {
+                        file = store.put(url, file);
+                    }
+                }
                 setFile(file);
             } catch (IOException e) {
-                if (++scheduleNbRun < 5) {
-                    long delay = (long)(scheduleDelay * 3 / 2 + Math.random() * scheduleDelay / 2);
+                int retries = downloadService != null ? downloadService.getRetries() : DownloadService.DEFAULT_RETRIES;
+                if (++scheduleNbRun <= retries) {
+                    long delay = downloadService != null
+                            ? downloadService.getRetryDelay(scheduleNbRun)
+                            : DownloadService.DEFAULT_RETRY_DELAY << (scheduleNbRun - 1);
                     LOGGER.debug("Error downloading " + url + ": " + e.getMessage() + ". Retrying in approx " + delay + " ms.");
-                    executorService.schedule(this, scheduleDelay, TimeUnit.MILLISECONDS);
-                    scheduleDelay *= 2;
+                    executorService.schedule(this, delay, TimeUnit.MILLISECONDS);
                 } else {
                     setException(new IOException("Error downloading " + url, e));
                 }
@@ -0,0 +1,351 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features.internal.download.impl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Content-addressed store of the downloaded artifacts.
+ *
+ * Artifacts are stored under the SHA-256 digest of their content, so that an artifact available
+ * from several urls is only stored once. The digest of each url is appended to an index, so that
+ * artifacts which can not change are not downloaded again, including after a restart.
+ * Only maven artifacts with a fixed release version are stored.
+ *
+ * The size of the store is bounded: the least recently used urls are evicted, and their artifacts
+ * deleted, once the stored artifacts exceed the maximum size. The index is rewritten when loaded
+ * and after evictions, so that it does not grow with the stale entries.
+ */
+public class ContentStore {
+
+    public static final long DEFAULT_MAX_SIZE = 1024L * 1024L * 1024L;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContentStore.class);
+
+    private static final String INDEX = "index";
+
+    private final File directory;
+    private final long maxSize;
+    // url to digest, in access order so that the eldest entry is the least recently used one
+    private final LinkedHashMap<String, String> index = new LinkedHashMap<>(16, 0.75f, true);
+    // digest to number of urls referencing it
+    private final Map<String, Integer> references = new HashMap<>();
+    private long size;
+    private int appended;
+    private boolean loaded;
+
+    public ContentStore(File directory) {
+        this(directory, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param directory the directory of the store.
+     * @param maxSize   the maximum size in bytes of the stored artifacts.
+     */
+    public ContentStore(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Checks if the artifact at the given url can be stored, i.e. if its content can not change.
+     * This is only the case for maven urls with a concrete release version: snapshots, version ranges,
+     * <code>LATEST</code>, <code>RELEASE</code> and unversioned urls may resolve to other artifacts later,
+     * and other urls, such as http urls, give no such guarantee.
+     */
+    public static boolean isStorable(String url) {
+        if (url.startsWith("blueprint:") || url.startsWith("spring:")) {
+            return false;
+        }
+        String stripped = DownloadManagerHelper.stripUrl(url);
+        if (!stripped.startsWith("mvn:")) {
+            return false;
+        }
+        String coordinates = stripped.substring("mvn:".length());
+        if (coordinates.contains("!")) {
+            if (coordinates.startsWith("file:")) {
+                return false;
+            }
+            coordinates = coordinates.substring(coordinates.lastIndexOf('!') + 1);
+        }
+        String[] parts = coordinates.split("/");
+        if (parts.length < 3) {
+            return false;
+        }
+        String version = parts[2];
+        return !version.isEmpty()
+                && !version.endsWith("SNAPSHOT")
+                && !"LATEST".equals(version)
+                && !"RELEASE".equals(version)
+                && version.indexOf('[') < 0 && version.indexOf('(') < 0
+                && version.indexOf(']') < 0 && version.indexOf(')') < 0
+                && version.indexOf(',') < 0;
+    }
+
+    /**
+     * Returns the stored artifact for the given url, or <code>null</code> if it has not been stored.
+     */
+    public File get(String url) {
+        String digest;
+        synchronized (index) {
+            load();
+            digest = index.get(url);
+        }
+        if (digest != null) {
+            File file = getFile(digest);
+            if (file.isFile()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stores the given artifact downloaded from the given url.
+     *
+     * @return the stored artifact, or the given file if it could not be stored.
+     */
+    public File put(String url, File file) {
+        try {
+            String digest = digest(file);
+            File stored = getFile(digest);
+            if (!stored.isFile()) {
+                File dir = stored.getParentFile();
+                dir.mkdirs();
+                File tmp = File.createTempFile(digest, ".tmp", dir);
+                try {
+                    // use a hard link when possible to avoid duplicating the local maven repository
+                    tmp.delete();
+                    try {
+                        Files.createLink(tmp.toPath(), file.toPath());
+                    } catch (IOException | UnsupportedOperationException e) {
+                        Files.copy(file.toPath(), tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    Files.move(tmp.toPath(), stored.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    tmp.delete();
+                }
+            }
+            synchronized (index) {
+                load();
+                if (!stored.isFile()) {
+                    // evicted concurrently
+                    return file;
+                }
+                String previous = index.put(url, digest);
+                if (!digest.equals(previous)) {
+                    if (previous != null) {
+                        release(previous);
+                    }
+                    acquire(digest);
+                    try (
+                            OutputStream os = new FileOutputStream(new File(directory, INDEX), true)
+                    ) {
+                        os.write((digest + " " + url + "\n").getBytes("UTF-8"));
+                    }
+                    appended++;
+                    if (evict() || appended > index.size()) {
+                        writeIndex();
+                    }
+                }
+            }
+            return stored.isFile() ? stored : file;
+        } catch (IOException e) {
+            LOGGER.debug("Unable to store " + url, e);
+            return file;
+        }
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        File file = new File(directory, INDEX);
+        if (!file.isFile()) {
+            return;
+        }
+        int lines = 0;
+        try (
+                BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))
+        ) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int idx = line.indexOf(' ');
+                if (idx > 0) {
+                    String url = line.substring(idx + 1);
+                    // re-insert so that the order of the index is kept as the access order
+                    index.remove(url);
+                    index.put(url, line.substring(0, idx));
+                    lines++;
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Unable to load download index " + file, e);
+        }
+        for (Iterator<String> it = index.values().iterator(); it.hasNext();) {
+            String digest = it.next();
+            if (getFile(digest).isFile()) {
+                acquire(digest);
+            } else {
+                it.remove();
+            }
+        }
+        purge();
+        if (evict() || lines > index.size()) {
+            writeIndex();
+        }
+    }
+
+    /**
+     * Deletes the stored artifacts which are not referenced by the index anymore.
+     */
+    private void purge() {
+        File[] dirs = directory.listFiles();
+        if (dirs == null) {
+            return;
+        }
+        for (File dir : dirs) {
+            File[] files = dir.isDirectory() ? dir.listFiles() : null;
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                if (!references.containsKey(file.getName())) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Evicts the least recently used urls until the store fits in its maximum size.
+     *
+     * @return <code>true</code> if some urls have been evicted.
+     */
+    private boolean evict() {
+        boolean evicted = false;
+        Iterator<String> it = index.values().iterator();
+        while (size > maxSize && it.hasNext()) {
+            String digest = it.next();
+            it.remove();
+            release(digest);
+            evicted = true;
+        }
+        return evicted;
+    }
+
+    private void acquire(String digest) {
+        Integer count = references.get(digest);
+        if (count == null) {
+            size += getFile(digest).length();
+            references.put(digest, 1);
+        } else {
+            references.put(digest, count + 1);
+        }
+    }
+
+    private void release(String digest) {
+        Integer count = references.get(digest);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            references.put(digest, count - 1);
+        } else {
+            references.remove(digest);
+            File file = getFile(digest);
+            size -= file.length();
+            file.delete();
+        }
+    }
+
+    /**
+     * Rewrites the index with the current entries only.
+     */
+    private void writeIndex() {
+        File file = new File(directory, INDEX);
+        File tmp = null;
+        try {
+            directory.mkdirs();
+            tmp = File.createTempFile(INDEX, ".tmp", directory);
+            try (
+                    OutputStream os = new FileOutputStream(tmp)
+            ) {
+                StringBuilder sb = new StringBuilder();
+                for (Map.Entry<String, String> entry : index.entrySet()) {
+                    sb.append(entry.getValue()).append(' ').append(entry.getKey()).append('\n');
+                }
+                os.write(sb.toString().getBytes("UTF-8"));
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            appended = 0;
+        } catch (IOException e) {
+            LOGGER.debug("Unable to write download index " + file, e);
+        } finally {
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    private File getFile(String digest) {
+        return new File(new File(directory, digest.substring(0, 2)), digest);
+    }
+
+    private static String digest(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        try (
+                InputStream is = new FileInputStream(file)
+        ) {
+            byte[] buffer = new byte[8192];
+            int l;
+            while ((l = is.read(buffer)) > 0) {
+                digest.update(buffer, 0, l);
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return sb.toString();
+    }
+
+}
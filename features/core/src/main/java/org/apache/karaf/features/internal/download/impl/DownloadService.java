@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features.internal.download.impl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.karaf.features.internal.download.DownloadManager;
+import org.ops4j.pax.url.mvn.MavenResolver;
+
+/**
+ * Long-lived service shared by the download managers.
+ *
+ * The service owns the threads used to download artifacts, limits the number of concurrent
+ * downloads from a given host, retries the failed downloads with an exponential backoff,
+ * and keeps the downloaded artifacts in an optional {@link ContentStore}.
+ * Maven artifacts which are not downloaded from an inlined repository are resolved through
+ * the configured repositories, so they all share a single limit.
+ */
+public class DownloadService implements Closeable {
+
+    public static final int DEFAULT_THREADS = 8;
+    public static final int DEFAULT_MAX_CONCURRENT_PER_HOST = 0; // Unlimited
+    public static final int DEFAULT_RETRIES = 4;
+    public static final long DEFAULT_RETRY_DELAY = 250;
+
+    private static final long MAX_RETRY_DELAY = 60000;
+
+    private final int threads;
+    private final int maxConcurrentPerHost;
+    private final int retries;
+    private final long retryDelay;
+    private final ContentStore contentStore;
+    private final boolean shared;
+    private ScheduledExecutorService executorService;
+
+    private final Map<String, Integer> running = new HashMap<>();
+    private final Map<String, Deque<AbstractDownloadTask>> queued = new HashMap<>();
+
+    /**
+     * @param threads              the number of download threads.
+     * @param maxConcurrentPerHost the maximum number of concurrent downloads from a host, or 0 for no limit.
+     * @param retries              the number of times a failed download is retried.
+     * @param retryDelay           the delay before the first retry, in milliseconds, doubled for each retry.
+     * @param storeDirectory       the directory of the content store, or <code>null</code> to disable it.
+     */
+    public DownloadService(int threads, int maxConcurrentPerHost, int retries, long retryDelay, File storeDirectory) {
+        this(threads, maxConcurrentPerHost, retries, retryDelay, storeDirectory, ContentStore.DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param threads              the number of download threads.
+     * @param maxConcurrentPerHost the maximum number of concurrent downloads from a host, or 0 for no limit.
+     * @param retries              the number of times a failed download is retried.
+     * @param retryDelay           the delay before the first retry, in milliseconds, doubled for each retry.
+     * @param storeDirectory       the directory of the content store, or <code>null</code> to disable it.
+     * @param storeMaxSize         the maximum size in bytes of the content store.
+     */
+    public DownloadService(int threads, int maxConcurrentPerHost, int retries, long retryDelay, File storeDirectory, long storeMaxSize) {
+        this.threads = threads;
+        this.maxConcurrentPerHost = maxConcurrentPerHost;
+        this.retries = retries;
+        this.retryDelay = retryDelay;
+        this.contentStore = storeDirectory != null ? new ContentStore(storeDirectory, storeMaxSize) : null;
+        this.shared = false;
+    }
+
+    /**
+     * Creates a service with the default settings using the given executor, which is not shut down when closing the service.
+     */
+    public DownloadService(ScheduledExecutorService executorService) {
+        this.threads = 0;
+        this.maxConcurrentPerHost = DEFAULT_MAX_CONCURRENT_PER_HOST;
+        this.retries = DEFAULT_RETRIES;
+        this.retryDelay = DEFAULT_RETRY_DELAY;
+        this.contentStore = null;
+        this.shared = true;
+        this.executorService = executorService;
+    }
+
+    public DownloadManager createDownloadManager(MavenResolver resolver) {
+        return new MavenDownloadManager(resolver, this);
+    }
+
+    public synchronized ScheduledExecutorService getExecutorService() {
+        if (executorService == null) {
+            final AtomicInteger count = new AtomicInteger();
+            executorService = Executors.newScheduledThreadPool(threads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Karaf features downloader " + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executorService;
+    }
+
+    public ContentStore getContentStore() {
+        return contentStore;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    /**
+     * Returns the delay before the given retry of a download, with some jitter
+     * so that failed downloads from the same host are not all retried at once.
+     *
+     * @param retry the retry number, starting at 1.
+     */
+    public long getRetryDelay(int retry) {
+        long delay = retryDelay;
+        for (int i = 1; i < retry && delay < MAX_RETRY_DELAY; i++) {
+            delay *= 2;
+        }
+        delay = Math.min(delay, MAX_RETRY_DELAY);
+        return delay / 2 + (long) (Math.random() * delay / 2);
+    }
+
+    /**
+     * Runs the given task when less than the maximum number of downloads are running for its host.
+     */
+    public void execute(AbstractDownloadTask task) {
+        if (maxConcurrentPerHost <= 0) {
+            getExecutorService().execute(task);
+            return;
+        }
+        String host = getHost(task.getUrl());
+        synchronized (running) {
+            Integer count = running.get(host);
+            if (count != null && count >= maxConcurrentPerHost) {
+                Deque<AbstractDownloadTask> tasks = queued.get(host);
+                if (tasks == null) {
+                    tasks = new ArrayDeque<>();
+                    queued.put(host, tasks);
+                }
+                tasks.add(task);
+                return;
+            }
+            running.put(host, count != null ? count + 1 : 1);
+        }
+        start(host, task);
+    }
+
+    private void start(final String host, AbstractDownloadTask task) {
+        task.addListener(new FutureListener<AbstractDownloadTask>() {
+            @Override
+            public void operationComplete(AbstractDownloadTask future) {
+                next(host);
+            }
+        });
+        getExecutorService().execute(task);
+    }
+
+    private void next(String host) {
+        AbstractDownloadTask task = null;
+        synchronized (running) {
+            Deque<AbstractDownloadTask> tasks = queued.get(host);
+            if (tasks != null) {
+                task = tasks.poll();
+                if (tasks.isEmpty()) {
+                    queued.remove(host);
+                }
+            }
+            if (task == null) {
+                int count = running.get(host) - 1;
+                if (count > 0) {
+                    running.put(host, count);
+                } else {
+                    running.remove(host);
+                }
+                return;
+            }
+        }
+        start(host, task);
+    }
+
+    static String getHost(String url) {
+        String u = DownloadManagerHelper.stripUrl(url);
+        if (u.startsWith("mvn:")) {
+            u = DownloadManagerHelper.stripInlinedMavenRepositoryUrl(u);
+            if (u == null) {
+                return "mvn:";
+            }
+        }
+        try {
+            URL parsed = new URL(u);
+            return parsed.getHost() != null && !parsed.getHost().isEmpty()
+                    ? parsed.getHost() : parsed.getProtocol() + ":";
+        } catch (MalformedURLException e) {
+            int idx = u.indexOf(':');
+            return idx > 0 ? u.substring(0, idx + 1) : u;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (executorService != null && !shared) {
+            executorService.shutdownNow();
+            executorService = null;
+        }
+    }
+
+}
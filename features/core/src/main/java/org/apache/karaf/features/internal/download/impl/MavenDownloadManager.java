@@ -37,6 +37,8 @@ public class MavenDownloadManager implements DownloadManager {
 
     protected final ScheduledExecutorService executorService;
 
+    protected final DownloadService downloadService;
+
     protected File tmpPath;
 
     private final Map<String, AbstractDownloadTask> downloaded = new HashMap<>();
@@ -48,8 +50,13 @@ public class MavenDownloadManager implements DownloadManager {
     private volatile int allPending = 0;
 
     public MavenDownloadManager(MavenResolver mavenResolver, ScheduledExecutorService executorService) {
+        this(mavenResolver, new DownloadService(executorService));
+    }
+
+    public MavenDownloadManager(MavenResolver mavenResolver, DownloadService downloadService) {
         this.mavenResolver = mavenResolver;
-        this.executorService = executorService;
+        this.downloadService = downloadService;
+        this.executorService = downloadService.getExecutorService();
 
         String karafRoot = System.getProperty("karaf.home", "karaf");
         String karafData = System.getProperty("karaf.data", karafRoot + "/data");
@@ -101,6 +108,9 @@ public class MavenDownloadManager implements DownloadManager {
             }
             if (task == null) {
                 task = createDownloadTask(location);
+                if (task instanceof AbstractRetryableDownloadTask) {
+                    ((AbstractRetryableDownloadTask) task).setDownloadService(downloadService);
+                }
             }
             synchronized (lock) {
                 AbstractDownloadTask prev = downloaded.get(location);
@@ -109,7 +119,12 @@ public class MavenDownloadManager implements DownloadManager {
                 }
                 if (prev == null) {
                     downloading.put(location, task);
-                    executorService.execute(task);
+                    if (task instanceof ChainedDownloadTask) {
+                        // only waits for the inner downloads
+                        executorService.execute(task);
+                    } else {
+                        downloadService.execute(task);
+                    }
                 } else {
                     task = prev;
                 }
@@ -29,6 +29,7 @@ import javax.management.Notification;
 import javax.management.ObjectName;
 import javax.management.openmbean.TabularData;
 
+import org.apache.karaf.features.DeploymentStatistics;
 import org.apache.karaf.features.Feature;
 import org.apache.karaf.features.FeatureEvent;
 import org.apache.karaf.features.FeaturesListener;
@@ -123,6 +124,11 @@ public class FeaturesServiceMBeanImpl extends StandardEmitterMBean implements
         }
     }
 
+    public Map<String, Long> getLastDeploymentStatistics() {
+        DeploymentStatistics statistics = featuresService.getLastDeploymentStatistics();
+        return statistics != null ? statistics.toMap() : Collections.<String, Long>emptyMap();
+    }
+
     public void addRepository(String uri) throws Exception {
         featuresService.addRepository(new URI(uri));
     }
@@ -17,6 +17,8 @@
 
 package org.apache.karaf.features.internal.model;
 
+import java.io.Serializable;
+
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlAttribute;
@@ -51,7 +53,9 @@ import org.apache.karaf.features.BundleInfo;
 @XmlType(name = "bundle", propOrder = {
         "value"
         })
-public class Bundle implements BundleInfo {
+public class Bundle implements BundleInfo, Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     @XmlValue
     @XmlSchemaType(name = "anyURI")
@@ -16,6 +16,8 @@
  */
 package org.apache.karaf.features.internal.model;
 
+import java.io.Serializable;
+
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlType;
@@ -41,7 +43,9 @@ import javax.xml.bind.annotation.XmlValue;
  */
 @XmlAccessorType(XmlAccessType.FIELD)
 @XmlType(name = "capability", propOrder = {"value"})
-public class Capability implements org.apache.karaf.features.Capability {
+public class Capability implements org.apache.karaf.features.Capability, Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     @XmlValue
     protected String value;
@@ -36,6 +36,8 @@ import org.apache.karaf.features.Feature;
         })
 public class Conditional extends Content implements org.apache.karaf.features.Conditional {
 
+    private static final long serialVersionUID = 1L;
+
     @XmlElement(name = "condition")
     protected List<String> condition;
 
@@ -17,6 +17,7 @@
 package org.apache.karaf.features.internal.model;
 
 import java.io.IOException;
+import java.io.Serializable;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -35,7 +36,9 @@ import org.apache.karaf.features.ConfigFileInfo;
 import org.apache.karaf.features.ConfigInfo;
 
 @XmlTransient
-public class Content {
+public class Content implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     protected List<Config> config;
     protected List<ConfigFile> configfile;
@@ -16,6 +16,8 @@
  */
 package org.apache.karaf.features.internal.model;
 
+import java.io.Serializable;
+
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlAttribute;
@@ -43,7 +45,9 @@ import javax.xml.bind.annotation.XmlValue;
  */
 @XmlAccessorType(XmlAccessType.FIELD)
 @XmlType(name = "dependency", propOrder = {"name"})
-public class Dependency implements org.apache.karaf.features.Dependency {
+public class Dependency implements org.apache.karaf.features.Dependency, Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     @XmlValue
     protected String name;
@@ -16,6 +16,7 @@
  */
 package org.apache.karaf.features.internal.model;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -27,7 +28,9 @@ import javax.xml.bind.annotation.XmlType;
 
 @XmlAccessorType(XmlAccessType.FIELD)
 @XmlType(name = "scoping", propOrder = {"imports", "exports"})
-public class Scoping implements org.apache.karaf.features.Scoping {
+public class Scoping implements org.apache.karaf.features.Scoping, Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     @XmlAttribute
     boolean acceptDependencies;
@@ -33,6 +33,8 @@ import org.apache.felix.resolver.ResolverImpl;
 import org.apache.felix.utils.properties.Properties;
 import org.apache.karaf.features.FeaturesListener;
 import org.apache.karaf.features.FeaturesService;
+import org.apache.karaf.features.internal.download.impl.ContentStore;
+import org.apache.karaf.features.internal.download.impl.DownloadService;
 import org.apache.karaf.features.internal.management.FeaturesServiceMBeanImpl;
 import org.apache.karaf.features.internal.repository.AggregateRepository;
 import org.apache.karaf.features.internal.repository.JsonRepository;
@@ -175,6 +177,13 @@ public class Activator extends BaseActivator {
         String featureResolutionRange = getString("featureResolutionRange", FeaturesService.DEFAULT_FEATURE_RESOLUTION_RANGE);
         String bundleUpdateRange = getString("bundleUpdateRange", FeaturesService.DEFAULT_BUNDLE_UPDATE_RANGE);
         String updateSnapshots = getString("updateSnapshots", FeaturesService.DEFAULT_UPDATE_SNAPSHOTS);
+        DownloadService downloadService = new DownloadService(
+                getInt("downloadThreads", DownloadService.DEFAULT_THREADS),
+                getInt("downloadMaxConcurrentPerHost", DownloadService.DEFAULT_MAX_CONCURRENT_PER_HOST),
+                getInt("downloadRetries", DownloadService.DEFAULT_RETRIES),
+                getLong("downloadRetryDelay", DownloadService.DEFAULT_RETRY_DELAY),
+                getBoolean("downloadContentStore", true) ? bundleContext.getDataFile("downloads") : null,
+                getLong("downloadContentStoreMaxSize", ContentStore.DEFAULT_MAX_SIZE));
         StateStorage stateStorage = new StateStorage() {
             @Override
             protected InputStream getInputStream() throws IOException {
@@ -210,7 +219,8 @@ public class Activator extends BaseActivator {
                 featureResolutionRange,
                 bundleUpdateRange,
                 updateSnapshots,
-                globalRepository);
+                globalRepository,
+                downloadService);
         register(FeaturesService.class, featuresService);
 
         featuresListenerTracker = new ServiceTracker<>(
@@ -262,6 +272,7 @@ public class Activator extends BaseActivator {
         }
         super.doStop();
         if (featuresService != null) {
+            featuresService.stop();
             featuresService = null;
         }
         if (digraph != null) {
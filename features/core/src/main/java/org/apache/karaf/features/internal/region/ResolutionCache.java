@@ -0,0 +1,441 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features.internal.region;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.felix.resolver.WrappedRequirement;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+import org.osgi.service.resolver.HostedCapability;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent cache of the wirings computed by the resolver.
+ *
+ * A wiring is stored under a digest of everything the resolver looks at: the resources
+ * of each subsystem with their capabilities and requirements, the sharing policies
+ * between the subsystems, the overrides and the feature resolution range.
+ * The wires are stored as indexes of resources, requirements and capabilities,
+ * so that an unchanged deployment can be wired again without running the resolver.
+ */
+public class ResolutionCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResolutionCache.class);
+
+    private static final int VERSION = 1;
+
+    private static final int MAX_ENTRIES = 16;
+
+    private static final String EXTENSION = ".wiring";
+
+    private final File directory;
+
+    public ResolutionCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Computes the key of the resolution of the given subsystems, or returns
+     * <code>null</code> if the resources can not be told apart reliably.
+     */
+    Key createKey(Subsystem root, Set<String> overrides, String featureResolutionRange) throws Exception {
+        final Map<Resource, String> descriptions = new IdentityHashMap<>();
+        StringBuilder policies = new StringBuilder();
+        describe(root, descriptions, policies);
+
+        List<Resource> resources = new ArrayList<>(descriptions.keySet());
+        Collections.sort(resources, new Comparator<Resource>() {
+            @Override
+            public int compare(Resource r1, Resource r2) {
+                return descriptions.get(r1).compareTo(descriptions.get(r2));
+            }
+        });
+
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        update(digest, Integer.toString(VERSION));
+        update(digest, new TreeSet<>(overrides).toString());
+        update(digest, String.valueOf(featureResolutionRange));
+        update(digest, policies.toString());
+        String previous = null;
+        for (Resource resource : resources) {
+            String description = descriptions.get(resource);
+            if (description.equals(previous)) {
+                return null;
+            }
+            update(digest, description);
+            previous = description;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return new Key(sb.toString(), resources);
+    }
+
+    /**
+     * Returns the cached wiring for the given key, or <code>null</code> if there is none.
+     */
+    Map<Resource, List<Wire>> load(Key key) {
+        File file = new File(directory, key.digest + EXTENSION);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (
+                DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))
+        ) {
+            if (dis.readInt() != VERSION || dis.readInt() != key.resources.size()) {
+                return null;
+            }
+            Map<Resource, List<Wire>> wiring = new HashMap<>();
+            int nbResources = dis.readInt();
+            for (int i = 0; i < nbResources; i++) {
+                Resource resource = key.resources.get(dis.readInt());
+                int nbWires = dis.readInt();
+                List<Wire> wires = new ArrayList<>(nbWires);
+                for (int j = 0; j < nbWires; j++) {
+                    Resource requirer = key.resources.get(dis.readInt());
+                    Resource reqOwner = key.resources.get(dis.readInt());
+                    Requirement requirement = reqOwner.getRequirements(null).get(dis.readInt());
+                    Resource provider = key.resources.get(dis.readInt());
+                    Resource capOwner = key.resources.get(dis.readInt());
+                    Capability capability = capOwner.getCapabilities(null).get(dis.readInt());
+                    if (reqOwner != requirer) {
+                        requirement = new HostedRequirement(requirer, requirement);
+                    }
+                    if (capOwner != provider) {
+                        capability = new HostedCapabilityImpl(provider, capability);
+                    }
+                    wires.add(new WireImpl(requirer, requirement, provider, capability));
+                }
+                wiring.put(resource, wires);
+            }
+            file.setLastModified(System.currentTimeMillis());
+            return wiring;
+        } catch (Exception e) {
+            LOGGER.debug("Unable to read cached resolution " + key.digest, e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the wiring computed by the resolver for the given key.
+     */
+    void store(Key key, Map<Resource, List<Wire>> wiring) {
+        File file = new File(directory, key.digest + EXTENSION);
+        File tmp = new File(directory, key.digest + ".tmp");
+        try {
+            directory.mkdirs();
+            try (
+                    DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))
+            ) {
+                dos.writeInt(VERSION);
+                dos.writeInt(key.resources.size());
+                dos.writeInt(wiring.size());
+                for (Map.Entry<Resource, List<Wire>> entry : wiring.entrySet()) {
+                    dos.writeInt(key.indexOf(entry.getKey()));
+                    dos.writeInt(entry.getValue().size());
+                    for (Wire wire : entry.getValue()) {
+                        Requirement requirement = wire.getRequirement();
+                        if (requirement instanceof WrappedRequirement) {
+                            requirement = ((WrappedRequirement) requirement).getDeclaredRequirement();
+                        }
+                        Capability capability = wire.getCapability();
+                        if (capability instanceof HostedCapability) {
+                            capability = ((HostedCapability) capability).getDeclaredCapability();
+                        }
+                        dos.writeInt(key.indexOf(wire.getRequirer()));
+                        dos.writeInt(key.indexOf(requirement.getResource()));
+                        dos.writeInt(indexOf(requirement.getResource().getRequirements(null), requirement));
+                        dos.writeInt(key.indexOf(wire.getProvider()));
+                        dos.writeInt(key.indexOf(capability.getResource()));
+                        dos.writeInt(indexOf(capability.getResource().getCapabilities(null), capability));
+                    }
+                }
+            }
+            if (!tmp.renameTo(file)) {
+                file.delete();
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("Unable to rename " + tmp + " to " + file);
+                }
+            }
+            purge();
+        } catch (Exception e) {
+            LOGGER.debug("Unable to cache resolution " + key.digest, e);
+            tmp.delete();
+        }
+    }
+
+    private void purge() {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(EXTENSION);
+            }
+        });
+        if (files != null && files.length > MAX_ENTRIES) {
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File f1, File f2) {
+                    return Long.compare(f2.lastModified(), f1.lastModified());
+                }
+            });
+            for (int i = MAX_ENTRIES; i < files.length; i++) {
+                files[i].delete();
+            }
+        }
+    }
+
+    private static void describe(Subsystem subsystem, Map<Resource, String> descriptions, StringBuilder policies) {
+        String region = subsystem.getName();
+        policies.append(region)
+                .append(' ').append(subsystem.getParent() != null ? subsystem.getParent().getName() : "")
+                .append(' ').append(normalize(subsystem.getImportPolicy()))
+                .append(' ').append(normalize(subsystem.getExportPolicy()))
+                .append('\n');
+        descriptions.put(subsystem, describe(subsystem, region));
+        for (Resource resource : subsystem.getInstallable()) {
+            descriptions.put(resource, describe(resource, region));
+        }
+        for (Subsystem child : subsystem.getChildren()) {
+            describe(child, descriptions, policies);
+        }
+    }
+
+    private static String describe(Resource resource, String region) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(region).append('\n');
+        sb.append(resource.getClass().getName()).append('\n');
+        if (resource instanceof BundleRevision) {
+            sb.append(((BundleRevision) resource).getBundle().getLocation()).append('\n');
+        }
+        for (Capability cap : resource.getCapabilities(null)) {
+            sb.append("c ").append(cap.getNamespace())
+                    .append(' ').append(normalize(cap.getDirectives()))
+                    .append(' ').append(normalize(cap.getAttributes()))
+                    .append('\n');
+        }
+        for (Requirement req : resource.getRequirements(null)) {
+            sb.append("r ").append(req.getNamespace())
+                    .append(' ').append(normalize(req.getDirectives()))
+                    .append(' ').append(normalize(req.getAttributes()))
+                    .append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String normalize(Map<String, ?> map) {
+        Map<String, Object> sorted = new TreeMap<>();
+        for (Map.Entry<String, ?> entry : map.entrySet()) {
+            Object value = entry.getValue();
+            if (value != null && value.getClass().isArray()) {
+                List<Object> list = new ArrayList<>();
+                for (int i = 0; i < Array.getLength(value); i++) {
+                    list.add(Array.get(value, i));
+                }
+                value = list;
+            } else if (value instanceof Collection && !(value instanceof List)) {
+                value = new TreeSet<>((Collection<?>) value);
+            }
+            sorted.put(entry.getKey(), value);
+        }
+        return sorted.toString();
+    }
+
+    private static void update(MessageDigest digest, String value) throws IOException {
+        digest.update(value.getBytes("UTF-8"));
+        digest.update((byte) 0);
+    }
+
+    private static int indexOf(List<?> list, Object object) throws IOException {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == object) {
+                return i;
+            }
+        }
+        throw new IOException("Unknown requirement or capability: " + object);
+    }
+
+    static class Key {
+        final String digest;
+        final List<Resource> resources;
+        final Map<Resource, Integer> indexes = new IdentityHashMap<>();
+
+        Key(String digest, List<Resource> resources) {
+            this.digest = digest;
+            this.resources = resources;
+            for (int i = 0; i < resources.size(); i++) {
+                indexes.put(resources.get(i), i);
+            }
+        }
+
+        int indexOf(Resource resource) throws IOException {
+            Integer index = indexes.get(resource);
+            if (index == null) {
+                throw new IOException("Unknown resource: " + resource);
+            }
+            return index;
+        }
+    }
+
+    static class WireImpl implements Wire {
+        private final Resource requirer;
+        private final Requirement requirement;
+        private final Resource provider;
+        private final Capability capability;
+
+        WireImpl(Resource requirer, Requirement requirement, Resource provider, Capability capability) {
+            this.requirer = requirer;
+            this.requirement = requirement;
+            this.provider = provider;
+            this.capability = capability;
+        }
+
+        @Override
+        public Capability getCapability() {
+            return capability;
+        }
+
+        @Override
+        public Requirement getRequirement() {
+            return requirement;
+        }
+
+        @Override
+        public Resource getProvider() {
+            return provider;
+        }
+
+        @Override
+        public Resource getRequirer() {
+            return requirer;
+        }
+
+        @Override
+        public String toString() {
+            return requirement + " -> " + capability;
+        }
+    }
+
+    /**
+     * A capability of a fragment, provided by its host.
+     */
+    static class HostedCapabilityImpl implements HostedCapability {
+        private final Resource host;
+        private final Capability capability;
+
+        HostedCapabilityImpl(Resource host, Capability capability) {
+            this.host = host;
+            this.capability = capability;
+        }
+
+        @Override
+        public Resource getResource() {
+            return host;
+        }
+
+        @Override
+        public Capability getDeclaredCapability() {
+            return capability;
+        }
+
+        @Override
+        public String getNamespace() {
+            return capability.getNamespace();
+        }
+
+        @Override
+        public Map<String, String> getDirectives() {
+            return capability.getDirectives();
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return capability.getAttributes();
+        }
+
+        @Override
+        public String toString() {
+            return capability.toString();
+        }
+    }
+
+    /**
+     * A requirement of a fragment, wired for its host.
+     */
+    static class HostedRequirement implements Requirement {
+        private final Resource host;
+        private final Requirement requirement;
+
+        HostedRequirement(Resource host, Requirement requirement) {
+            this.host = host;
+            this.requirement = requirement;
+        }
+
+        @Override
+        public Resource getResource() {
+            return host;
+        }
+
+        @Override
+        public String getNamespace() {
+            return requirement.getNamespace();
+        }
+
+        @Override
+        public Map<String, String> getDirectives() {
+            return requirement.getDirectives();
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return requirement.getAttributes();
+        }
+
+        @Override
+        public String toString() {
+            return requirement.toString();
+        }
+    }
+
+}
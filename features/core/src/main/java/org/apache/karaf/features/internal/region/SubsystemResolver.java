@@ -70,6 +70,7 @@ public class SubsystemResolver {
     private static final Logger LOGGER = LoggerFactory.getLogger(SubsystemResolver.class);
 
     private DownloadManager manager;
+    private ResolutionCache resolutionCache;
     private RegionDigraph digraph;
     private Subsystem root;
     private Map<Resource, List<Wire>> wiring;
@@ -83,9 +84,15 @@ public class SubsystemResolver {
     private Map<Resource, String> features;
     private RegionDigraph flatDigraph;
     private Map<String, Map<String, BundleInfo>> bundleInfos;
+    private long downloadTime;
 
     public SubsystemResolver(DownloadManager manager) {
+        this(manager, null);
+    }
+
+    public SubsystemResolver(DownloadManager manager, ResolutionCache resolutionCache) {
         this.manager = manager;
+        this.resolutionCache = resolutionCache;
     }
 
     public void prepare(
@@ -175,16 +182,32 @@ public class SubsystemResolver {
         }
 
         // Download bundles
+        long start = System.currentTimeMillis();
         root.downloadBundles(manager, overrides, featureResolutionRange);
+        downloadTime = System.currentTimeMillis() - start;
 
         // Populate digraph and resolve
         digraph = new StandardRegionDigraph(null, null);
         populateDigraph(digraph, root);
 
-        Resolver resolver = new ResolverImpl(new Slf4jResolverLog(LOGGER));
-        Downloader downloader = manager.createDownloader();
-        wiring = resolver.resolve(new SubsystemResolveContext(root, digraph, globalRepository, downloader));
-        downloader.await();
+        // External resources are wrapped on demand when using a global repository,
+        // so the resolution can only be cached when all the resources are known
+        ResolutionCache.Key key = null;
+        if (resolutionCache != null && globalRepository == null) {
+            key = resolutionCache.createKey(root, overrides, featureResolutionRange);
+        }
+        wiring = key != null ? resolutionCache.load(key) : null;
+        if (wiring != null) {
+            LOGGER.debug("Using cached resolution {}", key.digest);
+        } else {
+            Resolver resolver = new ResolverImpl(new Slf4jResolverLog(LOGGER));
+            Downloader downloader = manager.createDownloader();
+            wiring = resolver.resolve(new SubsystemResolveContext(root, digraph, globalRepository, downloader));
+            downloader.await();
+            if (key != null) {
+                resolutionCache.store(key, wiring);
+            }
+        }
 
         // Remove wiring to the fake environment resource
         if (environmentResource != null) {
@@ -229,6 +252,13 @@ public class SubsystemResolver {
         return manager.getProviders();
     }
 
+    /**
+     * Returns the time spent downloading the bundles of the features, in milliseconds.
+     */
+    public long getDownloadTime() {
+        return downloadTime;
+    }
+
     public Map<Resource, List<Wire>> getWiring() {
         return wiring;
     }
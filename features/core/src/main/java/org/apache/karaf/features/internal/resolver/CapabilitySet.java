@@ -28,6 +28,8 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.osgi.framework.Constants;
 import org.osgi.resource.Capability;
@@ -36,8 +38,17 @@ public class CapabilitySet {
 
     private static final Class<?>[] STRING_CLASS = new Class[] {String.class};
 
+    /**
+     * Minimum number of candidate capabilities for which a comparison is evaluated
+     * using a sorted index rather than by comparing the attribute of each capability.
+     * The index is only used when the candidates are a significant part of the set,
+     * as a range may then match capabilities which are not candidates anymore.
+     */
+    private static final int SORTED_INDEX_THRESHOLD = 16;
+
     private final Map<String, Map<Object, Set<Capability>>> indices;
     private final Set<Capability> capSet = new HashSet<>();
+    private final ConcurrentMap<String, SortedIndex> sortedIndices = new ConcurrentHashMap<>();
 
     public CapabilitySet(List<String> indexProps) {
         indices = new TreeMap<>();
@@ -90,6 +101,15 @@ public class CapabilitySet {
                 }
             }
         }
+
+        synchronized (sortedIndices) {
+            for (Entry<String, SortedIndex> entry : sortedIndices.entrySet()) {
+                Object value = cap.getAttributes().get(entry.getKey());
+                if (value != null) {
+                    entry.getValue().index(cap, value, true);
+                }
+            }
+        }
     }
 
     private void indexCapability(
@@ -123,6 +143,15 @@ public class CapabilitySet {
                     }
                 }
             }
+
+            synchronized (sortedIndices) {
+                for (Entry<String, SortedIndex> entry : sortedIndices.entrySet()) {
+                    Object value = cap.getAttributes().get(entry.getKey());
+                    if (value != null) {
+                        entry.getValue().index(cap, value, false);
+                    }
+                }
+            }
         }
     }
 
@@ -155,7 +184,19 @@ public class CapabilitySet {
             // For AND we calculate the intersection of each subfilter.
             // We can short-circuit the AND operation if there are no
             // remaining capabilities.
-            List<SimpleFilter> sfs = (List<SimpleFilter>) sf.getValue();
+            // The subfilters answered by an equality index are evaluated first,
+            // as they usually leave very few capabilities for the other ones.
+            List<SimpleFilter> sfs = new ArrayList<>();
+            for (SimpleFilter sf1 : (List<SimpleFilter>) sf.getValue()) {
+                if (isIndexed(sf1)) {
+                    sfs.add(sf1);
+                }
+            }
+            for (SimpleFilter sf1 : (List<SimpleFilter>) sf.getValue()) {
+                if (!isIndexed(sf1)) {
+                    sfs.add(sf1);
+                }
+            }
             for (int i = 0; (caps.size() > 0) && (i < sfs.size()); i++) {
                 matches = match(caps, sfs.get(i));
                 caps = matches;
@@ -183,6 +224,16 @@ public class CapabilitySet {
                     matches.addAll(existingCaps);
                     matches.retainAll(caps);
                 }
+            } else if ((caps.size() >= SORTED_INDEX_THRESHOLD) && (caps.size() * 4 >= capSet.size())
+                    && SortedIndex.supports(sf.getOperation())) {
+                Set<Capability> existingCaps = getSortedIndex(sf.getName()).match(sf.getName(), sf.getValue(), sf.getOperation());
+                if (existingCaps.size() <= caps.size()) {
+                    matches = existingCaps;
+                    matches.retainAll(caps);
+                } else {
+                    matches.addAll(caps);
+                    matches.retainAll(existingCaps);
+                }
             } else {
                 for (Capability cap : caps) {
                     Object lhs = cap.getAttributes().get(sf.getName());
@@ -198,6 +249,30 @@ public class CapabilitySet {
         return matches;
     }
 
+    private boolean isIndexed(SimpleFilter sf) {
+        return (sf.getOperation() == SimpleFilter.EQ) && indices.containsKey(sf.getName());
+    }
+
+    private SortedIndex getSortedIndex(String name) {
+        SortedIndex index = sortedIndices.get(name);
+        if (index == null) {
+            synchronized (sortedIndices) {
+                index = sortedIndices.get(name);
+                if (index == null) {
+                    index = new SortedIndex();
+                    for (Capability cap : capSet) {
+                        Object value = cap.getAttributes().get(name);
+                        if (value != null) {
+                            index.index(cap, value, true);
+                        }
+                    }
+                    sortedIndices.put(name, index);
+                }
+            }
+        }
+        return index;
+    }
+
     public static boolean matches(Capability cap, SimpleFilter sf) {
         return matchesInternal(cap, sf) && matchMandatory(cap, sf);
     }
@@ -460,4 +535,114 @@ public class CapabilitySet {
         }
         return list;
     }
+
+    /**
+     * Index of the values of an attribute, sorted by natural order for each type of value,
+     * so that comparison and substring filters only look at the matching values.
+     * Capabilities whose attribute can not be sorted are compared one by one.
+     */
+    private static class SortedIndex {
+
+        private final Map<Class<?>, TreeMap<Object, Set<Capability>>> sorted = new HashMap<>();
+        private final Set<Capability> unsorted = new HashSet<>();
+
+        static boolean supports(int op) {
+            return (op == SimpleFilter.EQ) || (op == SimpleFilter.GTE)
+                    || (op == SimpleFilter.LTE) || (op == SimpleFilter.SUBSTRING);
+        }
+
+        void index(Capability cap, Object value, boolean add) {
+            // Mirror the way compare() handles the value
+            if (value instanceof Comparable) {
+                TreeMap<Object, Set<Capability>> values = sorted.get(value.getClass());
+                if (values == null) {
+                    if (!add) {
+                        return;
+                    }
+                    values = new TreeMap<>();
+                    sorted.put(value.getClass(), values);
+                }
+                Set<Capability> caps = values.get(value);
+                if (add) {
+                    if (caps == null) {
+                        caps = new HashSet<>();
+                        values.put(value, caps);
+                    }
+                    caps.add(cap);
+                } else if (caps != null) {
+                    caps.remove(cap);
+                    if (caps.isEmpty()) {
+                        values.remove(value);
+                    }
+                }
+                return;
+            }
+            if (value.getClass().isArray()) {
+                value = convertArrayToList(value);
+            }
+            if (value instanceof Collection) {
+                for (Object o : (Collection) value) {
+                    if (o != null) {
+                        index(cap, o, add);
+                    }
+                }
+            } else if (add) {
+                unsorted.add(cap);
+            } else {
+                unsorted.remove(cap);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        Set<Capability> match(String name, Object rhsUnknown, int op) {
+            Set<Capability> matches = new HashSet<>();
+            for (Entry<Class<?>, TreeMap<Object, Set<Capability>>> entry : sorted.entrySet()) {
+                TreeMap<Object, Set<Capability>> values = entry.getValue();
+                if (values.isEmpty()) {
+                    continue;
+                }
+                // Spec says SUBSTRING is false for all types other than string.
+                if (op == SimpleFilter.SUBSTRING) {
+                    if (entry.getKey() == String.class) {
+                        List<String> pieces = (List<String>) rhsUnknown;
+                        String prefix = pieces.get(0);
+                        for (Entry<Object, Set<Capability>> value : values.tailMap(prefix, true).entrySet()) {
+                            String s = (String) value.getKey();
+                            if (!s.startsWith(prefix)) {
+                                break;
+                            }
+                            if (SimpleFilter.compareSubstring(pieces, s)) {
+                                matches.addAll(value.getValue());
+                            }
+                        }
+                    }
+                    continue;
+                }
+                try {
+                    Object rhs = coerceType(values.firstKey(), (String) rhsUnknown);
+                    if (op == SimpleFilter.EQ) {
+                        Set<Capability> caps = values.get(rhs);
+                        if (caps != null) {
+                            matches.addAll(caps);
+                        }
+                    } else {
+                        Map<Object, Set<Capability>> range = (op == SimpleFilter.GTE)
+                                ? values.tailMap(rhs, true)
+                                : values.headMap(rhs, true);
+                        for (Set<Capability> caps : range.values()) {
+                            matches.addAll(caps);
+                        }
+                    }
+                } catch (Exception ex) {
+                    // The value can not be compared to this type
+                }
+            }
+            for (Capability cap : unsorted) {
+                if (compare(cap.getAttributes().get(name), rhsUnknown, op)) {
+                    matches.add(cap);
+                }
+            }
+            return matches;
+        }
+    }
 }
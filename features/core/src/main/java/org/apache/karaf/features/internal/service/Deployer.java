@@ -16,8 +16,10 @@
  */
 package org.apache.karaf.features.internal.service;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -26,22 +28,30 @@ import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.felix.utils.version.VersionRange;
 import org.apache.felix.utils.version.VersionTable;
 import org.apache.karaf.features.BundleInfo;
 import org.apache.karaf.features.Conditional;
+import org.apache.karaf.features.DeploymentStatistics;
 import org.apache.karaf.features.Feature;
 import org.apache.karaf.features.FeatureEvent;
 import org.apache.karaf.features.FeaturesService;
 import org.apache.karaf.features.internal.download.DownloadManager;
 import org.apache.karaf.features.internal.download.StreamProvider;
+import org.apache.karaf.features.internal.region.ResolutionCache;
 import org.apache.karaf.features.internal.region.SubsystemResolver;
 import org.apache.karaf.features.internal.util.ChecksumUtils;
 import org.apache.karaf.features.internal.util.Macro;
@@ -174,12 +184,34 @@ public class Deployer {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Deployer.class);
 
+    private static final int MAX_PARALLEL_CHECKSUMS = 8;
+
     private final DownloadManager manager;
+    private final ResolutionCache resolutionCache;
     private final DeployCallback callback;
+    private final DeploymentStatistics statistics = new DeploymentStatistics();
+    // artifacts already counted, by this deployer or by a previous one sharing the download manager
+    private final Set<String> countedProviders = new HashSet<>();
 
     public Deployer(DownloadManager manager, DeployCallback callback) {
+        this(manager, null, callback);
+    }
+
+    public Deployer(DownloadManager manager, ResolutionCache resolutionCache, DeployCallback callback) {
         this.manager = manager;
+        this.resolutionCache = resolutionCache;
         this.callback = callback;
+        Map<String, StreamProvider> providers = manager.getProviders();
+        synchronized (providers) {
+            countedProviders.addAll(providers.keySet());
+        }
+    }
+
+    /**
+     * Returns the timings and counts of the deployments done by this deployer.
+     */
+    public DeploymentStatistics getStatistics() {
+        return statistics;
     }
 
     /**
@@ -189,6 +221,15 @@ public class Deployer {
      * @throws Exception
      */
     public void deploy(DeploymentState dstate, DeploymentRequest request) throws Exception {
+        long time = statistics.start();
+        try {
+            doDeploy(dstate, request, time);
+        } finally {
+            statistics.end();
+        }
+    }
+
+    private void doDeploy(DeploymentState dstate, DeploymentRequest request, long time) throws Exception {
 
         boolean noRefreshUnmanaged = request.options.contains(FeaturesService.Option.NoAutoRefreshUnmanagedBundles);
         boolean noRefreshManaged = request.options.contains(FeaturesService.Option.NoAutoRefreshManagedBundles);
@@ -206,13 +247,14 @@ public class Deployer {
                 map(dstate.bundles));
 
         // Resolve
-        SubsystemResolver resolver = new SubsystemResolver(manager);
+        SubsystemResolver resolver = new SubsystemResolver(manager, resolutionCache);
         resolver.prepare(
                 dstate.features.values(),
                 request.requirements,
                 apply(unmanagedBundles, adapt(BundleRevision.class))
         );
         Set<String> prereqs = resolver.collectPrerequisites();
+        time = phase(DeploymentStatistics.PHASE_PREPARE, time);
         if (!prereqs.isEmpty()) {
             for (Iterator<String> iterator = prereqs.iterator(); iterator.hasNext(); ) {
                 String prereq = iterator.next();
@@ -260,8 +302,11 @@ public class Deployer {
                 request.overrides,
                 request.featureResolutionRange,
                 request.globalRepository);
+        statistics.addPhase(DeploymentStatistics.PHASE_DOWNLOAD, resolver.getDownloadTime());
+        time = phase(DeploymentStatistics.PHASE_RESOLVE, time + resolver.getDownloadTime());
 
         Map<String, StreamProvider> providers = resolver.getProviders();
+        countProviders(providers);
         Map<String, Set<Resource>> featuresPerRegion = resolver.getFeaturesPerRegions();
         Map<String, Set<String>> installedFeatures = apply(featuresPerRegion, featureId());
         Map<String, Set<String>> newFeatures = diff(installedFeatures, dstate.state.installedFeatures);
@@ -433,6 +478,8 @@ public class Deployer {
             }
         }
 
+        time = phase(DeploymentStatistics.PHASE_COMPUTE, time);
+
         //
         // Log deployment
         //
@@ -516,6 +563,8 @@ public class Deployer {
             }
             callback.refreshPackages(toRefresh.keySet());
             callback.startBundle(dstate.serviceBundle);
+            statistics.addCounter(DeploymentStatistics.UPDATED_BUNDLES, 1);
+            phase(DeploymentStatistics.PHASE_UPDATE, time);
             return;
         }
 
@@ -541,9 +590,11 @@ public class Deployer {
                     // avoid a restart when the start level is actually changed
                     callback.stopBundle(bundle, toUpdateStartLevel.containsKey(bundle) ? 0 : STOP_TRANSIENT);
                     toStop.remove(bundle);
+                    statistics.addCounter(DeploymentStatistics.STOPPED_BUNDLES, 1);
                 }
             }
         }
+        time = phase(DeploymentStatistics.PHASE_STOP, time);
 
         //
         // Delete bundles
@@ -563,9 +614,11 @@ public class Deployer {
                     print("  " + bundle.getSymbolicName() + " / " + bundle.getVersion(), verbose);
                     callback.uninstall(bundle);
                     removeFromMapSet(managedBundles, name, bundle.getBundleId());
+                    statistics.addCounter(DeploymentStatistics.UNINSTALLED_BUNDLES, 1);
                 }
             }
         }
+        time = phase(DeploymentStatistics.PHASE_UNINSTALL, time);
 
         //
         // Update regions
@@ -632,6 +685,7 @@ public class Deployer {
                         callback.updateBundle(bundle, uri, is);
                     }
                     toStart.add(bundle);
+                    statistics.addCounter(DeploymentStatistics.UPDATED_BUNDLES, 1);
                 }
             }
         }
@@ -643,6 +697,7 @@ public class Deployer {
             int sl = entry.getValue();
             callback.setBundleStartLevel(bundle, sl);
         }
+        time = phase(DeploymentStatistics.PHASE_UPDATE, time);
         //
         // Install bundles
         //
@@ -670,10 +725,15 @@ public class Deployer {
                     }
                     addToMapSet(managedBundles, name, bundle.getBundleId());
                     deployment.resToBnd.put(resource, bundle);
+                    statistics.addCounter(DeploymentStatistics.INSTALLED_BUNDLES, 1);
                     // save a checksum of installed snapshot bundle
                     if (UPDATE_SNAPSHOTS_CRC.equals(request.updateSnaphots)
                             && isUpdateable(resource) && !deployment.bundleChecksums.containsKey(bundle.getBundleId())) {
                         deployment.bundleChecksums.put(bundle.getBundleId(), crc);
+                        File file = getStreamProvider(resource, providers).getFile();
+                        if (file != null) {
+                            ChecksumUtils.cacheChecksum(file, crc);
+                        }
                     }
                     int startLevel = startLevels.get(resource);
                     if (startLevel != dstate.initialBundleStartLevel) {
@@ -696,6 +756,8 @@ public class Deployer {
             }
         }
 
+        time = phase(DeploymentStatistics.PHASE_INSTALL, time);
+
         //
         // Update and save state
         //
@@ -725,6 +787,8 @@ public class Deployer {
             }
         }
 
+        time = phase(DeploymentStatistics.PHASE_CONFIGURE, time);
+
         // TODO: remove this hack, but it avoids loading the class after the bundle is refreshed
         new CopyOnWriteArrayIdentityList().iterator();
         RequirementSort.sort(Collections.<Resource>emptyList());
@@ -742,6 +806,7 @@ public class Deployer {
                         callback.stopBundle(bundle, STOP_TRANSIENT);
                         toStop.remove(bundle);
                         toStart.add(bundle);
+                        statistics.addCounter(DeploymentStatistics.STOPPED_BUNDLES, 1);
                     }
                 }
             }
@@ -755,8 +820,10 @@ public class Deployer {
                 if (!toRefresh.isEmpty()) {
                     callback.refreshPackages(toRefresh.keySet());
                 }
+                statistics.addCounter(DeploymentStatistics.REFRESHED_BUNDLES, toRefresh.size());
             }
         }
+        time = phase(DeploymentStatistics.PHASE_REFRESH, time);
 
         // Resolve bundles
         toResolve.addAll(toStart);
@@ -776,23 +843,31 @@ public class Deployer {
                     print("  " + bundle.getSymbolicName() + " / " + bundle.getVersion(), verbose);
                     try {
                         callback.startBundle(bundle);
+                        statistics.addCounter(DeploymentStatistics.STARTED_BUNDLES, 1);
                     } catch (BundleException e) {
                         exceptions.add(e);
                     }
                     toStart.remove(bundle);
                 }
             }
+            phase(DeploymentStatistics.PHASE_START, time);
             if (!exceptions.isEmpty()) {
                 throw new MultiException("Error restarting bundles", exceptions);
             }
+        } else {
+            phase(DeploymentStatistics.PHASE_START, time);
         }
+        statistics.addCounter(DeploymentStatistics.INSTALLED_FEATURES, flatten(newFeatures).size());
+        statistics.addCounter(DeploymentStatistics.UNINSTALLED_FEATURES, flatten(delFeatures).size());
+        statistics.end();
+        printStatistics(verbose);
 
         // Call listeners
         for (Map.Entry<String, Set<String>> entry : delFeatures.entrySet()) {
             for (String name : entry.getValue()) {
                 Feature feature = dstate.features.get(name);
                 if (feature != null) {
-                    callback.callListeners(new FeatureEvent(FeatureEvent.EventType.FeatureUninstalled, feature, entry.getKey(), false));
+                    callback.callListeners(new FeatureEvent(FeatureEvent.EventType.FeatureUninstalled, feature, entry.getKey(), false, statistics));
                 }
             }
         }
@@ -800,7 +875,7 @@ public class Deployer {
             for (String name : entry.getValue()) {
                 Feature feature = dstate.features.get(name);
                 if (feature != null) {
-                    callback.callListeners(new FeatureEvent(FeatureEvent.EventType.FeatureInstalled, feature, entry.getKey(), false));
+                    callback.callListeners(new FeatureEvent(FeatureEvent.EventType.FeatureInstalled, feature, entry.getKey(), false, statistics));
                 }
             }
         }
@@ -982,6 +1057,58 @@ public class Deployer {
         callback.print(message, verbose);
     }
 
+    private long phase(String phase, long start) {
+        long now = System.currentTimeMillis();
+        statistics.addPhase(phase, now - start);
+        return now;
+    }
+
+    /**
+     * Counts the artifacts provided for this deployment. The download manager is shared with the deployment
+     * of the prerequisites, so the artifacts it already provided are not counted again.
+     */
+    private void countProviders(Map<String, StreamProvider> providers) throws IOException {
+        long count = 0;
+        long bytes = 0;
+        synchronized (providers) {
+            for (Map.Entry<String, StreamProvider> entry : providers.entrySet()) {
+                if (countedProviders.add(entry.getKey())) {
+                    count++;
+                    File file = entry.getValue().getFile();
+                    if (file != null) {
+                        bytes += file.length();
+                    }
+                }
+            }
+        }
+        statistics.addCounter(DeploymentStatistics.PROVIDED_ARTIFACTS, count);
+        statistics.addCounter(DeploymentStatistics.PROVIDED_BYTES, bytes);
+    }
+
+    private void printStatistics(boolean verbose) {
+        StringBuilder phases = new StringBuilder();
+        for (Map.Entry<String, Long> entry : statistics.getPhases().entrySet()) {
+            if (phases.length() > 0) {
+                phases.append(", ");
+            }
+            phases.append(entry.getKey()).append(": ").append(entry.getValue()).append(" ms");
+        }
+        StringBuilder counters = new StringBuilder();
+        for (Map.Entry<String, Long> entry : statistics.getCounters().entrySet()) {
+            if (entry.getValue() != 0) {
+                if (counters.length() > 0) {
+                    counters.append(", ");
+                }
+                counters.append(entry.getKey()).append(": ").append(entry.getValue());
+            }
+        }
+        print("Deployment done in " + statistics.getDuration() + " ms", verbose);
+        print("  Phases: " + phases, verbose);
+        if (counters.length() > 0) {
+            print("  Counts: " + counters, verbose);
+        }
+    }
+
     private void removeFragmentsAndBundlesInState(Collection<Bundle> bundles, int state) {
         for (Iterator<Bundle> iterator = bundles.iterator(); iterator.hasNext();) {
             Bundle bundle = iterator.next();
@@ -1045,9 +1172,15 @@ public class Deployer {
         regions.addAll(dstate.state.managedBundles.keySet());
         regions.addAll(bundlesPerRegions.keySet());
 
+        Map<String, Deployer.RegionDeployment> deployments = new HashMap<>();
+        // Snapshot bundles to update if their checksum has changed
+        Map<Bundle, Resource> snapshots = new LinkedHashMap<>();
+        Map<Bundle, Deployer.RegionDeployment> snapshotDeployments = new HashMap<>();
+
         for (String region : regions) {
 
             Deployer.RegionDeployment deployment = new Deployer.RegionDeployment();
+            deployments.put(region, deployment);
 
             // Get the list of bundles currently assigned in the region
             Set<Long> managed = dstate.state.managedBundles.get(region);
@@ -1093,19 +1226,9 @@ public class Deployer {
                                 LOGGER.debug("Update snapshot for " + bundle.getLocation());
                                 deployment.toUpdate.put(bundle, resource);
                             } else if (UPDATE_SNAPSHOTS_CRC.equalsIgnoreCase(request.updateSnaphots)) {
-                                // if the checksum are different
-                                try (
-                                        InputStream is = getBundleInputStream(resource, resolver.getProviders())
-                                ) {
-                                    long newCrc = ChecksumUtils.checksum(is);
-                                    long oldCrc = dstate.state.bundleChecksums.containsKey(bundle.getBundleId())
-                                                    ? dstate.state.bundleChecksums.get(bundle.getBundleId()) : 0L;
-                                    if (newCrc != oldCrc) {
-                                        LOGGER.debug("New snapshot available for " + bundle.getLocation());
-                                        deployment.toUpdate.put(bundle, resource);
-                                    }
-                                    result.bundleChecksums.put(bundle.getBundleId(), newCrc);
-                                }
+                                // if the checksum are different, see below
+                                snapshots.put(bundle, resource);
+                                snapshotDeployments.put(bundle, deployment);
                             }
                         }
                         // We're done for this resource
@@ -1138,18 +1261,82 @@ public class Deployer {
                 }
             }
             Collections.sort(deployment.toInstall, new ResourceComparator());
+        }
 
+        // Compute the checksums of all the snapshots at once
+        Map<Bundle, Long> checksums = computeChecksums(snapshots, resolver.getProviders());
+        for (Map.Entry<Bundle, Resource> entry : snapshots.entrySet()) {
+            Bundle bundle = entry.getKey();
+            long newCrc = checksums.get(bundle);
+            long oldCrc = dstate.state.bundleChecksums.containsKey(bundle.getBundleId())
+                            ? dstate.state.bundleChecksums.get(bundle.getBundleId()) : 0L;
+            if (newCrc != oldCrc) {
+                LOGGER.debug("New snapshot available for " + bundle.getLocation());
+                snapshotDeployments.get(bundle).toUpdate.put(bundle, entry.getValue());
+            }
+            result.bundleChecksums.put(bundle.getBundleId(), newCrc);
+        }
+
+        for (Map.Entry<String, Deployer.RegionDeployment> entry : deployments.entrySet()) {
+            Deployer.RegionDeployment deployment = entry.getValue();
             // Add this region if there is something to do
             if (!deployment.toDelete.isEmpty()
                     || !deployment.toUpdate.isEmpty()
                     || !deployment.toInstall.isEmpty()) {
-                result.regions.put(region, deployment);
+                result.regions.put(entry.getKey(), deployment);
             }
         }
 
         return result;
     }
 
+    /**
+     * Compute the checksums of the given bundles, reading up to {@link #MAX_PARALLEL_CHECKSUMS}
+     * bundles at the same time.
+     */
+    protected Map<Bundle, Long> computeChecksums(Map<Bundle, Resource> bundles,
+                                                 final Map<String, StreamProvider> providers) throws IOException {
+        Map<Bundle, Long> checksums = new HashMap<>();
+        if (bundles.isEmpty()) {
+            return checksums;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(bundles.size(), MAX_PARALLEL_CHECKSUMS));
+        try {
+            Map<Bundle, Future<Long>> futures = new LinkedHashMap<>();
+            for (Map.Entry<Bundle, Resource> entry : bundles.entrySet()) {
+                final Resource resource = entry.getValue();
+                futures.put(entry.getKey(), executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception {
+                        return getBundleChecksum(resource, providers);
+                    }
+                }));
+            }
+            for (Map.Entry<Bundle, Future<Long>> entry : futures.entrySet()) {
+                try {
+                    checksums.put(entry.getKey(), entry.getValue().get());
+                } catch (ExecutionException e) {
+                    Throwable t = e.getCause();
+                    if (t instanceof IOException) {
+                        throw (IOException) t;
+                    } else if (t instanceof RuntimeException) {
+                        throw (RuntimeException) t;
+                    } else if (t instanceof Error) {
+                        throw (Error) t;
+                    } else {
+                        throw new IOException(t);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while computing bundle checksums");
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return checksums;
+    }
+
     protected <T> MapUtils.Function<Bundle, T> adapt(final Class<T> clazz) {
         return new MapUtils.Function<Bundle, T>() {
             @Override
@@ -1286,6 +1473,22 @@ public class Deployer {
     }
 
     protected InputStream getBundleInputStream(Resource resource, Map<String, StreamProvider> providers) throws IOException {
+        return getStreamProvider(resource, providers).open();
+    }
+
+    protected long getBundleChecksum(Resource resource, Map<String, StreamProvider> providers) throws IOException {
+        File file = getStreamProvider(resource, providers).getFile();
+        if (file != null && file.isFile()) {
+            return ChecksumUtils.checksum(file);
+        }
+        try (
+                InputStream is = getBundleInputStream(resource, providers)
+        ) {
+            return ChecksumUtils.checksum(is);
+        }
+    }
+
+    private StreamProvider getStreamProvider(Resource resource, Map<String, StreamProvider> providers) {
         String uri = getUri(resource);
         if (uri == null) {
             throw new IllegalStateException("Resource has no uri");
@@ -1294,7 +1497,7 @@ public class Deployer {
         if (provider == null) {
             throw new IllegalStateException("Resource " + uri + " has no StreamProvider");
         }
-        return provider.open();
+        return provider;
     }
 
 }
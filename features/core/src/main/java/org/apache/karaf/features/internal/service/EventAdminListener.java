@@ -51,6 +51,9 @@ public class EventAdminListener implements FeaturesListener {
         props.put(EventConstants.TIMESTAMP, System.currentTimeMillis());
         props.put(EventConstants.FEATURE_NAME, event.getFeature().getName());
         props.put(EventConstants.FEATURE_VERSION, event.getFeature().getVersion());
+        if (event.getDeploymentStatistics() != null) {
+            props.put(EventConstants.DEPLOYMENT_STATISTICS, event.getDeploymentStatistics().toMap());
+        }
         String topic;
         switch (event.getType()) {
         case FeatureInstalled:
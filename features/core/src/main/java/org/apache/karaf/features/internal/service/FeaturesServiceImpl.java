@@ -39,17 +39,19 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.felix.utils.version.VersionCleaner;
 import org.apache.felix.utils.version.VersionRange;
 import org.apache.felix.utils.version.VersionTable;
+import org.apache.karaf.features.DeploymentStatistics;
 import org.apache.karaf.features.Feature;
 import org.apache.karaf.features.FeatureEvent;
 import org.apache.karaf.features.FeaturesListener;
@@ -57,7 +59,8 @@ import org.apache.karaf.features.FeaturesService;
 import org.apache.karaf.features.Repository;
 import org.apache.karaf.features.RepositoryEvent;
 import org.apache.karaf.features.internal.download.DownloadManager;
-import org.apache.karaf.features.internal.download.DownloadManagers;
+import org.apache.karaf.features.internal.download.impl.DownloadService;
+import org.apache.karaf.features.internal.region.ResolutionCache;
 import org.apache.karaf.features.internal.util.JsonReader;
 import org.apache.karaf.features.internal.util.JsonWriter;
 import org.apache.karaf.util.bundles.BundleUtils;
@@ -104,6 +107,11 @@ public class FeaturesServiceImpl implements FeaturesService, Deployer.DeployCall
 
     private static final Logger LOGGER = LoggerFactory.getLogger(FeaturesServiceImpl.class);
 
+    /**
+     * Maximum number of feature repositories loaded concurrently.
+     */
+    private static final int MAX_PARALLEL_REPOSITORY_LOADS = 8;
+
     /**
      * Our bundle.
      * We use it to check bundle operations affecting our own bundle.
@@ -152,12 +160,31 @@ public class FeaturesServiceImpl implements FeaturesService, Deployer.DeployCall
      */
     private final org.osgi.service.repository.Repository globalRepository;
 
+    /**
+     * Persistent cache of parsed repositories, may be {@code null}
+     */
+    private final RepositoryModelCache repositoryModelCache;
+    /**
+     * Maven resolver of the repository cache and the configuration it was created from
+     */
+    private final Object repositoryResolverLock = new Object();
+    private MavenResolver repositoryResolver;
+    private Dictionary<String, String> repositoryResolverConfig;
+    private final ResolutionCache resolutionCache;
+    private final DownloadService downloadService;
+    private volatile DeploymentStatistics lastDeploymentStatistics;
+
     private final List<FeaturesListener> listeners = new CopyOnWriteArrayIdentityList<>();
 
     // Synchronized on lock
     private final Object lock = new Object();
     private final State state = new State();
     private final Map<String, Repository> repositoryCache = new HashMap<>();
+    /**
+     * Index of the features of all cached repositories, by name and version.
+     * This map is never modified once published: it is copied and patched
+     * when a repository is added or removed.
+     */
     private Map<String, Map<String, Feature>> featureCache;
 
 
@@ -173,6 +200,25 @@ public class FeaturesServiceImpl implements FeaturesService, Deployer.DeployCall
                                String bundleUpdateRange,
                                String updateSnaphots,
                                org.osgi.service.repository.Repository globalRepository) {
+        this(bundle, systemBundleContext, storage, featureFinder, eventAdminListener, configurationAdmin, digraph,
+                overrides, featureResolutionRange, bundleUpdateRange, updateSnaphots, globalRepository,
+                new DownloadService(DownloadService.DEFAULT_THREADS, DownloadService.DEFAULT_MAX_CONCURRENT_PER_HOST,
+                        DownloadService.DEFAULT_RETRIES, DownloadService.DEFAULT_RETRY_DELAY, null));
+    }
+
+    public FeaturesServiceImpl(Bundle bundle,
+                               BundleContext systemBundleContext,
+                               StateStorage storage,
+                               FeatureFinder featureFinder,
+                               EventAdminListener eventAdminListener,
+                               ConfigurationAdmin configurationAdmin,
+                               RegionDigraph digraph,
+                               String overrides,
+                               String featureResolutionRange,
+                               String bundleUpdateRange,
+                               String updateSnaphots,
+                               org.osgi.service.repository.Repository globalRepository,
+                               DownloadService downloadService) {
         this.bundle = bundle;
         this.systemBundleContext = systemBundleContext;
         this.storage = storage;
@@ -186,11 +232,26 @@ public class FeaturesServiceImpl implements FeaturesService, Deployer.DeployCall
         this.bundleUpdateRange = bundleUpdateRange;
         this.updateSnaphots = updateSnaphots;
         this.globalRepository = globalRepository;
+        this.repositoryModelCache = bundle != null
+                ? new RepositoryModelCache(bundle.getBundleContext().getDataFile("repositories"),
+                                           bundle.getVersion().toString(), createRepositoryResolverProvider())
+                : null;
+        this.resolutionCache = bundle != null
+                ? new ResolutionCache(bundle.getBundleContext().getDataFile("resolutions"))
+                : null;
+        this.downloadService = downloadService;
         loadState();
         checkResolve();
 
     }
 
+    public void stop() {
+        downloadService.close();
+        synchronized (repositoryResolverLock) {
+            closeRepositoryResolver();
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private void checkResolve() {
         if (bundle == null) {
@@ -347,13 +408,18 @@ public class FeaturesServiceImpl implements FeaturesService, Deployer.DeployCall
         return featureFinder.getNames();
     }
 
+    @Override
+    public DeploymentStatistics getLastDeploymentStatistics() {
+        return lastDeploymentStatistics;
+    }
+
 
     //
     // Repositories support
     //
 
     public Repository loadRepository(URI uri) throws Exception {
-        RepositoryImpl repo = new RepositoryImpl(uri);
+        RepositoryImpl repo = new RepositoryImpl(uri, repositoryModelCache);
         repo.load(true);
         return repo;
     }
@@ -375,15 +441,35 @@ public class FeaturesServiceImpl implements FeaturesService, Deployer.DeployCall
             throw new UnsupportedOperationException();
         }
         Repository repository = loadRepository(uri);
+        // Load referenced repositories before registering the repository,
+        // so that it is not persisted if its closure can not be loaded
+        List<String> referenced = new ArrayList<>();
+        for (URI u : repository.getRepositories()) {
+            referenced.add(u.toString());
+        }
+        List<Repository> loaded = new ArrayList<>();
+        loaded.add(repository);
+        loaded.addAll(loadRepositories(referenced));
+        boolean added;
         synchronized (lock) {
-            // Clean cache
-            repositoryCache.put(uri.toString(), repository);
-            featureCache = null;
+            // Update cache
+            Repository previous = repositoryCache.put(uri.toString(), repository);
+            // Patch the features index
+            if (featureCache != null) {
+                Map<String, Map<String, Feature>> index = featureCache;
+                if (previous != null) {
+                    index = removeFromIndex(index, Collections.singletonList(previous), repositoryCache.values());
+                }
+                featureCache = addToIndex(index, loaded);
+            }
             // Add repo
-            if (!state.repositories.add(uri.toString())) {
-                return;
+            added = state.repositories.add(uri.toString());
+            if (added) {
+                saveState();
             }
-            saveState();
+        }
+        if (!added) {
+            return;
         }
         callListeners(new RepositoryEvent(repository, RepositoryEvent.EventType.RepositoryAdded, false));
     }
@@ -403,18 +489,28 @@ public class FeaturesServiceImpl implements FeaturesService, Deployer.DeployCall
                 return;
             }
             // Clean cache
-            featureCache = null;
             repo = repositoryCache.get(uri.toString());
+            List<Repository> removed = new ArrayList<>();
             List<String> toRemove = new ArrayList<>();
             toRemove.add(uri.toString());
             while (!toRemove.isEmpty()) {
                 Repository rep = repositoryCache.remove(toRemove.remove(0));
                 if (rep != null) {
+                    removed.add(rep);
                     for (URI u : rep.getRepositories()) {
                         toRemove.add(u.toString());
                     }
                 }
             }
+            // Patch the features index, unless a removed repository is still referenced
+            // by another one, in which case it will be reloaded
+            if (featureCache != null) {
+                if (isRepositoryClosureCached()) {
+                    featureCache = removeFromIndex(featureCache, removed, repositoryCache.values());
+                } else {
+                    featureCache = null;
+                }
+            }
             saveState();
         }
         if (repo == null) {
@@ -588,49 +684,197 @@ public class FeaturesServiceImpl implements FeaturesService, Deployer.DeployCall
             }
             uris = new ArrayList<>(state.repositories);
         }
-        //the outer map's key is feature name, the inner map's key is feature version
-        Map<String, Map<String, Feature>> map = new HashMap<>();
         // Two phase load:
         // * first load dependent repositories
-        List<String> toLoad = new ArrayList<>(uris);
-        while (!toLoad.isEmpty()) {
-            String uri = toLoad.remove(0);
-            Repository repo;
-            synchronized (lock) {
-                repo = repositoryCache.get(uri);
+        loadRepositories(uris);
+        List<Repository> repos;
+        synchronized (lock) {
+            repos = new ArrayList<>(repositoryCache.values());
+        }
+        // * then load all features
+        //the outer map's key is feature name, the inner map's key is feature version
+        Map<String, Map<String, Feature>> map = addToIndex(new HashMap<String, Map<String, Feature>>(), repos);
+        synchronized (lock) {
+            if (uris.size() == state.repositories.size()
+                    && state.repositories.containsAll(uris)) {
+                featureCache = map;
             }
-            if (repo == null) {
-                RepositoryImpl rep = new RepositoryImpl(URI.create(uri));
-                rep.load();
-                repo = rep;
-                synchronized (lock) {
-                    repositoryCache.put(uri, repo);
+        }
+        return map;
+    }
+
+    /**
+     * Load the given repositories and all the repositories they reference.
+     * Repositories which are not in the cache yet are loaded in parallel
+     * and added to the cache, only if all of them could be loaded.
+     *
+     * @return the newly loaded repositories
+     */
+    private List<Repository> loadRepositories(Collection<String> uris) throws Exception {
+        List<Repository> loaded = new ArrayList<>();
+        Set<String> visited = new HashSet<>();
+        List<String> toVisit = new ArrayList<>(uris);
+        ExecutorService executor = null;
+        CompletionService<Repository> completionService = null;
+        int pending = 0;
+        try {
+            while (!toVisit.isEmpty() || pending > 0) {
+                while (!toVisit.isEmpty()) {
+                    final String uri = toVisit.remove(0);
+                    if (!visited.add(uri)) {
+                        continue;
+                    }
+                    Repository repo;
+                    synchronized (lock) {
+                        repo = repositoryCache.get(uri);
+                    }
+                    if (repo != null) {
+                        for (URI u : repo.getRepositories()) {
+                            toVisit.add(u.toString());
+                        }
+                    } else {
+                        if (executor == null) {
+                            executor = Executors.newFixedThreadPool(MAX_PARALLEL_REPOSITORY_LOADS);
+                            completionService = new ExecutorCompletionService<>(executor);
+                        }
+                        completionService.submit(new Callable<Repository>() {
+                            @Override
+                            public Repository call() throws Exception {
+                                RepositoryImpl rep = new RepositoryImpl(URI.create(uri), repositoryModelCache);
+                                rep.load();
+                                return rep;
+                            }
+                        });
+                        pending++;
+                    }
+                }
+                if (pending > 0) {
+                    Repository repo;
+                    try {
+                        repo = completionService.take().get();
+                    } catch (ExecutionException e) {
+                        Throwable t = e.getCause();
+                        if (t instanceof Exception) {
+                            throw (Exception) t;
+                        } else if (t instanceof Error) {
+                            throw (Error) t;
+                        } else {
+                            throw e;
+                        }
+                    }
+                    pending--;
+                    loaded.add(repo);
+                    for (URI u : repo.getRepositories()) {
+                        toVisit.add(u.toString());
+                    }
                 }
             }
-            for (URI u : repo.getRepositories()) {
-                toLoad.add(u.toString());
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
             }
         }
-        List<Repository> repos;
+        // Only cache the repositories once the whole closure is loaded
         synchronized (lock) {
-            repos = new ArrayList<>(repositoryCache.values());
+            for (Repository repo : loaded) {
+                repositoryCache.put(repo.getURI().toString(), repo);
+            }
         }
-        // * then load all features
+        return loaded;
+    }
+
+    /**
+     * Check if all the repositories referenced from the installed repositories are in the cache.
+     * Must be called while holding the lock.
+     */
+    private boolean isRepositoryClosureCached() throws Exception {
+        Set<String> visited = new HashSet<>();
+        List<String> toVisit = new ArrayList<>(state.repositories);
+        while (!toVisit.isEmpty()) {
+            String uri = toVisit.remove(0);
+            if (visited.add(uri)) {
+                Repository repo = repositoryCache.get(uri);
+                if (repo == null) {
+                    return false;
+                }
+                for (URI u : repo.getRepositories()) {
+                    toVisit.add(u.toString());
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a copy of the features index with the features of the given repositories added.
+     */
+    private static Map<String, Map<String, Feature>> addToIndex(Map<String, Map<String, Feature>> index,
+                                                                Collection<Repository> repos) throws Exception {
+        Map<String, Map<String, Feature>> map = new HashMap<>(index);
+        Set<String> copied = new HashSet<>();
         for (Repository repo : repos) {
             for (Feature f : repo.getFeatures()) {
-                if (map.get(f.getName()) == null) {
-                    Map<String, Feature> versionMap = new HashMap<>();
-                    versionMap.put(f.getVersion(), f);
+                Map<String, Feature> versionMap = map.get(f.getName());
+                if (versionMap == null) {
+                    versionMap = new HashMap<>();
+                    map.put(f.getName(), versionMap);
+                    copied.add(f.getName());
+                } else if (copied.add(f.getName())) {
+                    versionMap = new HashMap<>(versionMap);
                     map.put(f.getName(), versionMap);
-                } else {
-                    map.get(f.getName()).put(f.getVersion(), f);
                 }
+                versionMap.put(f.getVersion(), f);
             }
         }
-        synchronized (lock) {
-            if (uris.size() == state.repositories.size()
-                    && state.repositories.containsAll(uris)) {
-                featureCache = map;
+        return map;
+    }
+
+    /**
+     * Returns a copy of the features index with the features of the removed repositories removed.
+     * If a removed feature is also provided by one of the remaining repositories, the latter is used.
+     */
+    private static Map<String, Map<String, Feature>> removeFromIndex(Map<String, Map<String, Feature>> index,
+                                                                     Collection<Repository> removed,
+                                                                     Collection<Repository> remaining) throws Exception {
+        Map<String, Map<String, Feature>> map = new HashMap<>(index);
+        Set<String> copied = new HashSet<>();
+        Set<String> orphans = new HashSet<>();
+        for (Repository repo : removed) {
+            for (Feature f : repo.getFeatures()) {
+                Map<String, Feature> versionMap = map.get(f.getName());
+                if (versionMap == null || versionMap.get(f.getVersion()) != f) {
+                    continue;
+                }
+                if (copied.add(f.getName())) {
+                    versionMap = new HashMap<>(versionMap);
+                    map.put(f.getName(), versionMap);
+                }
+                versionMap.remove(f.getVersion());
+                if (versionMap.isEmpty()) {
+                    map.remove(f.getName());
+                }
+                orphans.add(f.getId());
+            }
+        }
+        if (!orphans.isEmpty()) {
+            for (Repository repo : remaining) {
+                if (removed.contains(repo)) {
+                    continue;
+                }
+                for (Feature f : repo.getFeatures()) {
+                    if (orphans.contains(f.getId())) {
+                        Map<String, Feature> versionMap = map.get(f.getName());
+                        if (versionMap == null) {
+                            versionMap = new HashMap<>();
+                            map.put(f.getName(), versionMap);
+                            copied.add(f.getName());
+                        } else if (copied.add(f.getName())) {
+                            versionMap = new HashMap<>(versionMap);
+                            map.put(f.getName(), versionMap);
+                        }
+                        versionMap.put(f.getVersion(), f);
+                    }
+                }
             }
         }
         return map;
@@ -1029,15 +1273,16 @@ public class FeaturesServiceImpl implements FeaturesService, Deployer.DeployCall
 
         Dictionary<String, String> props = getMavenConfig();
         MavenResolver resolver = MavenResolvers.createMavenResolver(props, "org.ops4j.pax.url.mvn");
-        ScheduledExecutorService executor = Executors.newScheduledThreadPool(8);
-        DownloadManager manager = DownloadManagers.createDownloadManager(resolver, executor);
+        DownloadManager manager = downloadService.createDownloadManager(resolver);
+        DeploymentStatistics statistics = new DeploymentStatistics();
         try {
             Set<String> prereqs = new HashSet<>();
             while (true) {
+                Deployer deployer = new Deployer(manager, resolutionCache, this);
                 try {
                     Deployer.DeploymentState dstate = getDeploymentState(state);
                     Deployer.DeploymentRequest request = getDeploymentRequest(requirements, stateChanges, options);
-                    new Deployer(manager, this).deploy(dstate, request);
+                    deployer.deploy(dstate, request);
                     break;
                 } catch (Deployer.PartialDeploymentException e) {
                     if (!prereqs.containsAll(e.getMissing())) {
@@ -1046,10 +1291,45 @@ public class FeaturesServiceImpl implements FeaturesService, Deployer.DeployCall
                     } else {
                         throw new Exception("Deployment aborted due to loop in missing prerequisites: " + e.getMissing());
                     }
+                } finally {
+                    statistics.add(deployer.getStatistics());
                 }
             }
         } finally {
-            executor.shutdown();
+            lastDeploymentStatistics = statistics;
+        }
+    }
+
+    /**
+     * Maven resolver used by the repository cache to check the local file of mvn: repositories.
+     * The resolver is created again when the maven configuration changes.
+     */
+    private RepositoryModelCache.ResolverProvider createRepositoryResolverProvider() {
+        return new RepositoryModelCache.ResolverProvider() {
+            @Override
+            public MavenResolver getResolver() throws Exception {
+                Dictionary<String, String> config = getMavenConfig();
+                synchronized (repositoryResolverLock) {
+                    if (repositoryResolver == null || !config.equals(repositoryResolverConfig)) {
+                        closeRepositoryResolver();
+                        repositoryResolver = MavenResolvers.createMavenResolver(config, "org.ops4j.pax.url.mvn");
+                        repositoryResolverConfig = config;
+                    }
+                    return repositoryResolver;
+                }
+            }
+        };
+    }
+
+    private void closeRepositoryResolver() {
+        if (repositoryResolver != null) {
+            try {
+                repositoryResolver.close();
+            } catch (IOException e) {
+                LOGGER.debug("Unable to close the maven resolver of the repository cache", e);
+            }
+            repositoryResolver = null;
+            repositoryResolverConfig = null;
         }
     }
 
@@ -32,10 +32,16 @@ import org.apache.karaf.features.internal.model.JaxbUtil;
 public class RepositoryImpl implements Repository {
 
     private final URI uri;
+    private final RepositoryModelCache cache;
     private Features features;
 
     public RepositoryImpl(URI uri) {
+        this(uri, null);
+    }
+
+    public RepositoryImpl(URI uri, RepositoryModelCache cache) {
         this.uri = uri;
+        this.cache = cache;
     }
 
     public URI getURI() {
@@ -70,6 +76,14 @@ public class RepositoryImpl implements Repository {
 
     public void load(boolean validate) throws IOException {
         if (features == null) {
+            if (cache != null) {
+                try {
+                    features = cache.load(uri, validate);
+                } catch (Exception e) {
+                    throw (IOException) new IOException(e.getMessage() + " : " + uri).initCause(e);
+                }
+                return;
+            }
             try (
                     InputStream inputStream = new InterruptibleInputStream(uri.toURL().openStream())
             ) {
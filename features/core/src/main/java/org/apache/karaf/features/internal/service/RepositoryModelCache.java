@@ -0,0 +1,359 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features.internal.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamField;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.CRC32;
+
+import org.apache.karaf.features.internal.model.Bundle;
+import org.apache.karaf.features.internal.model.Capability;
+import org.apache.karaf.features.internal.model.Conditional;
+import org.apache.karaf.features.internal.model.Config;
+import org.apache.karaf.features.internal.model.ConfigFile;
+import org.apache.karaf.features.internal.model.Content;
+import org.apache.karaf.features.internal.model.Dependency;
+import org.apache.karaf.features.internal.model.Feature;
+import org.apache.karaf.features.internal.model.Features;
+import org.apache.karaf.features.internal.model.JaxbUtil;
+import org.apache.karaf.features.internal.model.Requirement;
+import org.apache.karaf.features.internal.model.ScopeFilter;
+import org.apache.karaf.features.internal.model.Scoping;
+import org.ops4j.pax.url.mvn.MavenResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent cache of parsed features repositories.
+ *
+ * Each repository is stored in its own file, together with a validator used
+ * to detect if the repository has changed without downloading it: the last
+ * modification time and length of the local file (<code>mvn:</code> urls are
+ * first resolved to a local file), or the <code>ETag</code> or
+ * <code>Last-Modified</code> headers for other urls. A checksum of the raw
+ * content is only used when the url does not provide any of those.
+ * Unchanged repositories are loaded from the cache without parsing the xml.
+ * Only the most recently used entries are kept.
+ *
+ * Entries are only used by the same version of the features service, and
+ * if the serialized fields of the model classes did not change.
+ */
+public class RepositoryModelCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RepositoryModelCache.class);
+
+    private static final int VERSION = 3;
+
+    /**
+     * Serializable classes of the features model, whose fields are part of the cache format.
+     */
+    private static final Class<?>[] MODEL_CLASSES = {
+            Bundle.class, Capability.class, Conditional.class, Config.class, ConfigFile.class, Content.class,
+            Dependency.class, Feature.class, Features.class, Requirement.class, ScopeFilter.class, Scoping.class
+    };
+
+    private static final int MAX_ENTRIES = 256;
+
+    private static final long MAX_TMP_AGE = 60 * 60 * 1000L;
+
+    private static final String EXTENSION = ".ser";
+
+    private static final String TMP_EXTENSION = ".tmp";
+
+    /**
+     * Provides the maven resolver used to find the local file of <code>mvn:</code> repositories.
+     * The cache does not close the resolvers it is given.
+     */
+    public interface ResolverProvider {
+
+        MavenResolver getResolver() throws Exception;
+
+    }
+
+    private final File directory;
+    private final String format;
+    private final ResolverProvider resolverProvider;
+
+    public RepositoryModelCache(File directory) {
+        this(directory, (MavenResolver) null);
+    }
+
+    public RepositoryModelCache(File directory, final MavenResolver resolver) {
+        this(directory, "", resolver == null ? null : new ResolverProvider() {
+            @Override
+            public MavenResolver getResolver() {
+                return resolver;
+            }
+        });
+    }
+
+    /**
+     * @param directory the directory holding the cache entries
+     * @param version the version of the features service, entries written by another version are ignored
+     * @param resolverProvider the provider of the maven resolver, or <code>null</code>
+     */
+    public RepositoryModelCache(File directory, String version, ResolverProvider resolverProvider) {
+        this.directory = directory;
+        this.format = VERSION + ":" + version + ":" + getModelDigest();
+        this.resolverProvider = resolverProvider;
+    }
+
+    public Features load(URI uri, boolean validate) throws Exception {
+        String location = uri.toASCIIString();
+        File cacheFile = getCacheFile(location);
+        File file = getLocalFile(uri);
+        if (file != null && file.isFile()) {
+            String validator = "file:" + file.lastModified() + ":" + file.length();
+            Features features = read(cacheFile, location, validate, validator);
+            if (features == null) {
+                features = unmarshal(location, readFully(file.toURI().toURL().openConnection()), validate);
+                write(cacheFile, location, validate, validator, features);
+            }
+            return features;
+        }
+        URLConnection connection = uri.toURL().openConnection();
+        if (connection instanceof HttpURLConnection) {
+            ((HttpURLConnection) connection).setRequestMethod("HEAD");
+        }
+        String validator = getValidator(connection);
+        if (validator != null) {
+            Features features = read(cacheFile, location, validate, validator);
+            if (features != null) {
+                if (connection instanceof HttpURLConnection) {
+                    ((HttpURLConnection) connection).disconnect();
+                }
+                return features;
+            }
+        }
+        if (connection instanceof HttpURLConnection) {
+            ((HttpURLConnection) connection).disconnect();
+            connection = uri.toURL().openConnection();
+        }
+        byte[] data = readFully(connection);
+        validator = getValidator(connection);
+        if (validator == null) {
+            validator = "checksum:" + checksum(data) + ":" + data.length;
+        }
+        Features features = read(cacheFile, location, validate, validator);
+        if (features == null) {
+            features = unmarshal(location, data, validate);
+            write(cacheFile, location, validate, validator, features);
+        }
+        return features;
+    }
+
+    private File getLocalFile(URI uri) {
+        if ("file".equals(uri.getScheme())) {
+            return new File(uri);
+        }
+        if (resolverProvider != null && "mvn".equals(uri.getScheme())) {
+            try {
+                MavenResolver resolver = resolverProvider.getResolver();
+                if (resolver != null) {
+                    return resolver.resolve(uri.toASCIIString());
+                }
+            } catch (Exception e) {
+                LOGGER.debug("Unable to resolve repository " + uri, e);
+            }
+        }
+        return null;
+    }
+
+    private static String getValidator(URLConnection connection) throws IOException {
+        String etag = connection.getHeaderField("ETag");
+        if (etag != null) {
+            return "etag:" + etag;
+        }
+        long lastModified = connection.getLastModified();
+        if (lastModified > 0) {
+            return "modified:" + lastModified + ":" + connection.getContentLengthLong();
+        }
+        return null;
+    }
+
+    private Features read(File cacheFile, String location, boolean validate, String validator) {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        try (
+                ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))
+        ) {
+            if (!format.equals(ois.readUTF()) || !location.equals(ois.readUTF())) {
+                return null;
+            }
+            boolean validated = ois.readBoolean();
+            if ((validate && !validated) || !validator.equals(ois.readUTF())) {
+                return null;
+            }
+            Features features = (Features) ois.readObject();
+            cacheFile.setLastModified(System.currentTimeMillis());
+            return features;
+        } catch (Exception e) {
+            LOGGER.debug("Unable to read cached repository " + location, e);
+            return null;
+        }
+    }
+
+    private void write(File cacheFile, String location, boolean validate, String validator, Features features) {
+        File tmp = null;
+        try {
+            directory.mkdirs();
+            tmp = File.createTempFile(cacheFile.getName(), TMP_EXTENSION, directory);
+            try (
+                    ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))
+            ) {
+                oos.writeUTF(format);
+                oos.writeUTF(location);
+                oos.writeBoolean(validate);
+                oos.writeUTF(validator);
+                oos.writeObject(features);
+            }
+            if (!tmp.renameTo(cacheFile)) {
+                cacheFile.delete();
+                if (!tmp.renameTo(cacheFile)) {
+                    throw new IOException("Unable to rename " + tmp + " to " + cacheFile);
+                }
+            }
+            purge();
+        } catch (Exception e) {
+            LOGGER.debug("Unable to cache repository " + location, e);
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Removes the least recently used entries above {@link #MAX_ENTRIES}, and the temporary
+     * files left behind by writes which did not complete.
+     */
+    private void purge() {
+        long now = System.currentTimeMillis();
+        File[] tmps = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(TMP_EXTENSION);
+            }
+        });
+        if (tmps != null) {
+            for (File tmp : tmps) {
+                if (now - tmp.lastModified() > MAX_TMP_AGE) {
+                    tmp.delete();
+                }
+            }
+        }
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(EXTENSION);
+            }
+        });
+        if (files != null && files.length > MAX_ENTRIES) {
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File f1, File f2) {
+                    return Long.compare(f2.lastModified(), f1.lastModified());
+                }
+            });
+            for (int i = MAX_ENTRIES; i < files.length; i++) {
+                files[i].delete();
+            }
+        }
+    }
+
+    private File getCacheFile(String location) throws Exception {
+        return new File(directory, sha1(location) + EXTENSION);
+    }
+
+    /**
+     * Digest of the serialized fields of the model classes, so that entries written
+     * before a change of the model are not deserialized with missing fields.
+     */
+    private static String getModelDigest() {
+        StringBuilder sb = new StringBuilder();
+        for (Class<?> clazz : MODEL_CLASSES) {
+            ObjectStreamClass osc = ObjectStreamClass.lookup(clazz);
+            sb.append(osc.getName()).append('{');
+            for (ObjectStreamField field : osc.getFields()) {
+                sb.append(field.getName()).append(':').append(field.getTypeCode());
+                if (field.getTypeString() != null) {
+                    sb.append(field.getTypeString());
+                }
+                sb.append(';');
+            }
+            sb.append('}');
+        }
+        try {
+            return sha1(sb.toString());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String sha1(String value) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        byte[] hash = digest.digest(value.getBytes("UTF-8"));
+        StringBuilder sb = new StringBuilder();
+        for (byte b : hash) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return sb.toString();
+    }
+
+    private static Features unmarshal(String location, byte[] data, boolean validate) {
+        return JaxbUtil.unmarshal(location, new ByteArrayInputStream(data), validate);
+    }
+
+    private static byte[] readFully(URLConnection connection) throws IOException {
+        try (
+                InputStream is = new RepositoryImpl.InterruptibleInputStream(connection.getInputStream())
+        ) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = is.read(buffer)) != -1) {
+                baos.write(buffer, 0, len);
+            }
+            return baos.toByteArray();
+        }
+    }
+
+    private static long checksum(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return crc.getValue();
+    }
+
+}
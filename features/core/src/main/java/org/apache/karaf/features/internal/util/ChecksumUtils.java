@@ -16,13 +16,39 @@
  */
 package org.apache.karaf.features.internal.util;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.zip.CRC32;
 
 public final class ChecksumUtils {
 
+    /**
+     * Granularity of the file modification time on the slowest file systems.
+     */
+    private static final long MODIFICATION_GRANULARITY = 2000;
+
+    /**
+     * Maximum number of cached file checksums.
+     */
+    private static final int MAX_FILE_CHECKSUMS = 1024;
+
+    /**
+     * Checksums of the most recently used files, keyed by their absolute path.
+     */
+    private static final Map<String, FileChecksum> FILE_CHECKSUMS = Collections.synchronizedMap(
+            new LinkedHashMap<String, FileChecksum>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, FileChecksum> eldest) {
+                    return size() > MAX_FILE_CHECKSUMS;
+                }
+            });
+
     private ChecksumUtils() {
     }
 
@@ -43,6 +69,64 @@ public final class ChecksumUtils {
         return crc.getValue();
     }
 
+    /**
+     * Compute a checksum of the content of the given file.
+     * The file is only read if its length or last modified date have changed since
+     * its checksum has been computed. As the modification time may have a coarse granularity,
+     * a file modified shortly before its checksum has been computed is always read again.
+     *
+     * @param file the file
+     * @return a checksum identifying any change
+     */
+    public static long checksum(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        long length = file.length();
+        long lastModified = file.lastModified();
+        FileChecksum cached = FILE_CHECKSUMS.get(path);
+        if (cached != null && cached.isValid(length, lastModified)) {
+            return cached.checksum;
+        }
+        long computed = System.currentTimeMillis();
+        long checksum;
+        try (
+                InputStream is = new FileInputStream(file)
+        ) {
+            checksum = checksum(is);
+        }
+        FILE_CHECKSUMS.put(path, new FileChecksum(length, lastModified, computed, checksum));
+        return checksum;
+    }
+
+    /**
+     * Remember the checksum of a file which has just been read by other means,
+     * so that {@link #checksum(File)} does not need to read it again.
+     *
+     * @param file the file
+     * @param checksum the checksum of its content
+     */
+    public static void cacheChecksum(File file, long checksum) {
+        FILE_CHECKSUMS.put(file.getAbsolutePath(),
+                new FileChecksum(file.length(), file.lastModified(), System.currentTimeMillis(), checksum));
+    }
+
+    private static class FileChecksum {
+        final long length;
+        final long lastModified;
+        final boolean racy;
+        final long checksum;
+
+        FileChecksum(long length, long lastModified, long computed, long checksum) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.racy = lastModified + MODIFICATION_GRANULARITY > computed;
+            this.checksum = checksum;
+        }
+
+        boolean isValid(long length, long lastModified) {
+            return !racy && this.length == length && this.lastModified == lastModified;
+        }
+    }
+
     public static class CRCInputStream extends FilterInputStream {
 
         private final CRC32 crc = new CRC32();
@@ -16,6 +16,8 @@
  */
 package org.apache.karaf.features.management;
 
+import java.util.Map;
+
 import javax.management.openmbean.TabularData;
 
 public interface FeaturesServiceMBean {
@@ -110,6 +112,13 @@ public interface FeaturesServiceMBean {
 
     TabularData getRepositories() throws Exception;
 
+    /**
+     * Get the timings (in milliseconds) and counts of the last deployment.
+     *
+     * @return the statistics of the last deployment, empty if no deployment has been done.
+     */
+    Map<String, Long> getLastDeploymentStatistics();
+
     void addRepository(String url) throws Exception;
 
     void addRepository(String url, boolean install) throws Exception;
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features.internal.download.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ContentStoreTest {
+
+    @Test
+    public void testStoreAndReload() throws Exception {
+        File dir = Files.createTempDirectory("store").toFile();
+        File first = new File(dir, "first.jar");
+        File second = new File(dir, "second.jar");
+        write(first, "content");
+        write(second, "content");
+
+        ContentStore store = new ContentStore(new File(dir, "store"));
+        assertNull(store.get("mvn:org.foo/bar/1.0"));
+        File stored = store.put("mvn:org.foo/bar/1.0", first);
+        assertTrue(stored.isFile());
+        assertEquals(stored, store.get("mvn:org.foo/bar/1.0"));
+        // identical contents are only stored once
+        assertEquals(stored, store.put("mvn:org.foo/baz/1.0", second));
+
+        // the index is read back by a new store
+        store = new ContentStore(new File(dir, "store"));
+        assertEquals(stored, store.get("mvn:org.foo/bar/1.0"));
+        assertEquals(stored, store.get("mvn:org.foo/baz/1.0"));
+    }
+
+    @Test
+    public void testEvictionAndCompaction() throws Exception {
+        File dir = Files.createTempDirectory("store").toFile();
+        File first = new File(dir, "first.jar");
+        File second = new File(dir, "second.jar");
+        File third = new File(dir, "third.jar");
+        write(first, "0123456789");
+        write(second, "abcdefghij");
+        write(third, "ABCDEFGHIJ");
+
+        File storeDir = new File(dir, "store");
+        ContentStore store = new ContentStore(storeDir, 25);
+        File storedFirst = store.put("mvn:org.foo/first/1.0", first);
+        File storedSecond = store.put("mvn:org.foo/second/1.0", second);
+        // access the first url so that the second one is the least recently used
+        assertEquals(storedFirst, store.get("mvn:org.foo/first/1.0"));
+        File storedThird = store.put("mvn:org.foo/third/1.0", third);
+
+        assertNull(store.get("mvn:org.foo/second/1.0"));
+        assertFalse(storedSecond.exists());
+        assertEquals(storedFirst, store.get("mvn:org.foo/first/1.0"));
+        assertEquals(storedThird, store.get("mvn:org.foo/third/1.0"));
+
+        // the index only contains the remaining entries
+        List<String> lines = Files.readAllLines(new File(storeDir, "index").toPath(), StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+
+        store = new ContentStore(storeDir, 25);
+        assertNull(store.get("mvn:org.foo/second/1.0"));
+        assertEquals(storedFirst, store.get("mvn:org.foo/first/1.0"));
+        assertEquals(storedThird, store.get("mvn:org.foo/third/1.0"));
+    }
+
+    @Test
+    public void testLoadPurgesUnreferencedArtifacts() throws Exception {
+        File dir = Files.createTempDirectory("store").toFile();
+        File first = new File(dir, "first.jar");
+        write(first, "content");
+
+        File storeDir = new File(dir, "store");
+        File stored = new ContentStore(storeDir).put("mvn:org.foo/bar/1.0", first);
+        File orphan = new File(stored.getParentFile(), "orphan");
+        write(orphan, "orphan");
+        // stale entries appended for the same url are dropped when loading
+        try (FileOutputStream os = new FileOutputStream(new File(storeDir, "index"), true)) {
+            os.write(("0000 mvn:org.foo/missing/1.0\n" + stored.getName() + " mvn:org.foo/bar/1.0\n").getBytes("UTF-8"));
+        }
+
+        ContentStore store = new ContentStore(storeDir);
+        assertEquals(stored, store.get("mvn:org.foo/bar/1.0"));
+        assertNull(store.get("mvn:org.foo/missing/1.0"));
+        assertFalse(orphan.exists());
+        List<String> lines = Files.readAllLines(new File(storeDir, "index").toPath(), StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+    }
+
+    @Test
+    public void testStorableUrls() {
+        assertTrue(ContentStore.isStorable("mvn:org.foo/bar/1.0"));
+        assertTrue(ContentStore.isStorable("mvn:org.foo/bar/1.0/xml/features"));
+        assertTrue(ContentStore.isStorable("wrap:mvn:org.foo/bar/1.0$Bundle-SymbolicName=bar"));
+        assertTrue(ContentStore.isStorable("mvn:http://repo.example.org/maven2!org.foo/bar/1.0"));
+        assertFalse(ContentStore.isStorable("mvn:org.foo/bar/1.0-SNAPSHOT"));
+        assertFalse(ContentStore.isStorable("file:/tmp/bar.jar"));
+        assertFalse(ContentStore.isStorable("mvn:file:/tmp/repo!org.foo/bar/1.0"));
+        assertFalse(ContentStore.isStorable("blueprint:mvn:org.foo/bar/1.0/xml"));
+    }
+
+    @Test
+    public void testVersionRangesAreNotStorable() {
+        assertFalse(ContentStore.isStorable("mvn:org.foo/bar/[1,2)"));
+        assertFalse(ContentStore.isStorable("mvn:org.foo/bar/[1.0,2.0]/xml/features"));
+        assertFalse(ContentStore.isStorable("mvn:org.foo/bar/(,2.0)"));
+    }
+
+    @Test
+    public void testLatestAndReleaseAreNotStorable() {
+        assertFalse(ContentStore.isStorable("mvn:org.foo/bar/LATEST"));
+        assertFalse(ContentStore.isStorable("mvn:org.foo/bar/RELEASE/xml/features"));
+    }
+
+    @Test
+    public void testUnversionedUrlsAreNotStorable() {
+        assertFalse(ContentStore.isStorable("mvn:org.foo/bar"));
+        assertFalse(ContentStore.isStorable("mvn:org.foo/bar/"));
+        assertFalse(ContentStore.isStorable("mvn:org.foo/bar//jar"));
+    }
+
+    @Test
+    public void testHttpUrlsAreNotStorable() {
+        assertFalse(ContentStore.isStorable("http://repo.example.org/bar-1.0.jar"));
+        assertFalse(ContentStore.isStorable("https://repo.example.org/bar-1.0.jar"));
+    }
+
+    private static void write(File file, String content) throws IOException {
+        try (FileOutputStream os = new FileOutputStream(file)) {
+            os.write(content.getBytes());
+        }
+    }
+
+}
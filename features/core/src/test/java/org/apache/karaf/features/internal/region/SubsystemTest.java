@@ -16,6 +16,7 @@
  */
 package org.apache.karaf.features.internal.region;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -225,6 +226,61 @@ public class SubsystemTest {
         verify(resolver, expected);
     }
 
+    @Test
+    public void testCachedResolution() throws Exception {
+        RepositoryImpl repo = new RepositoryImpl(getClass().getResource("data2/features.xml").toURI());
+
+        Map<String, Set<String>> features = new HashMap<String, Set<String>>();
+        addToMapSet(features, "root/apps1", "f1");
+        addToMapSet(features, "root/apps1", "f3");
+        addToMapSet(features, "root/apps2", "f1");
+
+        Map<String, Set<String>> expected = new HashMap<String, Set<String>>();
+        addToMapSet(expected, "root/apps1", "c/1.0.0");
+        addToMapSet(expected, "root/apps1", "b/1.0.0");
+        addToMapSet(expected, "root/apps1", "e/1.0.0");
+        addToMapSet(expected, "root/apps1#f1", "a/1.0.0");
+        addToMapSet(expected, "root/apps1#f1", "d/1.0.0");
+        addToMapSet(expected, "root/apps2", "b/1.0.0");
+        addToMapSet(expected, "root/apps2", "c/1.0.0");
+        addToMapSet(expected, "root/apps2#f1", "a/1.0.0");
+
+        File dir = File.createTempFile("resolutions", null);
+        dir.delete();
+        ResolutionCache cache = new ResolutionCache(dir);
+        try {
+            for (int i = 0; i < 2; i++) {
+                SubsystemResolver resolver = new SubsystemResolver(new TestDownloadManager(getClass(), "data2"), cache);
+                resolver.prepare(Arrays.asList(repo.getFeatures()),
+                                 features,
+                                 Collections.<String, Set<BundleRevision>>emptyMap());
+                resolver.resolve(Collections.<String>emptySet(),
+                                 FeaturesService.DEFAULT_FEATURE_RESOLUTION_RANGE,
+                                 null);
+
+                verify(resolver, expected);
+                assertEquals(i > 0, isCached(resolver));
+                assertEquals(1, dir.listFiles().length);
+            }
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    private boolean isCached(SubsystemResolver resolver) {
+        for (List<Wire> wires : resolver.getWiring().values()) {
+            for (Wire wire : wires) {
+                if (wire instanceof ResolutionCache.WireImpl) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     private void verify(SubsystemResolver resolver, Map<String, Set<String>> expected) {
         Map<String, Set<String>> mapping = getBundleNamesPerRegions(resolver);
         if (!expected.equals(mapping)) {
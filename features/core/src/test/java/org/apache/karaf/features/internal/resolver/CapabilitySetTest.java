@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features.internal.resolver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.osgi.framework.Version;
+import org.osgi.resource.Capability;
+
+import static org.junit.Assert.assertEquals;
+
+public class CapabilitySetTest {
+
+    private static final String PACKAGE_NAMESPACE = "osgi.wiring.package";
+
+    private static final String[] FILTERS = {
+        "(osgi.wiring.package=org.foo.p3)",
+        "(&(osgi.wiring.package=org.foo.p3)(version>=1.0.0)(!(version>=2.0.0)))",
+        "(&(version>=1.2.0)(!(version>=3.0.0))(osgi.wiring.package=org.foo.p5))",
+        "(version>=2.1.0)",
+        "(version<=1.1.0)",
+        "(!(version>=1.5.0))",
+        "(version=2.0.0)",
+        "(osgi.wiring.package=org.foo.p1*)",
+        "(osgi.wiring.package=*p2)",
+        "(osgi.wiring.package=org.*.p1*)",
+        "(level>=40)",
+        "(level<=10)",
+        "(level=abc)",
+        "(tags=t2)",
+        "(tags=t*)",
+        "(|(version<=1.0.0)(level>=90))",
+        "(&(level>=20)(version>=1.3.0)(tags=t1))",
+    };
+
+    @Test
+    public void testMatchIsConsistentWithMatches() {
+        CapabilitySet capSet = new CapabilitySet(Collections.singletonList(PACKAGE_NAMESPACE));
+        List<Capability> caps = createCapabilities(200);
+        for (Capability cap : caps) {
+            capSet.addCapability(cap);
+        }
+        checkFilters(capSet, caps);
+
+        // the indexes are kept up to date when capabilities are added or removed
+        List<Capability> removed = new ArrayList<>(caps.subList(0, 50));
+        for (Capability cap : removed) {
+            capSet.removeCapability(cap);
+        }
+        caps.removeAll(removed);
+        List<Capability> added = createCapabilities(30);
+        for (Capability cap : added) {
+            capSet.addCapability(cap);
+        }
+        caps.addAll(added);
+        checkFilters(capSet, caps);
+    }
+
+    private static void checkFilters(CapabilitySet capSet, List<Capability> caps) {
+        for (String filter : FILTERS) {
+            SimpleFilter sf = SimpleFilter.parse(filter);
+            Set<Capability> expected = new HashSet<>();
+            for (Capability cap : caps) {
+                if (CapabilitySet.matches(cap, sf)) {
+                    expected.add(cap);
+                }
+            }
+            assertEquals(filter, expected, capSet.match(sf, true));
+        }
+    }
+
+    private static List<Capability> createCapabilities(int nb) {
+        ResourceImpl resource = new ResourceImpl("test", "osgi.bundle", new Version(1, 0, 0));
+        List<Capability> caps = new ArrayList<>();
+        for (int i = 0; i < nb; i++) {
+            Map<String, Object> attrs = new HashMap<>();
+            attrs.put(PACKAGE_NAMESPACE, "org.foo.p" + (i % 13));
+            attrs.put("version", new Version(1 + i % 3, i % 7, i % 2));
+            if (i % 5 != 0) {
+                attrs.put("level", (long) (i % 100));
+            }
+            if (i % 3 == 0) {
+                attrs.put("tags", Arrays.asList("t" + (i % 4), "t" + (i % 6)));
+            } else if (i % 3 == 1) {
+                attrs.put("tags", new String[] {"t" + (i % 5)});
+            }
+            caps.add(new CapabilityImpl(resource, PACKAGE_NAMESPACE, Collections.<String, String>emptyMap(), attrs));
+        }
+        return caps;
+    }
+
+}
@@ -29,6 +29,7 @@ import java.util.Set;
 import java.util.jar.Manifest;
 
 import org.apache.felix.utils.version.VersionRange;
+import org.apache.karaf.features.DeploymentStatistics;
 import org.apache.karaf.features.Feature;
 import org.apache.karaf.features.FeatureEvent;
 import org.apache.karaf.features.FeaturesService;
@@ -47,6 +48,8 @@ import static org.apache.karaf.features.FeaturesService.*;
 import static org.apache.karaf.features.internal.util.MapUtils.addToMapSet;
 import static org.easymock.EasyMock.anyInt;
 import static org.easymock.EasyMock.anyObject;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class DeployerTest {
@@ -337,6 +340,10 @@ public class DeployerTest {
 
         EasyMock.verify(callback);
 
+        // the artifacts of the prerequisite have been counted
+        long prerequisiteArtifacts = deployer.getStatistics().getCounter(DeploymentStatistics.PROVIDED_ARTIFACTS);
+        assertEquals(manager.getProviders().size(), prerequisiteArtifacts);
+
         EasyMock.reset(callback);
 
         callback.print(EasyMock.anyString(), EasyMock.anyBoolean());
@@ -385,9 +392,16 @@ public class DeployerTest {
         request.requirements = new HashMap<>();
         addToMapSet(request.requirements, ROOT_REGION, f2.getName());
 
-        deployer.deploy(dstate, request);
+        // retry with a new deployer sharing the download manager, as the features service does
+        Deployer retry = new Deployer(manager, callback);
+        retry.deploy(dstate, request);
 
         EasyMock.verify(callback);
+
+        // the artifacts provided for the prerequisite are not counted again
+        assertEquals(manager.getProviders().size(),
+                prerequisiteArtifacts + retry.getStatistics().getCounter(DeploymentStatistics.PROVIDED_ARTIFACTS));
+        assertTrue(retry.getStatistics().getCounter(DeploymentStatistics.PROVIDED_ARTIFACTS) > 0);
     }
 
     private TestBundle createTestBundle(long bundleId, int state, String dir, String name) throws IOException, BundleException {
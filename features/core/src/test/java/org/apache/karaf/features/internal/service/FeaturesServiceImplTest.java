@@ -23,9 +23,12 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.Writer;
+import java.net.URI;
 import java.util.Map;
 
 import org.apache.karaf.features.Feature;
@@ -97,6 +100,79 @@ public class FeaturesServiceImplTest extends TestBase {
         assertEquals("2.0.0", impl.getFeatures("transaction", org.apache.karaf.features.internal.model.Feature.DEFAULT_VERSION)[0].getVersion());
     }
 
+    @Test
+    public void testRepositoriesIndex() throws Exception {
+        URI child = createTempRepo("<features name='child' xmlns='http://karaf.apache.org/xmlns/features/v1.0.0'>"
+                + "  <feature name='f2' version='1.0'><bundle>bundle2</bundle></feature>"
+                + "</features>");
+        URI parent = createTempRepo("<features name='parent' xmlns='http://karaf.apache.org/xmlns/features/v1.0.0'>"
+                + "  <repository>" + child + "</repository>"
+                + "  <feature name='f1' version='1.0'><feature>f2</feature></feature>"
+                + "</features>");
+        URI other = createTempRepo("<features name='other' xmlns='http://karaf.apache.org/xmlns/features/v1.0.0'>"
+                + "  <feature name='f3' version='1.0'><bundle>bundle3</bundle></feature>"
+                + "</features>");
+
+        FeaturesServiceImpl impl = new FeaturesServiceImpl(null, null, new Storage(), null, null, null, null, "", null, null, null, null);
+        impl.addRepository(other);
+        // build the index, then patch it
+        assertEquals(1, impl.listFeatures().length);
+        impl.addRepository(parent);
+        assertEquals(3, impl.listFeatures().length);
+        assertNotNull(impl.getFeature("f2", "1.0"));
+        assertEquals(3, impl.listRepositories().length);
+
+        impl.removeRepository(parent);
+        assertEquals(1, impl.listFeatures().length);
+        assertNull(impl.getFeature("f1"));
+        assertNull(impl.getFeature("f2"));
+        assertNotNull(impl.getFeature("f3"));
+    }
+
+    @Test
+    public void testAddRepositoryWithMissingReference() throws Exception {
+        URI other = createTempRepo("<features name='other' xmlns='http://karaf.apache.org/xmlns/features/v1.0.0'>"
+                + "  <feature name='f3' version='1.0'><bundle>bundle3</bundle></feature>"
+                + "</features>");
+        URI child = createTempRepo("<features name='child' xmlns='http://karaf.apache.org/xmlns/features/v1.0.0'>"
+                + "  <feature name='f2' version='1.0'><bundle>bundle2</bundle></feature>"
+                + "</features>");
+        File missing = File.createTempFile("karaf", ".feature");
+        missing.delete();
+        URI parent = createTempRepo("<features name='parent' xmlns='http://karaf.apache.org/xmlns/features/v1.0.0'>"
+                + "  <repository>" + child + "</repository>"
+                + "  <repository>" + missing.toURI() + "</repository>"
+                + "  <feature name='f1' version='1.0'><feature>f2</feature></feature>"
+                + "</features>");
+
+        FeaturesServiceImpl impl = new FeaturesServiceImpl(null, null, new Storage(), null, null, null, null, "", null, null, null, null);
+        impl.addRepository(other);
+        // build the index
+        assertEquals(1, impl.listFeatures().length);
+        try {
+            impl.addRepository(parent);
+            fail("The repository references a missing repository");
+        } catch (Exception e) {
+            // expected
+        }
+        assertEquals(1, impl.listRepositories().length);
+        assertEquals(1, impl.listFeatures().length);
+        assertNull(impl.getFeature("f1"));
+        assertNull(impl.getFeature("f2"));
+        assertNotNull(impl.getFeature("f3"));
+    }
+
+    private URI createTempRepo(String repoContent) throws IOException {
+        File tmp = File.createTempFile("karaf", ".feature");
+        tmp.deleteOnExit();
+        try (
+                Writer writer = new FileWriter(tmp)
+        ) {
+            writer.write(repoContent);
+        }
+        return tmp.toURI();
+    }
+
     /**
      * This test ensures that every feature get installed only once, even if it appears multiple times in the list
      * of transitive feature dependencies (KARAF-1600)
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features.internal.service;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.karaf.features.internal.model.Features;
+import org.easymock.EasyMock;
+import org.junit.Test;
+import org.ops4j.pax.url.mvn.MavenResolver;
+
+import static org.junit.Assert.assertEquals;
+
+public class RepositoryModelCacheTest {
+
+    private static final String REPO = "<features name='%s' xmlns='http://karaf.apache.org/xmlns/features/v1.0.0'>"
+            + "  <feature name='f1' version='1.0'><bundle>bundle1</bundle></feature>"
+            + "</features>";
+
+    @Test
+    public void testCachedRepository() throws Exception {
+        File dir = Files.createTempDirectory("karaf-repo-cache").toFile();
+        File repo = new File(dir, "repo.xml");
+        write(repo, String.format(REPO, "test1"));
+        long lastModified = repo.lastModified();
+
+        RepositoryModelCache cache = new RepositoryModelCache(new File(dir, "cache"));
+        Features features = cache.load(repo.toURI(), true);
+        assertEquals("test1", features.getName());
+        assertEquals(1, features.getFeature().size());
+        assertEquals(1, new File(dir, "cache").list().length);
+
+        // Same length and modification time: the xml is not parsed again
+        write(repo, String.format(REPO, "test2"));
+        repo.setLastModified(lastModified);
+        features = new RepositoryModelCache(new File(dir, "cache")).load(repo.toURI(), true);
+        assertEquals("test1", features.getName());
+        assertEquals("bundle1", features.getFeature().get(0).getBundle().get(0).getLocation());
+
+        // Modified repository
+        repo.setLastModified(lastModified + 10000);
+        features = cache.load(repo.toURI(), true);
+        assertEquals("test2", features.getName());
+    }
+
+    @Test
+    public void testEntriesOfAnotherVersionAreIgnored() throws Exception {
+        File dir = Files.createTempDirectory("karaf-repo-cache").toFile();
+        File repo = new File(dir, "repo.xml");
+        write(repo, String.format(REPO, "test1"));
+        long lastModified = repo.lastModified();
+
+        assertEquals("test1", new RepositoryModelCache(new File(dir, "cache"), "1.0.0", null).load(repo.toURI(), true).getName());
+
+        write(repo, String.format(REPO, "test2"));
+        repo.setLastModified(lastModified);
+        assertEquals("test1", new RepositoryModelCache(new File(dir, "cache"), "1.0.0", null).load(repo.toURI(), true).getName());
+        // an upgraded features service parses the repository again
+        assertEquals("test2", new RepositoryModelCache(new File(dir, "cache"), "1.0.1", null).load(repo.toURI(), true).getName());
+    }
+
+    @Test
+    public void testMavenRepositoryUsesResolvedFile() throws Exception {
+        File dir = Files.createTempDirectory("karaf-repo-cache").toFile();
+        File repo = new File(dir, "repo.xml");
+        write(repo, String.format(REPO, "test1"));
+        long lastModified = repo.lastModified();
+        // there is no mvn: url handler, so the repository can only be read through the resolver
+        URI uri = URI.create("mvn:org.foo/bar/1.0/xml/features");
+        MavenResolver resolver = EasyMock.createMock(MavenResolver.class);
+        EasyMock.expect(resolver.resolve(uri.toString())).andReturn(repo).times(3);
+        EasyMock.replay(resolver);
+
+        RepositoryModelCache cache = new RepositoryModelCache(new File(dir, "cache"), resolver);
+        assertEquals("test1", cache.load(uri, false).getName());
+
+        write(repo, String.format(REPO, "test2"));
+        repo.setLastModified(lastModified);
+        assertEquals("test1", cache.load(uri, false).getName());
+
+        repo.setLastModified(lastModified + 10000);
+        assertEquals("test2", cache.load(uri, false).getName());
+        EasyMock.verify(resolver);
+        // the cache file is written through a temporary file which does not stay around
+        assertEquals(1, new File(dir, "cache").list().length);
+    }
+
+    @Test
+    public void testHttpRepositoryValidatedWithETag() throws Exception {
+        File dir = Files.createTempDirectory("karaf-repo-cache").toFile();
+        final byte[][] content = { String.format(REPO, "test1").getBytes("UTF-8") };
+        final String[] etag = { "\"1\"" };
+        final AtomicInteger downloads = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/repo.xml", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("ETag", etag[0]);
+                if ("HEAD".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(200, -1);
+                } else {
+                    downloads.incrementAndGet();
+                    exchange.sendResponseHeaders(200, content[0].length);
+                    exchange.getResponseBody().write(content[0]);
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        try {
+            URI uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/repo.xml");
+            assertEquals("test1", new RepositoryModelCache(new File(dir, "cache")).load(uri, false).getName());
+            assertEquals(1, downloads.get());
+
+            // Same ETag: the repository is not downloaded again
+            content[0] = String.format(REPO, "test2").getBytes("UTF-8");
+            assertEquals("test1", new RepositoryModelCache(new File(dir, "cache")).load(uri, false).getName());
+            assertEquals(1, downloads.get());
+
+            etag[0] = "\"2\"";
+            assertEquals("test2", new RepositoryModelCache(new File(dir, "cache")).load(uri, false).getName());
+            assertEquals(2, downloads.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static void write(File file, String content) throws IOException {
+        try (
+                Writer writer = new FileWriter(file)
+        ) {
+            writer.write(content);
+        }
+    }
+
+}
@@ -114,7 +114,7 @@ public class TestDownloadManager implements DownloadManager, Downloader {
 
         @Override
         public File getFile() throws IOException {
-            throw new UnsupportedOperationException();
+            return null;
         }
 
     }
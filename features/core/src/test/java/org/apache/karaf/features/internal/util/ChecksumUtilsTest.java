@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features.internal.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChecksumUtilsTest {
+
+    @Test
+    public void testFileChecksum() throws Exception {
+        File file = File.createTempFile("checksum", ".jar");
+        try {
+            write(file, "first content");
+            long crc = ChecksumUtils.checksum(file);
+            assertEquals(ChecksumUtils.checksum(new ByteArrayInputStream("first content".getBytes())), crc);
+            assertEquals(crc, ChecksumUtils.checksum(file));
+
+            write(file, "second content, longer");
+            long newCrc = ChecksumUtils.checksum(file);
+            assertTrue(crc != newCrc);
+            assertEquals(ChecksumUtils.checksum(new ByteArrayInputStream("second content, longer".getBytes())), newCrc);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCachedChecksum() throws Exception {
+        File file = File.createTempFile("checksum", ".jar");
+        try {
+            write(file, "content");
+            assertTrue(file.setLastModified(System.currentTimeMillis() - 10000));
+            // a cached checksum is used as long as the file is not modified
+            ChecksumUtils.cacheChecksum(file, 42L);
+            assertEquals(42L, ChecksumUtils.checksum(file));
+
+            write(file, "modified content");
+            assertEquals(ChecksumUtils.checksum(new ByteArrayInputStream("modified content".getBytes())),
+                         ChecksumUtils.checksum(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testRecentlyModifiedFile() throws Exception {
+        File file = File.createTempFile("checksum", ".jar");
+        try {
+            write(file, "first content");
+            long lastModified = file.lastModified();
+            long crc = ChecksumUtils.checksum(file);
+
+            // rewritten within the modification time granularity with the same length
+            write(file, "other content");
+            assertTrue(file.setLastModified(lastModified));
+            long newCrc = ChecksumUtils.checksum(file);
+            assertTrue(crc != newCrc);
+            assertEquals(ChecksumUtils.checksum(new ByteArrayInputStream("other content".getBytes())), newCrc);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void write(File file, String content) throws IOException {
+        try (
+                FileOutputStream fos = new FileOutputStream(file)
+        ) {
+            fos.write(content.getBytes());
+        }
+    }
+
+}
@@ -24,12 +24,16 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.karaf.instance.core.Instance;
+import org.apache.karaf.instance.core.InstanceOperationListener;
 import org.apache.karaf.instance.core.InstanceService;
 import org.apache.karaf.shell.api.action.Action;
 import org.apache.karaf.shell.api.action.lifecycle.Reference;
+import org.apache.karaf.shell.support.MultiException;
 
 public abstract class InstanceCommandSupport implements Action {
 
+    static final int DEFAULT_PARALLELISM = 8;
+
     @Reference
     private InstanceService instanceService;
 
@@ -76,6 +80,38 @@ public abstract class InstanceCommandSupport implements Action {
         return result;
     }
 
+    /**
+     * Returns a listener printing the progress of an operation on several instances,
+     * or <code>null</code> if there is a single instance.
+     */
+    protected static InstanceOperationListener printProgress(final String done, final int total) {
+        if (total <= 1) {
+            return null;
+        }
+        return new InstanceOperationListener() {
+            private int completed;
+
+            public void completed(String name, Exception error) {
+                completed++;
+                if (error == null) {
+                    System.out.println("[" + completed + "/" + total + "] Instance " + name + " " + done);
+                } else {
+                    System.out.println("[" + completed + "/" + total + "] Instance " + name + " failed: " + error.getMessage());
+                }
+            }
+        };
+    }
+
+    protected static void throwIfErrors(String message, Map<String, Exception> results) throws MultiException {
+        List<Exception> errors = new ArrayList<>();
+        for (Exception error : results.values()) {
+            if (error != null) {
+                errors.add(error);
+            }
+        }
+        MultiException.throwIf(message, errors);
+    }
+
     private boolean match(String name, List<String> patterns) {
         for (String pattern : patterns) {
             if (name.matches(pattern)) {
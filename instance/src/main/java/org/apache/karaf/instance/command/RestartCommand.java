@@ -16,8 +16,9 @@
  */
 package org.apache.karaf.instance.command;
 
-import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.karaf.instance.command.completers.InstanceCompleter;
 import org.apache.karaf.instance.core.Instance;
@@ -26,7 +27,6 @@ import org.apache.karaf.shell.api.action.Command;
 import org.apache.karaf.shell.api.action.Completion;
 import org.apache.karaf.shell.api.action.Option;
 import org.apache.karaf.shell.api.action.lifecycle.Service;
-import org.apache.karaf.shell.support.MultiException;
 
 @Command(scope = "instance", name = "restart", description = "Restart an existing container instance.")
 @Service
@@ -38,6 +38,9 @@ public class RestartCommand extends InstanceCommandSupport {
     @Option(name = "-o", aliases = { "--java-opts"}, description = "Java options when launching the instance", required = false, multiValued = false)
     private String javaOpts;
 
+    @Option(name = "-p", aliases = { "--parallel"}, description = "Maximum number of instances processed at the same time", required = false, multiValued = false)
+    private int parallelism = DEFAULT_PARALLELISM;
+
     @Argument(index = 0, name = "name", description = "The name of the container instance", required = true, multiValued = true)
     @Completion(InstanceCompleter.class)
     private List<String> instances = null;
@@ -45,39 +48,24 @@ public class RestartCommand extends InstanceCommandSupport {
     static final String DEBUG_OPTS = " -Xdebug -Xnoagent -Djava.compiler=NONE -Xrunjdwp:transport=dt_socket,server=y,suspend=n,address=5005";
     static final String DEFAULT_OPTS = "-server -Xmx512M -Dcom.sun.management.jmxremote";
 
-    @SuppressWarnings("deprecation")
     protected Object doExecute() throws Exception {
-        MultiException exception = new MultiException("Error starting instance(s)");
-        List<Instance> toWaitFor = new ArrayList<>();
+        Map<String, String> toRestart = new LinkedHashMap<>();
         for (Instance instance : getMatchingInstances(instances)) {
-            try {
-                String opts = javaOpts;
-                if (opts == null) {
-                    opts = instance.getJavaOpts();
-                }
-                if (opts == null) {
-                    opts = DEFAULT_OPTS;
-                }
-                if (debug) {
-                    opts += DEBUG_OPTS;
-                }
-                instance.restart(opts);
-            } catch (Exception e) {
-                exception.addException(e);
+            String opts = javaOpts;
+            if (opts == null) {
+                opts = instance.getJavaOpts();
             }
-        }
-        exception.throwIfExceptions();
-        while (true) {
-            boolean allStarted = true;
-            for (Instance child : toWaitFor) {
-                allStarted &= Instance.STARTED.equals(child.getState());
+            if (opts == null) {
+                opts = DEFAULT_OPTS;
             }
-            if (allStarted) {
-                break;
-            } else {
-                Thread.sleep(500);
+            if (debug) {
+                opts += DEBUG_OPTS;
             }
+            toRestart.put(instance.getName(), opts);
         }
+        Map<String, Exception> results = getInstanceService().restartInstances(toRestart, parallelism,
+                printProgress("restarted", toRestart.size()));
+        throwIfErrors("Error restarting instance(s)", results);
         return null;
     }
 
@@ -16,8 +16,9 @@
  */
 package org.apache.karaf.instance.command;
 
-import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.karaf.instance.command.completers.StoppedInstanceCompleter;
 import org.apache.karaf.instance.core.Instance;
@@ -26,7 +27,6 @@ import org.apache.karaf.shell.api.action.Command;
 import org.apache.karaf.shell.api.action.Completion;
 import org.apache.karaf.shell.api.action.Option;
 import org.apache.karaf.shell.api.action.lifecycle.Service;
-import org.apache.karaf.shell.support.MultiException;
 
 @Command(scope = "instance", name = "start", description = "Start an existing container instance.")
 @Service
@@ -41,6 +41,9 @@ public class StartCommand extends InstanceCommandSupport {
     @Option(name = "-w", aliases = { "--wait"}, description = "Wait for the instance to be fully started", required = false, multiValued = false)
     private boolean wait;
 
+    @Option(name = "-p", aliases = { "--parallel"}, description = "Maximum number of instances processed at the same time", required = false, multiValued = false)
+    private int parallelism = DEFAULT_PARALLELISM;
+
     @Argument(index = 0, name = "name", description = "The name of the container instance", required = true, multiValued = true)
     @Completion(StoppedInstanceCompleter.class)
     private List<String> instances = null;
@@ -48,39 +51,41 @@ public class StartCommand extends InstanceCommandSupport {
     static final String DEBUG_OPTS = " -Xdebug -Xnoagent -Djava.compiler=NONE -Xrunjdwp:transport=dt_socket,server=y,suspend=n,address=5005";
     static final String DEFAULT_OPTS = "-server -Xmx512M -Dcom.sun.management.jmxremote";
 
-    @SuppressWarnings("deprecation")
     protected Object doExecute() throws Exception {
-        MultiException exception = new MultiException("Error starting instance(s)");
-        List<Instance> toWaitFor = new ArrayList<>();
+        Map<String, String> toStart = new LinkedHashMap<>();
+        Map<String, Instance> toWaitFor = new LinkedHashMap<>();
         for (Instance instance : getMatchingInstances(instances)) {
-            try {
-                String opts = javaOpts;
-                if (opts == null) {
-                    opts = instance.getJavaOpts();
-                }
-                if (opts == null) {
-                    opts = DEFAULT_OPTS;
-                }
-                if (debug) {
-                    opts += DEBUG_OPTS;
-                }
-                if (wait) {
-                    String state = instance.getState();
-                    if (Instance.STOPPED.equals(state)) {
-                        instance.start(opts);
-                        toWaitFor.add(instance);
-                    }
-                } else {
-                    instance.start(opts);
+            String opts = javaOpts;
+            if (opts == null) {
+                opts = instance.getJavaOpts();
+            }
+            if (opts == null) {
+                opts = DEFAULT_OPTS;
+            }
+            if (debug) {
+                opts += DEBUG_OPTS;
+            }
+            if (wait) {
+                String state = instance.getState();
+                if (Instance.STOPPED.equals(state)) {
+                    toStart.put(instance.getName(), opts);
+                    toWaitFor.put(instance.getName(), instance);
                 }
-            } catch (Exception e) {
-                exception.addException(e);
+            } else {
+                toStart.put(instance.getName(), opts);
+            }
+        }
+        Map<String, Exception> results = getInstanceService().startInstances(toStart, parallelism,
+                printProgress("started", toStart.size()));
+        for (Map.Entry<String, Exception> result : results.entrySet()) {
+            if (result.getValue() != null) {
+                toWaitFor.remove(result.getKey());
             }
         }
-        exception.throwIfExceptions();
+        throwIfErrors("Error starting instance(s)", results);
         while (true) {
             boolean allStarted = true;
-            for (Instance child : toWaitFor) {
+            for (Instance child : toWaitFor.values()) {
                 allStarted &= Instance.STARTED.equals(child.getState());
             }
             if (allStarted) {
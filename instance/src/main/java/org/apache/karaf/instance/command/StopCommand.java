@@ -16,35 +16,37 @@
  */
 package org.apache.karaf.instance.command;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.karaf.instance.command.completers.StartedInstanceCompleter;
 import org.apache.karaf.instance.core.Instance;
 import org.apache.karaf.shell.api.action.Argument;
 import org.apache.karaf.shell.api.action.Command;
 import org.apache.karaf.shell.api.action.Completion;
+import org.apache.karaf.shell.api.action.Option;
 import org.apache.karaf.shell.api.action.lifecycle.Service;
-import org.apache.karaf.shell.support.MultiException;
 
 @Command(scope = "instance", name = "stop", description = "Stop an existing container instance.")
 @Service
 public class StopCommand extends InstanceCommandSupport {
 
+    @Option(name = "-p", aliases = { "--parallel"}, description = "Maximum number of instances processed at the same time", required = false, multiValued = false)
+    private int parallelism = DEFAULT_PARALLELISM;
+
     @Argument(index = 0, name = "name", description = "The name of the container instance", required = true, multiValued = true)
     @Completion(StartedInstanceCompleter.class)
     private List<String> instances = null;
 
-    @SuppressWarnings("deprecation")
     protected Object doExecute() throws Exception {
-        final MultiException exception = new MultiException("Error stopping instance(s)");
+        List<String> toStop = new ArrayList<>();
         for (Instance instance : getMatchingInstances(instances)) {
-            try {
-                instance.stop();
-            } catch (Exception e) {
-                exception.addException(e);
-            }
+            toStop.add(instance.getName());
         }
-        exception.throwIfExceptions();
+        Map<String, Exception> results = getInstanceService().stopInstances(toStop, parallelism,
+                printProgress("stopped", toStop.size()));
+        throwIfErrors("Error stopping instance(s)", results);
         return null;
     }
 
@@ -16,6 +16,9 @@
  */
 package org.apache.karaf.instance.core;
 
+import java.util.List;
+import java.util.Map;
+
 public interface InstanceService {
 
     Instance createInstance(String name, InstanceSettings settings, boolean printOutput) throws Exception;
@@ -27,4 +30,36 @@ public interface InstanceService {
     Instance[] getInstances();
 
     Instance getInstance(String name);    
+
+    /**
+     * Start the given instances, at most <code>parallelism</code> of them at the same time.
+     *
+     * @param instances the names of the instances to start, with the java options to use for each of them,
+     *                  or <code>null</code> to use the options of the instance
+     * @param parallelism the maximum number of instances started at the same time, or 0 for no limit
+     * @param listener notified each time an instance has been started, may be <code>null</code>
+     * @return the error raised for each instance, or <code>null</code> if the instance has been started
+     */
+    Map<String, Exception> startInstances(Map<String, String> instances, int parallelism, InstanceOperationListener listener);
+
+    /**
+     * Stop the given instances, at most <code>parallelism</code> of them at the same time.
+     *
+     * @param names the names of the instances to stop
+     * @param parallelism the maximum number of instances stopped at the same time, or 0 for no limit
+     * @param listener notified each time an instance has been stopped, may be <code>null</code>
+     * @return the error raised for each instance, or <code>null</code> if the instance has been stopped
+     */
+    Map<String, Exception> stopInstances(List<String> names, int parallelism, InstanceOperationListener listener);
+
+    /**
+     * Restart the given instances, at most <code>parallelism</code> of them at the same time.
+     *
+     * @param instances the names of the instances to restart, with the java options to use for each of them,
+     *                  or <code>null</code> to use the options of the instance
+     * @param parallelism the maximum number of instances restarted at the same time, or 0 for no limit
+     * @param listener notified each time an instance has been restarted, may be <code>null</code>
+     * @return the error raised for each instance, or <code>null</code> if the instance has been restarted
+     */
+    Map<String, Exception> restartInstances(Map<String, String> instances, int parallelism, InstanceOperationListener listener);
 }
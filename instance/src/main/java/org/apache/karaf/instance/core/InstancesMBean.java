@@ -16,6 +16,8 @@
  */
 package org.apache.karaf.instance.core;
 
+import java.util.Map;
+
 import javax.management.MBeanException;
 import javax.management.openmbean.TabularData;
 
@@ -46,6 +48,9 @@ public interface InstancesMBean {
     void startInstance(String name, String opts) throws MBeanException;
     void startInstance(String name, String opts, boolean wait, boolean debug) throws MBeanException;
     void stopInstance(String name) throws MBeanException;
+    Map<String, String> startInstances(String[] names, String opts, int parallelism) throws MBeanException;
+    Map<String, String> stopInstances(String[] names, int parallelism) throws MBeanException;
+    Map<String, String> restartInstances(String[] names, String opts, int parallelism) throws MBeanException;
     void renameInstance(String originalName, String newName) throws MBeanException;
     void renameInstance(String originalName, String newName, boolean verbose) throws MBeanException;
     void cloneInstance(String name, String cloneName, int sshPort, int rmiRegistryPort, int rmiServerPort, String location, String javaOpts) throws MBeanException;
@@ -41,8 +41,19 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Scanner;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.karaf.instance.core.Instance;
+import org.apache.karaf.instance.core.InstanceOperationListener;
 import org.apache.karaf.instance.core.InstanceService;
 import org.apache.karaf.instance.core.InstanceSettings;
 import org.apache.karaf.instance.main.Execute;
@@ -84,6 +95,8 @@ public class InstanceServiceImpl implements InstanceService {
 
     private static final String DEFAULT_SHUTDOWN_COMMAND = "SHUTDOWN";
 
+    private static final long MODIFICATION_GRANULARITY = 2000;
+
     public static final String DEFAULT_JAVA_OPTS = "-server -Xmx512M -Dcom.sun.management.jmxremote -XX:+UnlockDiagnosticVMOptions -XX:+UnsyncloadClass";
 
     private LinkedHashMap<String, InstanceImpl> proxies = new LinkedHashMap<String, InstanceImpl>();
@@ -92,12 +105,37 @@ public class InstanceServiceImpl implements InstanceService {
 
     private long stopTimeout = 30000;
 
+    private final InstanceStatusCache statusCache = new InstanceStatusCache(this, 5000);
+
+    /**
+     * Locks used to serialize the long running operations (start, stop) on a given instance,
+     * without holding the lock on the storage file meanwhile.
+     */
+    private final ConcurrentMap<String, Object> instanceLocks = new ConcurrentHashMap<String, Object>();
+
+    /**
+     * In-memory copy of the storage file, used for read-only tasks as long as the file is not modified.
+     */
+    private State snapshot;
+    private long snapshotLastModified;
+    private long snapshotLength;
+
     static class InstanceState {
         String name;
         String loc;
         String opts;
         int pid;
         boolean root;
+
+        InstanceState copy() {
+            InstanceState copy = new InstanceState();
+            copy.name = name;
+            copy.loc = loc;
+            copy.opts = opts;
+            copy.pid = pid;
+            copy.root = root;
+            return copy;
+        }
     }
 
     static class State {
@@ -130,6 +168,26 @@ public class InstanceServiceImpl implements InstanceService {
         this.stopTimeout = stopTimeout;
     }
 
+    public long getStatusRefreshInterval() {
+        return statusCache.getRefreshInterval();
+    }
+
+    /**
+     * Sets the interval at which the cached states of the instances are refreshed,
+     * or 0 to compute the state of an instance each time it is asked for.
+     * <p/>
+     * States changed through this service are seen immediately, but a change made outside
+     * of it, such as an instance process dying or being started by another process, may be
+     * reported up to twice this interval later (10 seconds with the default interval of 5 seconds).
+     */
+    public void setStatusRefreshInterval(long statusRefreshInterval) {
+        statusCache.setRefreshInterval(statusRefreshInterval);
+    }
+
+    public void close() {
+        statusCache.close();
+    }
+
     private State loadData(org.apache.felix.utils.properties.Properties storage) {
         State state = new State();
         int count = getInt(storage, "count", 0);
@@ -228,12 +286,20 @@ public class InstanceServiceImpl implements InstanceService {
                 throw new IllegalStateException("Instance storage location should be a file: " + storageFile);
             }
             try {
+                if (!writeToFile && snapshot != null
+                        && storageFile.lastModified() == snapshotLastModified
+                        && storageFile.length() == snapshotLength) {
+                    return callback.call(snapshot);
+                }
+                snapshot = null;
                 return FileLockUtils.execute(storageFile, new FileLockUtils.CallableWithProperties<T>() {
                     public T call(org.apache.felix.utils.properties.Properties properties) throws IOException {
                         State state = loadData(properties);
                         T t = callback.call(state);
                         if (writeToFile) {
                             saveData(state, properties);
+                        } else {
+                            keepSnapshot(storageFile, state);
                         }
                         return t;
                     }
@@ -246,6 +312,94 @@ public class InstanceServiceImpl implements InstanceService {
         }
     }
 
+    private void keepSnapshot(File storageFile, State state) {
+        long lastModified = storageFile.lastModified();
+        // the modification time may have a coarse granularity, so a file modified
+        // very recently could be modified again without its time being changed
+        if (lastModified + MODIFICATION_GRANULARITY < System.currentTimeMillis()) {
+            snapshot = state;
+            snapshotLastModified = lastModified;
+            snapshotLength = storageFile.length();
+        }
+    }
+
+    private Object getInstanceLock(String name) {
+        Object lock = instanceLocks.get(name);
+        if (lock == null) {
+            Object newLock = new Object();
+            lock = instanceLocks.putIfAbsent(name, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
+
+    /**
+     * Returns a copy of the state of the given instance, after having checked its process.
+     */
+    private InstanceState readInstance(final String name) {
+        return execute(new Task<InstanceState>() {
+            public InstanceState call(State state) throws IOException {
+                InstanceState instance = state.instances.get(name);
+                if (instance == null) {
+                    throw new IllegalArgumentException("Instance " + name + " not found");
+                }
+                checkPid(instance);
+                return instance.copy();
+            }
+        }, false);
+    }
+
+    /**
+     * Sets the pid of the given instance under the storage file lock, unless another process
+     * has meanwhile started the instance with another pid.
+     *
+     * @return <code>true</code> if the pid has been set.
+     */
+    private boolean compareAndSetInstancePid(final String name, final int expectedPid, final int pid) {
+        return execute(new Task<Boolean>() {
+            public Boolean call(State state) throws IOException {
+                InstanceState instance = state.instances.get(name);
+                if (instance == null) {
+                    return false;
+                }
+                checkPid(instance);
+                if (instance.pid != 0 && instance.pid != expectedPid) {
+                    return false;
+                }
+                instance.pid = pid;
+                return true;
+            }
+        }, true);
+    }
+
+    /**
+     * Records the pid of a started instance, or destroys the started process if the instance
+     * has been started concurrently by another process.
+     */
+    private void setStartedInstancePid(String name, int previousPid, int pid) {
+        if (!compareAndSetInstancePid(name, previousPid, pid)) {
+            try {
+                attachProcess(pid).destroy();
+            } catch (IOException e) {
+                LOGGER.debug("Unable to destroy process " + pid + " of instance " + name, e);
+            }
+            throw new IllegalStateException("Instance already started");
+        }
+    }
+
+    protected Process startProcess(File directory, String command) throws IOException {
+        return new ProcessBuilderFactoryImpl().newBuilder()
+                .directory(directory)
+                .command(command)
+                .start();
+    }
+
+    protected Process attachProcess(int pid) throws IOException {
+        return new ProcessBuilderFactoryImpl().newBuilder().attach(pid);
+    }
+
     private static void logInfo(String message, boolean printOutput, Object... args) {
         if (LOGGER.isInfoEnabled() || printOutput) {
             String formatted = String.format(message, args);
@@ -439,21 +593,19 @@ public class InstanceServiceImpl implements InstanceService {
     }
 
     public void startInstance(final String name, final String javaOpts) {
-        execute(new Task<Object>() {
-            public Object call(State state) throws IOException {
-                InstanceState instance = state.instances.get(name);
-                if (instance == null) {
-                    throw new IllegalArgumentException("Instance " + name + " not found");
-                }
-                checkPid(instance);
-                if (instance.pid != 0) {
-                    throw new IllegalStateException("Instance already started");
-                }
+        synchronized (getInstanceLock(name)) {
+            InstanceState instance = readInstance(name);
+            if (instance.pid != 0) {
+                throw new IllegalStateException("Instance already started");
+            }
+            try {
                 doStart(instance, name, javaOpts);
-                return null;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
             }
-
-        }, true);
+            setStartedInstancePid(name, 0, instance.pid);
+            statusCache.invalidate(name);
+        }
     }
 
     private void doStart(InstanceState instance, String name, String javaOpts) throws IOException {
@@ -503,10 +655,7 @@ public class InstanceServiceImpl implements InstanceService {
         }
 
         LOGGER.debug("Starting instance " + name + " with command: " + command);
-        Process process = new ProcessBuilderFactoryImpl().newBuilder()
-                .directory(new File(location))
-                .command(command)
-                .start();
+        Process process = startProcess(new File(location), command);
         instance.pid = process.getPid();
     }
 
@@ -553,12 +702,9 @@ public class InstanceServiceImpl implements InstanceService {
     }
 
     public void restartInstance(final String name, final String javaOpts) {
-        execute(new Task<Object>() {
-            public Object call(State state) throws IOException {
-                InstanceState instance = state.instances.get(name);
-                if (instance == null) {
-                    throw new IllegalArgumentException("Instance " + name + " not found");
-                }
+        synchronized (getInstanceLock(name)) {
+            InstanceState instance = readInstance(name);
+            try {
                 String current = System.getProperty("karaf.name");
                 if (name.equals(current)) {
                     String location = System.getProperty("karaf.home");
@@ -585,52 +731,51 @@ public class InstanceServiceImpl implements InstanceService {
                             .command(command)
                             .start();
                 } else {
-                    checkPid(instance);
-                    if (instance.pid != 0) {
+                    int previousPid = instance.pid;
+                    if (previousPid != 0) {
                         cleanShutdown(instance);
                     }
                     doStart(instance, name, javaOpts);
+                    setStartedInstancePid(name, previousPid, instance.pid);
                 }
-                return null;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
             }
-        }, true);
+            statusCache.invalidate(name);
+        }
     }
 
     public void stopInstance(final String name) {
-        
-        Integer pid = (Integer)execute(new Task<Object>() {
-            
-            public Object call(State state) throws IOException {
-                int rootInstancePID = 0;
-                InstanceState instance = state.instances.get(name);
-                if (instance == null) {
-                    throw new IllegalArgumentException("Instance " + name + " not found");
-                }
-                checkPid(instance);
-                if (instance.pid == 0) {
-                    throw new IllegalStateException("Instance already stopped");
-                }
-                cleanShutdown(instance);
-                if (instance.pid > 0) {
-                    if (!instance.root) {
-                        Process process = new ProcessBuilderFactoryImpl().newBuilder().attach(instance.pid);
+        int pid = 0;
+        synchronized (getInstanceLock(name)) {
+            InstanceState instance = readInstance(name);
+            if (instance.pid == 0) {
+                throw new IllegalStateException("Instance already stopped");
+            }
+            cleanShutdown(instance);
+            if (instance.pid > 0) {
+                if (!instance.root) {
+                    try {
+                        Process process = attachProcess(instance.pid);
                         process.destroy();
-                    } else {
-                        //can't simply destroy root instance here
-                        //as it will lose the update in instances.properties
-                        //because of no chance to run the saveData
-                        rootInstancePID = instance.pid;
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
                     }
-                    instance.pid = 0;
-                    
+                } else {
+                    //can't simply destroy root instance here
+                    //as it will lose the update in instances.properties
+                    //because of no chance to run the saveData
+                    pid = instance.pid;
                 }
-                return rootInstancePID;
             }
-        }, true);
-        if (pid.intValue() != 0 && isInstanceRoot(name)) {
+            // do not overwrite the pid if the instance has been started again by another process
+            compareAndSetInstancePid(name, instance.pid, 0);
+            statusCache.invalidate(name);
+        }
+        if (pid != 0 && isInstanceRoot(name)) {
             Process process;
             try {
-                process = new ProcessBuilderFactoryImpl().newBuilder().attach(pid.intValue());
+                process = attachProcess(pid);
                 process.destroy(); 
             } catch (IOException e) {
                 LOGGER.debug("Unable to cleanly shutdown root instance ", e);
@@ -639,154 +784,269 @@ public class InstanceServiceImpl implements InstanceService {
         }
     }
 
-    public void destroyInstance(final String name) {
-        execute(new Task<Object>() {
-            public Object call(State state) throws IOException {
-                InstanceState instance = state.instances.get(name);
-                if (instance == null) {
-                    throw new IllegalArgumentException("Instance " + name + " not found");
-                }
-                checkPid(instance);
-                if (instance.pid != 0) {
-                    throw new IllegalStateException("Instance not stopped");
-                }
-                deleteFile(new File(instance.loc));
-                state.instances.remove(name);
-                InstanceServiceImpl.this.proxies.remove(name);
-                return null;
+    public Map<String, Exception> startInstances(Map<String, String> instances, int parallelism, InstanceOperationListener listener) {
+        return executeAll("start", instances, parallelism, listener, new InstanceOperation() {
+            public void run(String name, String javaOpts) {
+                startInstance(name, javaOpts);
             }
-        }, true);
+        });
     }
 
-    public void renameInstance(final String oldName, final String newName, final boolean printOutput) throws Exception {
-        execute(new Task<Object>() {
-            public Object call(State state) throws IOException {
-                if (state.instances.get(newName) != null) {
-                    throw new IllegalArgumentException("Instance " + newName + " already exists");
-                }
-                InstanceState instance = state.instances.get(oldName);
-                if (instance == null) {
-                    throw new IllegalArgumentException("Instance " + oldName + " not found");
+    public Map<String, Exception> stopInstances(List<String> names, int parallelism, InstanceOperationListener listener) {
+        Map<String, String> instances = new LinkedHashMap<String, String>();
+        for (String name : names) {
+            instances.put(name, null);
+        }
+        return executeAll("stop", instances, parallelism, listener, new InstanceOperation() {
+            public void run(String name, String javaOpts) {
+                stopInstance(name);
+            }
+        });
+    }
+
+    public Map<String, Exception> restartInstances(Map<String, String> instances, int parallelism, InstanceOperationListener listener) {
+        return executeAll("restart", instances, parallelism, listener, new InstanceOperation() {
+            public void run(String name, String javaOpts) {
+                restartInstance(name, javaOpts);
+            }
+        });
+    }
+
+    interface InstanceOperation {
+        void run(String name, String javaOpts) throws Exception;
+    }
+
+    /**
+     * Runs an operation on several instances in a dedicated pool of threads, the listener being
+     * notified from the calling thread as the instances complete. The per-instance locks keep the
+     * operations on a given instance serialized, while the storage file is only locked briefly.
+     */
+    private Map<String, Exception> executeAll(final String operationName, Map<String, String> instances, int parallelism,
+                                              InstanceOperationListener listener, final InstanceOperation operation) {
+        Map<String, Exception> results = new LinkedHashMap<String, Exception>();
+        if (instances.isEmpty()) {
+            return results;
+        }
+        int threads = parallelism > 0 ? Math.min(parallelism, instances.size()) : instances.size();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Karaf instances " + operationName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            CompletionService<String> completionService = new ExecutorCompletionService<String>(executor);
+            Map<Future<String>, String> pending = new HashMap<Future<String>, String>();
+            for (final Map.Entry<String, String> entry : instances.entrySet()) {
+                results.put(entry.getKey(), null);
+                pending.put(completionService.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        operation.run(entry.getKey(), entry.getValue());
+                        return entry.getKey();
+                    }
+                }), entry.getKey());
+            }
+            while (!pending.isEmpty()) {
+                Future<String> future;
+                try {
+                    future = completionService.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    for (String name : pending.values()) {
+                        results.put(name, e);
+                    }
+                    break;
                 }
-                if (instance.root) {
-                    throw new IllegalArgumentException("Root instance cannot be renamed");
+                String name = pending.remove(future);
+                Exception error = null;
+                try {
+                    future.get();
+                    LOGGER.debug("Completed " + operationName + " of instance " + name);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    error = cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
+                    LOGGER.debug("Unable to " + operationName + " instance " + name, error);
+                } catch (InterruptedException e) {
+                    // the future is already completed
+                    error = e;
                 }
-                checkPid(instance);
-                if (instance.pid != 0) {
-                    throw new IllegalStateException("Instance not stopped");
+                results.put(name, error);
+                if (listener != null) {
+                    listener.completed(name, error);
                 }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
 
-                println(Ansi.ansi().a("Renaming instance ")
-                        .a(Ansi.Attribute.INTENSITY_BOLD).a(oldName).a(Ansi.Attribute.RESET)
-                        .a(" to ")
-                        .a(Ansi.Attribute.INTENSITY_BOLD).a(newName).a(Ansi.Attribute.RESET).toString());
-                // rename directory
-                String oldLocationPath = instance.loc;
-                File oldLocation = new File(oldLocationPath);
-                String basedir = oldLocation.getParent();
-                File newLocation = new File(basedir, newName);
-                oldLocation.renameTo(newLocation);
-                // create the properties map including the instance name and instance location
-                // TODO: replacing is bad, we should re-extract the needed files
-                HashMap<String, String> props = new HashMap<String, String>();
-                props.put(oldName, newName);
-                props.put(oldLocationPath, newLocation.getPath());
-                // replace all references to the "old" name by the new one in etc/system.properties
-                // NB: it's replacement to avoid to override the user's changes
-                filterResource(newLocation, "etc/system.properties", props);
-                // replace all references to the "old" name by the new one in bin/karaf
-                filterResource(newLocation, "bin/karaf", props);
-                filterResource(newLocation, "bin/start", props);
-                filterResource(newLocation, "bin/stop", props);
-                filterResource(newLocation, "bin/karaf.bat", props);
-                filterResource(newLocation, "bin/start.bat", props);
-                filterResource(newLocation, "bin/stop.bat", props);
-                // update instance
-                instance.name = newName;
-                instance.loc = newLocation.getPath();
-                state.instances.put(newName, instance);
-                state.instances.remove(oldName);
-                InstanceImpl proxy = InstanceServiceImpl.this.proxies.remove(oldName);
-                if (proxy == null) {
-                    proxy = new InstanceImpl(InstanceServiceImpl.this, newName);
-                } else {
-                    proxy.doSetName(newName);
+    public void destroyInstance(final String name) {
+        synchronized (getInstanceLock(name)) {
+            execute(new Task<Object>() {
+                public Object call(State state) throws IOException {
+                    InstanceState instance = state.instances.get(name);
+                    if (instance == null) {
+                        throw new IllegalArgumentException("Instance " + name + " not found");
+                    }
+                    checkPid(instance);
+                    if (instance.pid != 0) {
+                        throw new IllegalStateException("Instance not stopped");
+                    }
+                    deleteFile(new File(instance.loc));
+                    state.instances.remove(name);
+                    InstanceServiceImpl.this.proxies.remove(name);
+                    return null;
                 }
-                InstanceServiceImpl.this.proxies.put(newName, proxy);
-                return null;
+            }, true);
+            statusCache.invalidate(name);
+        }
+    }
+
+    public void renameInstance(final String oldName, final String newName, final boolean printOutput) throws Exception {
+        // lock both names in the same order to avoid deadlocks with a concurrent rename
+        String first = oldName.compareTo(newName) < 0 ? oldName : newName;
+        String second = oldName.compareTo(newName) < 0 ? newName : oldName;
+        synchronized (getInstanceLock(first)) {
+            synchronized (getInstanceLock(second)) {
+                execute(new Task<Object>() {
+                    public Object call(State state) throws IOException {
+                        if (state.instances.get(newName) != null) {
+                            throw new IllegalArgumentException("Instance " + newName + " already exists");
+                        }
+                        InstanceState instance = state.instances.get(oldName);
+                        if (instance == null) {
+                            throw new IllegalArgumentException("Instance " + oldName + " not found");
+                        }
+                        if (instance.root) {
+                            throw new IllegalArgumentException("Root instance cannot be renamed");
+                        }
+                        checkPid(instance);
+                        if (instance.pid != 0) {
+                            throw new IllegalStateException("Instance not stopped");
+                        }
+
+                        println(Ansi.ansi().a("Renaming instance ")
+                                .a(Ansi.Attribute.INTENSITY_BOLD).a(oldName).a(Ansi.Attribute.RESET)
+                                .a(" to ")
+                                .a(Ansi.Attribute.INTENSITY_BOLD).a(newName).a(Ansi.Attribute.RESET).toString());
+                        // rename directory
+                        String oldLocationPath = instance.loc;
+                        File oldLocation = new File(oldLocationPath);
+                        String basedir = oldLocation.getParent();
+                        File newLocation = new File(basedir, newName);
+                        oldLocation.renameTo(newLocation);
+                        // create the properties map including the instance name and instance location
+                        // TODO: replacing is bad, we should re-extract the needed files
+                        HashMap<String, String> props = new HashMap<String, String>();
+                        props.put(oldName, newName);
+                        props.put(oldLocationPath, newLocation.getPath());
+                        // replace all references to the "old" name by the new one in etc/system.properties
+                        // NB: it's replacement to avoid to override the user's changes
+                        filterResource(newLocation, "etc/system.properties", props);
+                        // replace all references to the "old" name by the new one in bin/karaf
+                        filterResource(newLocation, "bin/karaf", props);
+                        filterResource(newLocation, "bin/start", props);
+                        filterResource(newLocation, "bin/stop", props);
+                        filterResource(newLocation, "bin/karaf.bat", props);
+                        filterResource(newLocation, "bin/start.bat", props);
+                        filterResource(newLocation, "bin/stop.bat", props);
+                        // update instance
+                        instance.name = newName;
+                        instance.loc = newLocation.getPath();
+                        state.instances.put(newName, instance);
+                        state.instances.remove(oldName);
+                        InstanceImpl proxy = InstanceServiceImpl.this.proxies.remove(oldName);
+                        if (proxy == null) {
+                            proxy = new InstanceImpl(InstanceServiceImpl.this, newName);
+                        } else {
+                            proxy.doSetName(newName);
+                        }
+                        InstanceServiceImpl.this.proxies.put(newName, proxy);
+                        return null;
+                    }
+                }, true);
+                statusCache.invalidate(oldName);
+                statusCache.invalidate(newName);
             }
-        }, true);
+        }
     }
 
-    public synchronized Instance cloneInstance(final String name, final String cloneName, final InstanceSettings settings, final boolean printOutput) throws Exception {
-        final int instanceSshPort = getInstanceSshPort(name);
-        final int instanceRmiRegistryPort = getInstanceRmiRegistryPort(name);
-        final int instanceRmiServerPort = getInstanceRmiServerPort(name);
+    public Instance cloneInstance(final String name, final String cloneName, final InstanceSettings settings, final boolean printOutput) throws Exception {
+        // take the instance lock before the service lock, as the other operations on the instance do
+        synchronized (getInstanceLock(name)) {
+            synchronized (this) {
+                final int instanceSshPort = getInstanceSshPort(name);
+                final int instanceRmiRegistryPort = getInstanceRmiRegistryPort(name);
+                final int instanceRmiServerPort = getInstanceRmiServerPort(name);
 
-        return execute(new Task<Instance>() {
-            public Instance call(State state) throws IOException {
-                if (state.instances.get(cloneName) != null) {
-                    throw new IllegalArgumentException("Instance " + cloneName + " already exists");
-                }
-                InstanceState instance = state.instances.get(name);
-                if (instance == null) {
-                    throw new IllegalArgumentException("Instance " + name + " not found");
-                }
+                return execute(new Task<Instance>() {
+                    public Instance call(State state) throws IOException {
+                        if (state.instances.get(cloneName) != null) {
+                            throw new IllegalArgumentException("Instance " + cloneName + " already exists");
+                        }
+                        InstanceState instance = state.instances.get(name);
+                        if (instance == null) {
+                            throw new IllegalArgumentException("Instance " + name + " not found");
+                        }
 
-                // define the clone instance location
-                String cloneLocationPath = settings.getLocation() != null ? settings.getLocation() : cloneName;
-                File cloneLocation = new File(cloneLocationPath);
-                if (!cloneLocation.isAbsolute()) {
-                    cloneLocation = new File(storageLocation, cloneLocationPath);
-                }
-                // copy instance directory
-                String locationPath = instance.loc;
-                File location = new File(locationPath);
-                copy(location, cloneLocation);
-                // create the properties map including the instance name, location, ssh and rmi port numbers
-                // TODO: replacing stuff anywhere is not really good, we might end up replacing unwanted stuff
-                // TODO: if no ports are overriden, shouldn't we choose new ports ?
-                HashMap<String, String> props = new HashMap<String, String>();
-                props.put(name, cloneName);
-                props.put(locationPath, cloneLocationPath);
-                if (settings.getSshPort() > 0)
-                    props.put(Integer.toString(instanceSshPort), Integer.toString(settings.getSshPort()));
-                if (settings.getRmiRegistryPort() > 0)
-                    props.put(Integer.toString(instanceRmiRegistryPort), Integer.toString(settings.getRmiRegistryPort()));
-                if (settings.getRmiServerPort() > 0)
-                    props.put(Integer.toString(instanceRmiServerPort), Integer.toString(settings.getRmiServerPort()));
-
-                // filtering clone files
-                filterResource(cloneLocation, "etc/custom.properties", props);
-                filterResource(cloneLocation, "etc/org.apache.karaf.management.cfg", props);
-                filterResource(cloneLocation, "etc/org.apache.karaf.shell.cfg", props);
-                filterResource(cloneLocation, "etc/system.properties", props);
-                filterResource(cloneLocation, "bin/karaf", props);
-                filterResource(cloneLocation, "bin/start", props);
-                filterResource(cloneLocation, "bin/stop", props);
-                filterResource(cloneLocation, "bin/karaf.bat", props);
-                filterResource(cloneLocation, "bin/start.bat", props);
-                filterResource(cloneLocation, "bin/stop.bat", props);
-                // create and add the clone instance in the registry
-                String javaOpts = settings.getJavaOpts();
-                if (javaOpts == null || javaOpts.length() == 0) {
-                    javaOpts = DEFAULT_JAVA_OPTS;
-                }
-                InstanceState is = new InstanceState();
-                is.name = cloneName;
-                is.loc = cloneLocation.toString();
-                is.opts = javaOpts;
-                state.instances.put(cloneName, is);
-                InstanceImpl cloneInstance = new InstanceImpl(InstanceServiceImpl.this, cloneName);
-                InstanceServiceImpl.this.proxies.put(cloneName, cloneInstance);
-                return cloneInstance;
+                        // define the clone instance location
+                        String cloneLocationPath = settings.getLocation() != null ? settings.getLocation() : cloneName;
+                        File cloneLocation = new File(cloneLocationPath);
+                        if (!cloneLocation.isAbsolute()) {
+                            cloneLocation = new File(storageLocation, cloneLocationPath);
+                        }
+                        // copy instance directory
+                        String locationPath = instance.loc;
+                        File location = new File(locationPath);
+                        copy(location, cloneLocation);
+                        // create the properties map including the instance name, location, ssh and rmi port numbers
+                        // TODO: replacing stuff anywhere is not really good, we might end up replacing unwanted stuff
+                        // TODO: if no ports are overriden, shouldn't we choose new ports ?
+                        HashMap<String, String> props = new HashMap<String, String>();
+                        props.put(name, cloneName);
+                        props.put(locationPath, cloneLocationPath);
+                        if (settings.getSshPort() > 0)
+                            props.put(Integer.toString(instanceSshPort), Integer.toString(settings.getSshPort()));
+                        if (settings.getRmiRegistryPort() > 0)
+                            props.put(Integer.toString(instanceRmiRegistryPort), Integer.toString(settings.getRmiRegistryPort()));
+                        if (settings.getRmiServerPort() > 0)
+                            props.put(Integer.toString(instanceRmiServerPort), Integer.toString(settings.getRmiServerPort()));
+
+                        // filtering clone files
+                        filterResource(cloneLocation, "etc/custom.properties", props);
+                        filterResource(cloneLocation, "etc/org.apache.karaf.management.cfg", props);
+                        filterResource(cloneLocation, "etc/org.apache.karaf.shell.cfg", props);
+                        filterResource(cloneLocation, "etc/system.properties", props);
+                        filterResource(cloneLocation, "bin/karaf", props);
+                        filterResource(cloneLocation, "bin/start", props);
+                        filterResource(cloneLocation, "bin/stop", props);
+                        filterResource(cloneLocation, "bin/karaf.bat", props);
+                        filterResource(cloneLocation, "bin/start.bat", props);
+                        filterResource(cloneLocation, "bin/stop.bat", props);
+                        // create and add the clone instance in the registry
+                        String javaOpts = settings.getJavaOpts();
+                        if (javaOpts == null || javaOpts.length() == 0) {
+                            javaOpts = DEFAULT_JAVA_OPTS;
+                        }
+                        InstanceState is = new InstanceState();
+                        is.name = cloneName;
+                        is.loc = cloneLocation.toString();
+                        is.opts = javaOpts;
+                        state.instances.put(cloneName, is);
+                        InstanceImpl cloneInstance = new InstanceImpl(InstanceServiceImpl.this, cloneName);
+                        InstanceServiceImpl.this.proxies.put(cloneName, cloneInstance);
+                        return cloneInstance;
+                    }
+                }, true);
             }
-        }, true);
+        }
     }
 
     private void checkPid(InstanceState instance) throws IOException {
         if (instance.pid != 0) {
-            Process process = new ProcessBuilderFactoryImpl().newBuilder().attach(instance.pid);
+            Process process = attachProcess(instance.pid);
             if (!process.isRunning()) {
                 instance.pid = 0;
             }
@@ -944,7 +1204,7 @@ public class InstanceServiceImpl implements InstanceService {
                 }
                 return instance.loc;
             }
-        }, true);
+        }, false);
     }
 
     int getInstancePid(final String name) {
@@ -985,36 +1245,44 @@ public class InstanceServiceImpl implements InstanceService {
         }, true);
     }
 
-    String getInstanceState(final String name) {
-        return execute(new Task<String>() {
+    String getInstanceState(String name) {
+        return statusCache.getState(name);
+    }
+
+    String loadInstanceState(final String name) {
+        final String[] address = new String[1];
+        final int[] port = new int[1];
+        String state = execute(new Task<String>() {
             public String call(State state) throws IOException {
                 InstanceState instance = state.instances.get(name);
                 if (instance == null) {
                     throw new IllegalArgumentException("Instance " + name + " not found");
                 }
-                int port = getKarafPort(state, name, "etc/org.apache.karaf.shell.cfg", "sshPort");
+                port[0] = getKarafPort(state, name, "etc/org.apache.karaf.shell.cfg", "sshPort");
                 String host = getKarafHost(state, name, "etc/org.apache.karaf.shell.cfg", "sshHost");
                 if (host.equals("0.0.0.0")) {
                     host = "localhost";
                 }
-                if (!new File(instance.loc).isDirectory() || port <= 0) {
+                address[0] = host;
+                if (!new File(instance.loc).isDirectory() || port[0] <= 0) {
                     return Instance.ERROR;
                 }
                 checkPid(instance);
-                if (instance.pid == 0) {
-                    return Instance.STOPPED;
-                } else {
-                    try {
-                        Socket s = new Socket(host, port);
-                        s.close();
-                        return Instance.STARTED;
-                    } catch (Exception e) {
-                        // ignore
-                    }
-                    return Instance.STARTING;
-                }
+                return instance.pid == 0 ? Instance.STOPPED : null;
             }
-        }, true);
+        }, false);
+        if (state != null) {
+            return state;
+        }
+        // connect without holding the lock on the storage
+        try {
+            Socket s = new Socket(address[0], port[0]);
+            s.close();
+            return Instance.STARTED;
+        } catch (Exception e) {
+            // ignore
+        }
+        return Instance.STARTING;
     }
 
     private boolean deleteFile(File fileToDelete) {
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.instance.core.internal;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.karaf.instance.core.Instance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Snapshot of the state of the instances, refreshed in the background while it is being used.
+ *
+ * Computing the state of an instance requires checking its process and connecting to its
+ * ssh port, which is too expensive to be done for each instance on every list or poll.
+ * The state of an instance is refreshed every <code>refreshInterval</code> milliseconds
+ * until it has not been asked for during a minute, and is invalidated when the instance
+ * is started, stopped or destroyed through the instance service. Transient states are not
+ * cached, so that waiting for an instance to be started is not delayed.
+ * A cached state is served until it is twice the refresh interval old, which leaves room for
+ * a slow refresh: a change made outside of the service can take that long to be seen.
+ */
+class InstanceStatusCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InstanceStatusCache.class);
+
+    private static final long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+
+    private final InstanceServiceImpl service;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final AtomicLong generation = new AtomicLong();
+    private volatile long refreshInterval;
+    private ScheduledExecutorService executor;
+
+    InstanceStatusCache(InstanceServiceImpl service, long refreshInterval) {
+        this.service = service;
+        this.refreshInterval = refreshInterval;
+    }
+
+    long getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    void setRefreshInterval(long refreshInterval) {
+        this.refreshInterval = refreshInterval;
+        close();
+    }
+
+    String getState(String name) {
+        long interval = refreshInterval;
+        if (interval <= 0) {
+            return service.loadInstanceState(name);
+        }
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(name);
+        if (entry != null && now - entry.refreshed < 2 * interval) {
+            entry.accessed = now;
+            return entry.state;
+        }
+        String state = load(name, now);
+        scheduleRefresh(interval);
+        return state;
+    }
+
+    void invalidate(String name) {
+        generation.incrementAndGet();
+        entries.remove(name);
+    }
+
+    synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        entries.clear();
+    }
+
+    private String load(String name, long accessed) {
+        long gen = generation.get();
+        String state = service.loadInstanceState(name);
+        // do not override a state invalidated while it was computed
+        if (generation.get() == gen) {
+            if (Instance.STARTED.equals(state) || Instance.STOPPED.equals(state)) {
+                entries.put(name, new Entry(state, System.currentTimeMillis(), accessed));
+            } else {
+                entries.remove(name);
+            }
+        }
+        return state;
+    }
+
+    private synchronized void scheduleRefresh(long interval) {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Karaf instances status refresher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    refresh();
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void refresh() {
+        long now = System.currentTimeMillis();
+        for (String name : entries.keySet()) {
+            Entry entry = entries.get(name);
+            if (entry == null) {
+                continue;
+            }
+            if (now - entry.accessed > IDLE_TIMEOUT) {
+                entries.remove(name);
+                continue;
+            }
+            try {
+                load(name, entry.accessed);
+            } catch (Exception e) {
+                LOGGER.debug("Unable to refresh the state of instance " + name, e);
+                entries.remove(name);
+            }
+        }
+        synchronized (this) {
+            if (entries.isEmpty() && executor != null) {
+                executor.shutdown();
+                executor = null;
+            }
+        }
+    }
+
+    private static class Entry {
+        final String state;
+        final long refreshed;
+        volatile long accessed;
+
+        Entry(String state, long refreshed, long accessed) {
+            this.state = state;
+            this.refreshed = refreshed;
+            this.accessed = accessed;
+        }
+    }
+
+}
@@ -18,7 +18,9 @@ package org.apache.karaf.instance.core.internal;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.management.MBeanException;
 import javax.management.NotCompliantMBeanException;
@@ -181,6 +183,30 @@ public class InstancesMBeanImpl extends StandardMBean implements InstancesMBean
         }
     }
 
+    public Map<String, String> startInstances(String[] names, String opts, int parallelism) throws MBeanException {
+        try {
+            return toResults(instanceService.startInstances(toInstances(names, opts), parallelism, null));
+        } catch (Exception e) {
+            throw new MBeanException(null, e.getMessage());
+        }
+    }
+
+    public Map<String, String> stopInstances(String[] names, int parallelism) throws MBeanException {
+        try {
+            return toResults(instanceService.stopInstances(Arrays.asList(names), parallelism, null));
+        } catch (Exception e) {
+            throw new MBeanException(null, e.getMessage());
+        }
+    }
+
+    public Map<String, String> restartInstances(String[] names, String opts, int parallelism) throws MBeanException {
+        try {
+            return toResults(instanceService.restartInstances(toInstances(names, opts), parallelism, null));
+        } catch (Exception e) {
+            throw new MBeanException(null, e.getMessage());
+        }
+    }
+
     public void renameInstance(String originalName, String newName) throws MBeanException {
         try {
             instanceService.renameInstance(originalName, newName, false);
@@ -228,6 +254,26 @@ public class InstancesMBeanImpl extends StandardMBean implements InstancesMBean
         return i;
     }
 
+    private Map<String, String> toInstances(String[] names, String opts) {
+        if ("".equals(opts)) {
+            opts = null;
+        }
+        Map<String, String> instances = new LinkedHashMap<String, String>();
+        for (String name : names) {
+            instances.put(name, opts);
+        }
+        return instances;
+    }
+
+    private Map<String, String> toResults(Map<String, Exception> errors) {
+        Map<String, String> results = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, Exception> entry : errors.entrySet()) {
+            Exception error = entry.getValue();
+            results.put(entry.getKey(), error == null ? "OK" : "Error: " + error.getMessage());
+        }
+        return results;
+    }
+
     private List<String> parseStringList(String value) {
         List<String> list = new ArrayList<String>();
         if (value != null) {
@@ -26,13 +26,24 @@ import org.apache.karaf.util.tracker.Services;
 @Services(provides = @ProvideService(InstanceService.class))
 public class Activator extends BaseActivator {
 
+    private InstanceServiceImpl instanceService;
+
     @Override
     protected void doStart() throws Exception {
-        InstanceService instanceService = new InstanceServiceImpl();
+        instanceService = new InstanceServiceImpl();
         register(InstanceService.class, instanceService);
 
         InstancesMBeanImpl mbean = new InstancesMBeanImpl(instanceService);
         registerMBean(mbean, "type=instance");
     }
 
+    @Override
+    protected void doStop() {
+        super.doStop();
+        if (instanceService != null) {
+            instanceService.close();
+            instanceService = null;
+        }
+    }
+
 }
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.InterruptedIOException;
+import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -35,6 +36,33 @@ public class ProcessImpl implements Process {
      */
     private static final long serialVersionUID = -8140632422386086507L;
 
+    private static final File PROC = new File("/proc/self").isDirectory() ? new File("/proc") : null;
+    private static final Method PROCESS_HANDLE_OF;
+    private static final Method PROCESS_HANDLE_IS_ALIVE;
+    private static final Method OPTIONAL_IS_PRESENT;
+    private static final Method OPTIONAL_GET;
+
+    static {
+        Method of = null;
+        Method isAlive = null;
+        Method isPresent = null;
+        Method get = null;
+        try {
+            Class<?> processHandle = Class.forName("java.lang.ProcessHandle");
+            Class<?> optional = Class.forName("java.util.Optional");
+            of = processHandle.getMethod("of", long.class);
+            isAlive = processHandle.getMethod("isAlive");
+            isPresent = optional.getMethod("isPresent");
+            get = optional.getMethod("get");
+        } catch (Exception e) {
+            of = null;
+        }
+        PROCESS_HANDLE_OF = of;
+        PROCESS_HANDLE_IS_ALIVE = isAlive;
+        OPTIONAL_IS_PRESENT = isPresent;
+        OPTIONAL_GET = get;
+    }
+
     private int pid;
     //private File input;
     //private File output;
@@ -52,6 +80,10 @@ public class ProcessImpl implements Process {
     }
 
     public boolean isRunning() throws IOException {
+        Boolean alive = isAlive(pid);
+        if (alive != null) {
+            return alive;
+        }
         if (ScriptUtils.isWindows()) {
             Map<String, String> props = new HashMap<String, String>();
             props.put("${pid}", Integer.toString(pid));
@@ -72,6 +104,28 @@ public class ProcessImpl implements Process {
         }
     }
 
+    /**
+     * Checks if a process is alive without forking a new process, using the ProcessHandle api
+     * when running on Java 9 or later, or the /proc file system when available.
+     *
+     * @return whether the process is alive, or <code>null</code> if it can not be checked.
+     */
+    static Boolean isAlive(int pid) {
+        if (PROCESS_HANDLE_OF != null) {
+            try {
+                Object handle = PROCESS_HANDLE_OF.invoke(null, (long) pid);
+                return (Boolean) OPTIONAL_IS_PRESENT.invoke(handle)
+                        && (Boolean) PROCESS_HANDLE_IS_ALIVE.invoke(OPTIONAL_GET.invoke(handle));
+            } catch (Exception e) {
+                // Fall back
+            }
+        }
+        if (PROC != null) {
+            return new File(PROC, Integer.toString(pid)).exists();
+        }
+        return null;
+    }
+
     public void destroy() throws IOException {
         int ret;
         if (ScriptUtils.isWindows()) {
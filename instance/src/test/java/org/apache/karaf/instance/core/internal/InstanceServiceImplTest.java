@@ -23,13 +23,21 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.karaf.instance.core.Instance;
+import org.apache.karaf.instance.core.InstanceOperationListener;
 import org.apache.karaf.instance.core.InstanceSettings;
+import org.apache.karaf.jpm.Process;
 import org.junit.BeforeClass;
 import org.junit.Rule;
 import org.junit.Test;
@@ -37,8 +45,10 @@ import org.junit.rules.TemporaryFolder;
 import org.junit.rules.TestName;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class InstanceServiceImplTest {
 
@@ -164,6 +174,201 @@ public class InstanceServiceImplTest {
         assertNotNull(service.getInstance(getName() + "b"));
     }
 
+    @Test
+    public void testStopInstances() throws Exception {
+        InstanceServiceImpl service = new InstanceServiceImpl();
+        service.setStorageLocation(tempFolder.newFolder("instances"));
+
+        service.createInstance(getName() + "a", new InstanceSettings(8122, 1122, 44444, getName() + "a", null, null, null), false);
+        service.createInstance(getName() + "b", new InstanceSettings(8123, 1123, 44445, getName() + "b", null, null, null), false);
+
+        final List<String> completed = new ArrayList<String>();
+        Map<String, Exception> results = service.stopInstances(
+                Arrays.asList(getName() + "a", getName() + "b", getName() + "c"), 2,
+                new InstanceOperationListener() {
+                    public void completed(String name, Exception error) {
+                        completed.add(name);
+                    }
+                });
+
+        assertEquals(Arrays.asList(getName() + "a", getName() + "b", getName() + "c"), new ArrayList<String>(results.keySet()));
+        assertEquals(3, completed.size());
+        assertTrue(results.get(getName() + "a") instanceof IllegalStateException);
+        assertTrue(results.get(getName() + "b") instanceof IllegalStateException);
+        assertTrue(results.get(getName() + "c") instanceof IllegalArgumentException);
+        assertFalse(service.stopInstances(new ArrayList<String>(), 2, null).containsKey(getName() + "a"));
+    }
+
+    @Test
+    public void testSnapshotInvalidatedByExternalWrite() throws Exception {
+        InstanceServiceImpl service = new InstanceServiceImpl();
+        File storageLocation = tempFolder.newFolder("instances");
+        service.setStorageLocation(storageLocation);
+        service.createInstance(getName(), new InstanceSettings(8122, 1122, 44444, getName(), "-Xmx1G", null, null), false);
+
+        // the content of a file which has not been modified recently is kept in memory
+        File storageFile = new File(storageLocation, InstanceServiceImpl.STORAGE_FILE);
+        storageFile.setLastModified(System.currentTimeMillis() - 60000);
+        assertEquals("-Xmx1G", service.getInstanceJavaOpts(getName()));
+
+        // a write changing the length of the file
+        Properties storage = loadStorage(storageFile);
+        storage.setProperty("item.0.opts", "-Xmx512M");
+        saveStorage(storage, storageFile, getName());
+        storageFile.setLastModified(System.currentTimeMillis() - 60000);
+        assertEquals("-Xmx512M", service.getInstanceJavaOpts(getName()));
+
+        // a write keeping the length of the file, but changing its modification time
+        storage.setProperty("item.0.opts", "-Xmx768M");
+        saveStorage(storage, storageFile, getName());
+        storageFile.setLastModified(System.currentTimeMillis() - 30000);
+        assertEquals("-Xmx768M", service.getInstanceJavaOpts(getName()));
+    }
+
+    @Test
+    public void testStartInstanceStartedByAnotherProcess() throws Exception {
+        final File storageLocation = tempFolder.newFolder("instances");
+        final FakeProcessInstanceService service = new FakeProcessInstanceService() {
+            @Override
+            protected Process startProcess(File directory, String command) throws IOException {
+                // another process starts the instance meanwhile
+                Process other = super.startProcess(directory, command);
+                File storageFile = new File(storageLocation, InstanceServiceImpl.STORAGE_FILE);
+                Properties storage = loadStorage(storageFile);
+                storage.setProperty("item.0.pid", Integer.toString(other.getPid()));
+                saveStorage(storage, storageFile, getName());
+                return super.startProcess(directory, command);
+            }
+        };
+        service.setStorageLocation(storageLocation);
+        service.createInstance(getName(), new InstanceSettings(8122, 1122, 44444, getName(), null, null, null), false);
+
+        try {
+            service.startInstance(getName(), null);
+            fail("Instance should have been started by the other process");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        // the process started by this service has been destroyed, the other one is kept
+        assertEquals(1, service.running.size());
+        assertEquals(service.running.iterator().next().intValue(), service.getInstancePid(getName()));
+    }
+
+    @Test
+    public void testStopInstanceRestartedByAnotherProcess() throws Exception {
+        final File storageLocation = tempFolder.newFolder("instances");
+        final FakeProcessInstanceService service = new FakeProcessInstanceService() {
+            @Override
+            protected void cleanShutdown(InstanceState instance) {
+                // the instance is stopped and started again by another process meanwhile
+                try {
+                    running.remove(instance.pid);
+                    Process other = startProcess(new File(instance.loc), "");
+                    File storageFile = new File(storageLocation, InstanceServiceImpl.STORAGE_FILE);
+                    Properties storage = loadStorage(storageFile);
+                    storage.setProperty("item.0.pid", Integer.toString(other.getPid()));
+                    saveStorage(storage, storageFile, getName());
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        service.setStorageLocation(storageLocation);
+        service.createInstance(getName(), new InstanceSettings(8122, 1122, 44444, getName(), null, null, null), false);
+        service.startInstance(getName(), null);
+        int pid = service.getInstancePid(getName());
+
+        service.stopInstance(getName());
+        // the pid of the new process is not overwritten
+        assertEquals(1, service.running.size());
+        int other = service.getInstancePid(getName());
+        assertTrue(other != 0 && other != pid);
+        assertTrue(service.running.contains(other));
+    }
+
+    @Test
+    public void testConcurrentStartAndStop() throws Exception {
+        final FakeProcessInstanceService service = new FakeProcessInstanceService();
+        service.setStorageLocation(tempFolder.newFolder("instances"));
+        service.createInstance(getName(), new InstanceSettings(8122, 1122, 44444, getName(), null, null, null), false);
+
+        final AtomicInteger errors = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            final boolean start = i % 2 == 0;
+            Thread thread = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 20; j++) {
+                        try {
+                            if (start) {
+                                service.startInstance(getName(), null);
+                            } else {
+                                service.stopInstance(getName());
+                            }
+                        } catch (IllegalStateException e) {
+                            // already started or stopped
+                        } catch (Exception e) {
+                            errors.incrementAndGet();
+                        }
+                        maxRunning.set(Math.max(maxRunning.get(), service.running.size()));
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, errors.get());
+        assertTrue(maxRunning.get() <= 1);
+        int pid = service.getInstancePid(getName());
+        if (pid == 0) {
+            assertTrue(service.running.isEmpty());
+        } else {
+            assertEquals(Collections.singleton(pid), service.running);
+        }
+    }
+
+    /**
+     * Instance service using fake processes, which are only running until destroyed.
+     */
+    static class FakeProcessInstanceService extends InstanceServiceImpl {
+
+        final Set<Integer> running = Collections.synchronizedSet(new HashSet<Integer>());
+        private final AtomicInteger pids = new AtomicInteger(1000);
+
+        @Override
+        protected Process startProcess(File directory, String command) throws IOException {
+            int pid = pids.incrementAndGet();
+            running.add(pid);
+            return attachProcess(pid);
+        }
+
+        @Override
+        protected Process attachProcess(final int pid) throws IOException {
+            return new Process() {
+                public int getPid() {
+                    return pid;
+                }
+
+                public boolean isRunning() {
+                    return running.contains(pid);
+                }
+
+                public void destroy() {
+                    running.remove(pid);
+                }
+            };
+        }
+
+        @Override
+        protected void cleanShutdown(InstanceState instance) {
+        }
+    }
+
     private String getName() {
         return name.getMethodName();
     }
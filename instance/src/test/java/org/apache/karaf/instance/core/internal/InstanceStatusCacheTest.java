@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.instance.core.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.karaf.instance.core.Instance;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InstanceStatusCacheTest {
+
+    @Test
+    public void testCachesStableStates() throws Exception {
+        final List<String> states = new ArrayList<String>();
+        InstanceServiceImpl service = new InstanceServiceImpl() {
+            @Override
+            String loadInstanceState(String name) {
+                synchronized (states) {
+                    states.add(name);
+                    return name.startsWith("starting") ? Instance.STARTING : Instance.STARTED;
+                }
+            }
+        };
+        InstanceStatusCache cache = new InstanceStatusCache(service, 60000);
+        try {
+            assertEquals(Instance.STARTED, cache.getState("root"));
+            assertEquals(Instance.STARTED, cache.getState("root"));
+            assertEquals(1, states.size());
+
+            // transient states are always computed
+            assertEquals(Instance.STARTING, cache.getState("starting"));
+            assertEquals(Instance.STARTING, cache.getState("starting"));
+            assertEquals(3, states.size());
+
+            // state changes invalidate the cached state
+            cache.invalidate("root");
+            assertEquals(Instance.STARTED, cache.getState("root"));
+            assertEquals(4, states.size());
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testRefreshesInBackground() throws Exception {
+        final List<String> states = new ArrayList<String>();
+        InstanceServiceImpl service = new InstanceServiceImpl() {
+            @Override
+            String loadInstanceState(String name) {
+                synchronized (states) {
+                    states.add(name);
+                    return Instance.STOPPED;
+                }
+            }
+        };
+        InstanceStatusCache cache = new InstanceStatusCache(service, 50);
+        try {
+            assertEquals(Instance.STOPPED, cache.getState("child"));
+            Thread.sleep(500);
+            synchronized (states) {
+                assertTrue(states.size() > 2);
+            }
+            assertEquals(Instance.STOPPED, cache.getState("child"));
+        } finally {
+            cache.close();
+        }
+    }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jpm.impl;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessImplTest {
+
+    // above the maximum pid of the supported platforms
+    private static final int UNKNOWN_PID = Integer.MAX_VALUE;
+
+    @Test
+    public void testCurrentProcessIsAlive() throws Exception {
+        int pid = Integer.parseInt(ManagementFactory.getRuntimeMXBean().getName().split("@")[0]);
+        // null when it can not be checked without forking a process
+        assertNotEquals(Boolean.FALSE, ProcessImpl.isAlive(pid));
+        assertTrue(new ProcessImpl(pid).isRunning());
+    }
+
+    @Test
+    public void testUnknownProcessIsNotAlive() throws Exception {
+        assertNotEquals(Boolean.TRUE, ProcessImpl.isAlive(UNKNOWN_PID));
+        assertFalse(new ProcessImpl(UNKNOWN_PID).isRunning());
+    }
+
+}
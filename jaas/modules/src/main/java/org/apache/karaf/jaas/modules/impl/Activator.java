@@ -22,7 +22,9 @@ import org.apache.karaf.jaas.config.JaasRealm;
 import org.apache.karaf.jaas.modules.BackingEngineFactory;
 import org.apache.karaf.jaas.modules.EncryptionService;
 import org.apache.karaf.jaas.modules.encryption.BasicEncryptionService;
+import org.apache.karaf.jaas.modules.jdbc.JDBCCache;
 import org.apache.karaf.jaas.modules.ldap.LDAPCache;
+import org.apache.karaf.jaas.modules.ldap.LDAPContextPool;
 import org.apache.karaf.jaas.modules.properties.AutoEncryptionSupport;
 import org.apache.karaf.jaas.modules.properties.PropertiesBackingEngineFactory;
 import org.apache.karaf.jaas.modules.publickey.PublickeyBackingEngineFactory;
@@ -80,6 +82,8 @@ public class Activator extends BaseActivator implements ManagedService {
         StreamUtils.close(autoEncryptionSupport);
         super.doStop();
         LDAPCache.clear();
+        LDAPContextPool.clear();
+        JDBCCache.clear();
     }
 
     @Override
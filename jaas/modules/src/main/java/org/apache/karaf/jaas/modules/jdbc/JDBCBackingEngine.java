@@ -258,6 +258,7 @@ public class JDBCBackingEngine implements BackingEngine {
 
     protected void rawUpdate(Connection connection, String query, String... params) throws SQLException {
         int rows = JDBCUtils.rawUpdate(connection, query, params);
+        JDBCCache.invalidate();
         if (logger.isDebugEnabled()) {
             logger.debug(String.format("Executing [%s], params=%s. %d rows affected.", query, Arrays.toString(params), rows));
         }
@@ -0,0 +1,118 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.karaf.jaas.modules.jdbc;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.karaf.jaas.modules.ldap.ExpiringMap;
+
+/**
+ * Optional cache of the credentials and roles read from the database.
+ * The cache is only enabled when a positive time to live is configured.
+ */
+public class JDBCCache {
+
+    public static final String CACHE_TIME_TO_LIVE = "cache.timeToLive";
+    public static final int DEFAULT_TIME_TO_LIVE = 0; // Disabled
+
+    private static final ConcurrentMap<Map<String, ?>, JDBCCache> CACHES = new ConcurrentHashMap<>();
+
+    public static void clear() {
+        for (JDBCCache cache : CACHES.values()) {
+            cache.users.getExpirer().stopExpiring();
+            cache.users.clear();
+        }
+        CACHES.clear();
+    }
+
+    /**
+     * Forgets all the cached users, as they may have been changed in the database.
+     */
+    public static void invalidate() {
+        for (JDBCCache cache : CACHES.values()) {
+            cache.users.clear();
+        }
+    }
+
+    /**
+     * Returns the cache for the given realm options, or <code>null</code> if caching is disabled.
+     */
+    public static JDBCCache getCache(Map<String, ?> options) {
+        if (getTimeToLive(options) <= 0) {
+            return null;
+        }
+        JDBCCache cache = CACHES.get(options);
+        if (cache == null) {
+            JDBCCache newCache = new JDBCCache(options);
+            cache = CACHES.putIfAbsent(options, newCache);
+            if (cache == null) {
+                cache = newCache;
+            } else {
+                newCache.users.getExpirer().stopExpiring();
+            }
+        }
+        return cache;
+    }
+
+    private static int getTimeToLive(Map<String, ?> options) {
+        if (options.containsKey(CACHE_TIME_TO_LIVE)) {
+            return Integer.parseInt(options.get(CACHE_TIME_TO_LIVE).toString());
+        } else {
+            return DEFAULT_TIME_TO_LIVE;
+        }
+    }
+
+    private final long timeToLive;
+    private final ExpiringMap<String, UserInfos> users;
+
+    public JDBCCache(Map<String, ?> options) {
+        int ttl = getTimeToLive(options);
+        timeToLive = ttl * 1000L;
+        users = new ExpiringMap<>(ttl);
+        users.getExpirer().startExpiringIfNotStarted();
+    }
+
+    public UserInfos getUserInfos(String user, Callable<UserInfos> callable) throws Exception {
+        UserInfos result = users.get(user);
+        // the map expires idle entries only, so also bound the age of the entries used
+        if (result == null || System.currentTimeMillis() - result.created > timeToLive) {
+            result = callable.call();
+            if (result != null) {
+                users.put(user, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The stored password of a user, its roles and the roles of its groups.
+     */
+    public static class UserInfos {
+        final long created = System.currentTimeMillis();
+        final String password;
+        final List<String> roles = new ArrayList<>();
+        final Map<String, List<String>> groupRoles = new LinkedHashMap<>();
+
+        UserInfos(String password) {
+            this.password = password;
+        }
+    }
+
+}
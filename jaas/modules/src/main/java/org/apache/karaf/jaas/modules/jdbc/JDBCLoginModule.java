@@ -38,6 +38,7 @@ import java.sql.SQLException;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 public class JDBCLoginModule extends AbstractKarafLoginModule {
 
@@ -46,6 +47,7 @@ public class JDBCLoginModule extends AbstractKarafLoginModule {
     public static final String PASSWORD_QUERY = "query.password";
     public static final String USER_QUERY = "query.user";
     public static final String ROLE_QUERY = "query.role";
+    public static final String PASSWORD_ROLE_QUERY = "query.password.role";
     public static final String INSERT_USER_STATEMENT = "insert.user";
     public static final String INSERT_ROLE_STATEMENT = "insert.role";
     public static final String DELETE_ROLE_STATEMENT = "delete.role";
@@ -55,6 +57,12 @@ public class JDBCLoginModule extends AbstractKarafLoginModule {
     private String datasourceURL;
     protected String passwordQuery = "SELECT PASSWORD FROM USERS WHERE USERNAME=?";
     protected String roleQuery = "SELECT ROLE FROM ROLES WHERE USERNAME=?";
+    /**
+     * Optional query returning the password in the first column and the roles in the second column,
+     * one row per role, so that the user and its roles are read in a single round trip.
+     */
+    protected String passwordRoleQuery;
+    private Map<String, ?> options;
 
     public void initialize(Subject subject, CallbackHandler callbackHandler, Map<String, ?> sharedState, Map<String, ?> options) {
         super.initialize(subject, callbackHandler, options);
@@ -70,6 +78,10 @@ public class JDBCLoginModule extends AbstractKarafLoginModule {
         if (options.containsKey(ROLE_QUERY)) {
             roleQuery = (String) options.get(ROLE_QUERY);
         }
+        if (options.containsKey(PASSWORD_ROLE_QUERY)) {
+            passwordRoleQuery = (String) options.get(PASSWORD_ROLE_QUERY);
+        }
+        this.options = options;
     }
 
     public boolean login() throws LoginException {
@@ -96,35 +108,43 @@ public class JDBCLoginModule extends AbstractKarafLoginModule {
         principals = new HashSet<>();
 
         try {
-            DataSource datasource = JDBCUtils.createDatasource(bundleContext, datasourceURL);
-            try (Connection connection = datasource.getConnection()) {
-                List<String> passwords = JDBCUtils.rawSelect(connection, passwordQuery, user);
-                if (passwords.isEmpty()) {
-                    if (!this.detailedLoginExcepion) {
-                        throw new LoginException("login failed");
-                    } else {
-                        throw new LoginException("User " + user + " does not exist");
+            final String username = user;
+            JDBCCache cache = JDBCCache.getCache(options);
+            JDBCCache.UserInfos infos;
+            if (cache != null) {
+                infos = cache.getUserInfos(username, new Callable<JDBCCache.UserInfos>() {
+                    @Override
+                    public JDBCCache.UserInfos call() throws Exception {
+                        return loadUserInfos(username);
                     }
+                });
+            } else {
+                infos = loadUserInfos(username);
+            }
+            if (infos == null) {
+                if (!this.detailedLoginExcepion) {
+                    throw new LoginException("login failed");
+                } else {
+                    throw new LoginException("User " + user + " does not exist");
                 }
-                if (!checkPassword(password, passwords.get(0))) {
-                    if (!this.detailedLoginExcepion) {
-                        throw new LoginException("login failed");
-                    } else {
-                        throw new LoginException("Password for " + user + " does not match");
-                    }
+            }
+            if (!checkPassword(password, infos.password)) {
+                if (!this.detailedLoginExcepion) {
+                    throw new LoginException("login failed");
+                } else {
+                    throw new LoginException("Password for " + user + " does not match");
                 }
-                principals.add(new UserPrincipal(user));
-
-                List<String> roles = JDBCUtils.rawSelect(connection, roleQuery, user);
-                for (String role : roles) {
-                    if (role.startsWith(BackingEngine.GROUP_PREFIX)) {
-                        principals.add(new GroupPrincipal(role.substring(BackingEngine.GROUP_PREFIX.length())));
-                        for (String r : JDBCUtils.rawSelect(connection, roleQuery, role)) {
-                            principals.add(new RolePrincipal(r));
-                        }
-                    } else {
-                        principals.add(new RolePrincipal(role));
+            }
+            principals.add(new UserPrincipal(user));
+
+            for (String role : infos.roles) {
+                if (role.startsWith(BackingEngine.GROUP_PREFIX)) {
+                    principals.add(new GroupPrincipal(role.substring(BackingEngine.GROUP_PREFIX.length())));
+                    for (String r : infos.groupRoles.get(role)) {
+                        principals.add(new RolePrincipal(r));
                     }
+                } else {
+                    principals.add(new RolePrincipal(role));
                 }
             }
         } catch (Exception ex) {
@@ -133,6 +153,61 @@ public class JDBCLoginModule extends AbstractKarafLoginModule {
         return true;
     }
 
+    /**
+     * Reads the password and the roles of the given user, or returns <code>null</code> if the user does not exist.
+     * All queries use a single connection and the role query is prepared once for the user and all its groups.
+     */
+    private JDBCCache.UserInfos loadUserInfos(String user) throws Exception {
+        DataSource datasource = JDBCUtils.createDatasource(bundleContext, datasourceURL);
+        try (Connection connection = datasource.getConnection()) {
+            JDBCCache.UserInfos infos = null;
+            if (passwordRoleQuery != null) {
+                try (PreparedStatement statement = connection.prepareStatement(passwordRoleQuery)) {
+                    statement.setString(1, user);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            if (infos == null) {
+                                infos = new JDBCCache.UserInfos(resultSet.getString(1));
+                            }
+                            String role = resultSet.getString(2);
+                            if (role != null) {
+                                infos.roles.add(role);
+                            }
+                        }
+                    }
+                }
+            } else {
+                List<String> passwords = JDBCUtils.rawSelect(connection, passwordQuery, user);
+                if (!passwords.isEmpty()) {
+                    infos = new JDBCCache.UserInfos(passwords.get(0));
+                }
+            }
+            if (infos == null) {
+                return null;
+            }
+            PreparedStatement roleStatement = null;
+            try {
+                if (passwordRoleQuery == null) {
+                    roleStatement = connection.prepareStatement(roleQuery);
+                    infos.roles.addAll(JDBCUtils.rawSelect(roleStatement, user));
+                }
+                for (String role : infos.roles) {
+                    if (role.startsWith(BackingEngine.GROUP_PREFIX) && !infos.groupRoles.containsKey(role)) {
+                        if (roleStatement == null) {
+                            roleStatement = connection.prepareStatement(roleQuery);
+                        }
+                        infos.groupRoles.put(role, JDBCUtils.rawSelect(roleStatement, role));
+                    }
+                }
+            } finally {
+                if (roleStatement != null) {
+                    roleStatement.close();
+                }
+            }
+            return infos;
+        }
+    }
+
     public boolean abort() throws LoginException {
         return true;
     }
@@ -119,15 +119,22 @@ public final class JDBCUtils {
     }
 
     protected static List<String> rawSelect(Connection connection, String query, String... params) throws SQLException {
-        List<String> results = new ArrayList<>();
         try (PreparedStatement statement = connection.prepareStatement(query)) {
-            for (int i = 0; i < params.length; i++) {
-                statement.setString(i + 1, params[i]);
-            }
-            try (ResultSet resultSet = statement.executeQuery()) {
-                while (resultSet.next()) {
-                    results.add(resultSet.getString(1));
-                }
+            return rawSelect(statement, params);
+        }
+    }
+
+    /**
+     * Executes an already prepared statement, so that it can be reused for several queries.
+     */
+    protected static List<String> rawSelect(PreparedStatement statement, String... params) throws SQLException {
+        List<String> results = new ArrayList<>();
+        for (int i = 0; i < params.length; i++) {
+            statement.setString(i + 1, params[i]);
+        }
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                results.add(resultSet.getString(1));
             }
         }
         return results;
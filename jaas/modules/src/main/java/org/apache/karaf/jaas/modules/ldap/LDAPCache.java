@@ -16,63 +16,190 @@
 package org.apache.karaf.jaas.modules.ldap;
 
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of the user DNs and roles read from the LDAP server.
+ * <p/>
+ * Entries are valid for <code>cache.timeToLive</code> seconds. Users not found can also be cached for
+ * <code>cache.negativeTimeToLive</code> seconds. When <code>cache.refreshAhead</code> is set, an entry
+ * used during the last given seconds of its life is reloaded in the background while the cached value
+ * is returned, so that frequently used entries never have to be loaded synchronously.
+ */
 public class LDAPCache {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(LDAPCache.class);
+
     public static final String CACHE_TIME_TO_LIVE = "cache.timeToLive";
+    public static final String CACHE_NEGATIVE_TIME_TO_LIVE = "cache.negativeTimeToLive";
+    public static final String CACHE_REFRESH_AHEAD = "cache.refreshAhead";
     public static final int DEFAULT_TIME_TO_LIVE = 60 * 60; // One hour
+    public static final int DEFAULT_NEGATIVE_TIME_TO_LIVE = 0; // Disabled
+    public static final int DEFAULT_REFRESH_AHEAD = 0; // Disabled
+
+    private static final int MAX_PENDING_REFRESHES = 256;
 
     private static final ConcurrentMap<Map<String, ?>, LDAPCache> CACHES = new ConcurrentHashMap<>();
 
+    private static ExecutorService refresher;
+
     public static void clear() {
+        for (LDAPCache cache : CACHES.values()) {
+            cache.userDnAndNamespace.getExpirer().stopExpiring();
+            cache.userRoles.getExpirer().stopExpiring();
+        }
         CACHES.clear();
+        synchronized (LDAPCache.class) {
+            if (refresher != null) {
+                refresher.shutdownNow();
+                refresher = null;
+            }
+        }
     }
 
     public static LDAPCache getCache(Map<String, ?> options) {
-        LDAPCache cache = CACHES.get(options);
+        return getCache(options, options);
+    }
+
+    /**
+     * Returns the cache for the given LDAP environment, configured with the given login module options.
+     */
+    public static LDAPCache getCache(Map<String, ?> env, Map<String, ?> options) {
+        LDAPCache cache = CACHES.get(env);
         if (cache == null) {
-            CACHES.putIfAbsent(options, new LDAPCache(options));
-            cache = CACHES.get(options);
+            LDAPCache newCache = new LDAPCache(options);
+            cache = CACHES.putIfAbsent(env, newCache);
+            if (cache == null) {
+                cache = newCache;
+            } else {
+                newCache.userDnAndNamespace.getExpirer().stopExpiring();
+                newCache.userRoles.getExpirer().stopExpiring();
+            }
         }
         return cache;
     }
 
-    private final int timeToLive;
-    private final ExpiringMap<String, String[]> userDnAndNamespace;
-    private final ExpiringMap<String, String[]> userRoles;
+    private static synchronized ExecutorService getRefresher() {
+        if (refresher == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 2, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(MAX_PENDING_REFRESHES),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "LDAPCache refresher");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    },
+                    new ThreadPoolExecutor.DiscardPolicy());
+            executor.allowCoreThreadTimeOut(true);
+            refresher = executor;
+        }
+        return refresher;
+    }
+
+    private final long timeToLive;
+    private final long negativeTimeToLive;
+    private final long refreshAhead;
+    private final ExpiringMap<String, Entry> userDnAndNamespace;
+    private final ExpiringMap<String, Entry> userRoles;
+    private final ConcurrentMap<String, Boolean> refreshing = new ConcurrentHashMap<>();
 
     public LDAPCache(Map<String, ?> options) {
-        if (options.containsKey(CACHE_TIME_TO_LIVE)) {
-            timeToLive = Integer.parseInt(options.get(CACHE_TIME_TO_LIVE).toString());
-        } else {
-            timeToLive = DEFAULT_TIME_TO_LIVE;
-        }
-        userDnAndNamespace = new ExpiringMap<>(timeToLive);
-        userRoles = new ExpiringMap<>(timeToLive);
+        int ttl = getInt(options, CACHE_TIME_TO_LIVE, DEFAULT_TIME_TO_LIVE);
+        int negativeTtl = getInt(options, CACHE_NEGATIVE_TIME_TO_LIVE, DEFAULT_NEGATIVE_TIME_TO_LIVE);
+        timeToLive = ttl * 1000L;
+        negativeTimeToLive = negativeTtl * 1000L;
+        refreshAhead = getInt(options, CACHE_REFRESH_AHEAD, DEFAULT_REFRESH_AHEAD) * 1000L;
+        userDnAndNamespace = new ExpiringMap<>(Math.max(ttl, negativeTtl));
+        userRoles = new ExpiringMap<>(ttl);
+        userDnAndNamespace.getExpirer().startExpiringIfNotStarted();
+        userRoles.getExpirer().startExpiringIfNotStarted();
+    }
+
+    private static int getInt(Map<String, ?> options, String key, int defaultValue) {
+        Object value = options.get(key);
+        return value != null ? Integer.parseInt(value.toString()) : defaultValue;
     }
 
     public String[] getUserDnAndNamespace(String user, Callable<String[]> callable) throws Exception {
-        String[] result = userDnAndNamespace.get(user);
-        if (result == null) {
-            result = callable.call();
-            if (result != null) {
-                userDnAndNamespace.put(user, result);
+        return get(userDnAndNamespace, "dn:" + user, user, callable, true);
+    }
+
+    public String[] getUserRoles(String userDN, Callable<String[]> callable) throws Exception {
+        return get(userRoles, "roles:" + userDN, userDN, callable, false);
+    }
+
+    private String[] get(ExpiringMap<String, Entry> map, String refreshKey, String key, Callable<String[]> callable, boolean negative) throws Exception {
+        Entry entry = map.get(key);
+        if (entry != null) {
+            long age = System.currentTimeMillis() - entry.created;
+            if (entry.value == null) {
+                if (age < negativeTimeToLive) {
+                    return null;
+                }
+            } else if (age < timeToLive) {
+                if (refreshAhead > 0 && age >= timeToLive - refreshAhead) {
+                    refresh(map, refreshKey, key, callable, negative);
+                }
+                return entry.value;
             }
         }
+        return load(map, key, callable, negative);
+    }
+
+    private String[] load(ExpiringMap<String, Entry> map, String key, Callable<String[]> callable, boolean negative) throws Exception {
+        String[] result = callable.call();
+        if (result != null) {
+            map.put(key, new Entry(result));
+        } else if (negative && negativeTimeToLive > 0) {
+            map.put(key, new Entry(null));
+        } else {
+            map.remove(key);
+        }
         return result;
     }
 
-    public String[] getUserRoles(String userDN, Callable<String[]> callable) throws Exception {
-        String[] result = userRoles.get(userDN);
-        if (result == null) {
-            result = callable.call();
-            if (result != null) {
-                userRoles.put(userDN, result);
+    private void refresh(final ExpiringMap<String, Entry> map, final String refreshKey, final String key,
+                         final Callable<String[]> callable, final boolean negative) {
+        if (refreshing.putIfAbsent(refreshKey, Boolean.TRUE) == null) {
+            try {
+                getRefresher().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            load(map, key, callable, negative);
+                        } catch (Exception e) {
+                            LOGGER.debug("Unable to refresh LDAP cache entry {}", key, e);
+                        } finally {
+                            refreshing.remove(refreshKey);
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                refreshing.remove(refreshKey);
+                throw e;
             }
         }
-        return result;
     }
+
+    private static class Entry {
+        final long created = System.currentTimeMillis();
+        final String[] value;
+
+        Entry(String[] value) {
+            this.value = value;
+        }
+    }
+
 }
@@ -0,0 +1,159 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.karaf.jaas.modules.ldap;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+
+/**
+ * Pool of the LDAP contexts used to search users and roles with the connection credentials.
+ * <p/>
+ * At most <code>connection.pool.size</code> idle contexts are kept per LDAP environment. A context
+ * which has been idle for more than <code>connection.pool.idleValidation</code> seconds is checked
+ * before being reused, and discarded if the connection is not usable anymore.
+ * Contexts bound with the credentials of the user logging in are never pooled.
+ */
+public class LDAPContextPool {
+
+    public static final String POOL_SIZE = "connection.pool.size";
+    public static final String POOL_IDLE_VALIDATION = "connection.pool.idleValidation";
+    public static final int DEFAULT_POOL_SIZE = 0; // Disabled
+    public static final int DEFAULT_POOL_IDLE_VALIDATION = 60;
+
+    private static final ConcurrentMap<Map<String, ?>, LDAPContextPool> POOLS = new ConcurrentHashMap<>();
+
+    public static void clear() {
+        for (LDAPContextPool pool : POOLS.values()) {
+            pool.close();
+        }
+        POOLS.clear();
+    }
+
+    /**
+     * Returns the pool for the given LDAP environment, or <code>null</code> if pooling is disabled.
+     */
+    public static LDAPContextPool getPool(Hashtable<String, Object> env, Map<String, ?> options) {
+        Object size = options.get(POOL_SIZE);
+        if (size == null || Integer.parseInt(size.toString()) <= 0) {
+            return null;
+        }
+        LDAPContextPool pool = POOLS.get(env);
+        if (pool == null) {
+            LDAPContextPool newPool = new LDAPContextPool(env, options);
+            pool = POOLS.putIfAbsent(newPool.env, newPool);
+            if (pool == null) {
+                pool = newPool;
+            }
+        }
+        return pool;
+    }
+
+    private final Hashtable<String, Object> env;
+    private final int size;
+    private final long idleValidation;
+    private final Deque<PooledContext> idle = new ArrayDeque<>();
+
+    public LDAPContextPool(Hashtable<String, Object> env, Map<String, ?> options) {
+        this.env = new Hashtable<>(env);
+        Object size = options.get(POOL_SIZE);
+        this.size = size != null ? Integer.parseInt(size.toString()) : DEFAULT_POOL_SIZE;
+        Object idleValidation = options.get(POOL_IDLE_VALIDATION);
+        this.idleValidation = (idleValidation != null ? Integer.parseInt(idleValidation.toString()) : DEFAULT_POOL_IDLE_VALIDATION) * 1000L;
+    }
+
+    /**
+     * Returns an idle context, or a new one if none is available.
+     */
+    public DirContext borrow() throws NamingException {
+        while (true) {
+            PooledContext pooled;
+            synchronized (idle) {
+                pooled = idle.pollFirst();
+            }
+            if (pooled == null) {
+                return new InitialDirContext(env);
+            }
+            if (System.currentTimeMillis() - pooled.lastUsed < idleValidation || isValid(pooled.context)) {
+                return pooled.context;
+            }
+            close(pooled.context);
+        }
+    }
+
+    /**
+     * Gives back a context after a successful use.
+     */
+    public void release(DirContext context) {
+        synchronized (idle) {
+            if (idle.size() < size) {
+                idle.addFirst(new PooledContext(context));
+                return;
+            }
+        }
+        close(context);
+    }
+
+    /**
+     * Discards a context after a failure, as its connection may be broken.
+     */
+    public void invalidate(DirContext context) {
+        close(context);
+    }
+
+    private void close() {
+        synchronized (idle) {
+            for (PooledContext pooled : idle) {
+                close(pooled.context);
+            }
+            idle.clear();
+        }
+    }
+
+    private static boolean isValid(DirContext context) {
+        try {
+            context.getAttributes("", new String[] { "objectClass" });
+            return true;
+        } catch (NamingException e) {
+            return false;
+        }
+    }
+
+    private static void close(DirContext context) {
+        try {
+            context.close();
+        } catch (Exception e) {
+            // ignore
+        }
+    }
+
+    private static class PooledContext {
+        final DirContext context;
+        final long lastUsed = System.currentTimeMillis();
+
+        PooledContext(DirContext context) {
+            this.context = context;
+        }
+    }
+
+}
@@ -26,6 +26,7 @@ import org.slf4j.LoggerFactory;
 import javax.naming.CommunicationException;
 import javax.naming.Context;
 import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
 import javax.naming.directory.*;
 import javax.net.ssl.SSLSocketFactory;
 import javax.security.auth.Subject;
@@ -226,18 +227,23 @@ public class LDAPLoginModule extends AbstractKarafLoginModule {
         if (ssl) {
             setupSsl(env);
         }
+        // the searches are done with the connection credentials, keep them apart from the user bind
+        final Hashtable<String, Object> searchEnv = new Hashtable<>(env);
+        final LDAPCache cache = LDAPCache.getCache(searchEnv, options);
+        final LDAPContextPool searchPool = LDAPContextPool.getPool(searchEnv, options);
         logger.debug("Get the user DN.");
         final String userDN;
         final String userDNNamespace;
         try {
-            String[] userDnAndNamespace = LDAPCache.getCache(env).getUserDnAndNamespace(user, new Callable<String[]>() {
+            String[] userDnAndNamespace = cache.getUserDnAndNamespace(user, withSsl(new Callable<String[]>() {
                 @Override
                 public String[] call() throws Exception {
                     DirContext context = null;
                     NamingEnumeration namingEnumeration = null;
+                    boolean reusable = false;
                     try {
                         logger.debug("Initialize the JNDI LDAP Dir Context.");
-                        context = new InitialDirContext(env);
+                        context = openContext(searchPool, searchEnv);
                         logger.debug("Define the subtree scope search control.");
                         SearchControls controls = new SearchControls();
                         if (userSearchSubtree) {
@@ -247,12 +253,13 @@ public class LDAPLoginModule extends AbstractKarafLoginModule {
                         }
                         logger.debug("Looking for the user in LDAP with ");
                         logger.debug("  base DN: " + userBaseDN);
-                        userFilter = userFilter.replaceAll(Pattern.quote("%u"), Matcher.quoteReplacement(user));
-                        userFilter = userFilter.replace("\\", "\\\\");
-                        logger.debug("  filter: " + userFilter);
-                        namingEnumeration = context.search(userBaseDN, userFilter, controls);
+                        String filter = userFilter.replaceAll(Pattern.quote("%u"), Matcher.quoteReplacement(user));
+                        filter = filter.replace("\\", "\\\\");
+                        logger.debug("  filter: " + filter);
+                        namingEnumeration = context.search(userBaseDN, filter, controls);
                         if (!namingEnumeration.hasMore()) {
                             logger.warn("User " + user + " not found in LDAP.");
+                            reusable = true;
                             return null;
                         }
                         logger.debug("Get the user DN.");
@@ -268,6 +275,7 @@ public class LDAPLoginModule extends AbstractKarafLoginModule {
                         // the second escapes the slashes correctly.
                         String userDN = result.getNameInNamespace().replace("," + userBaseDN, "");
                         String userDNNamespace = (String) result.getNameInNamespace();
+                        reusable = true;
                         return new String[]{userDN, userDNNamespace};
                     } finally {
                         if (namingEnumeration != null) {
@@ -277,16 +285,10 @@ public class LDAPLoginModule extends AbstractKarafLoginModule {
                                 // ignore
                             }
                         }
-                        if (context != null) {
-                            try {
-                                context.close();
-                            } catch (Exception e) {
-                                // ignore
-                            }
-                        }
+                        closeContext(searchPool, context, reusable);
                     }
                 }
-            });
+            }));
             if (userDnAndNamespace == null) {
                 return false;
             }
@@ -330,20 +332,20 @@ public class LDAPLoginModule extends AbstractKarafLoginModule {
         }
         principals.add(new UserPrincipal(user));
         // step 3: retrieving user roles
+        // switch back to the connection credentials for the role search like we did for the user search in step 1,
+        // without connection credentials the roles are searched with the user credentials
+        final boolean connectionBound = connectionUsername != null && connectionUsername.trim().length() > 0;
+        final Hashtable<String, Object> roleEnv = connectionBound ? searchEnv : new Hashtable<>(env);
+        final LDAPContextPool rolePool = connectionBound ? searchPool : null;
         try {
-            String[] roles = LDAPCache.getCache(env).getUserRoles(userDN, new Callable<String[]>() {
+            String[] roles = cache.getUserRoles(userDN, withSsl(new Callable<String[]>() {
                 @Override
                 public String[] call() throws Exception {
                     DirContext context = null;
+                    boolean reusable = false;
                     try {
                         logger.debug("Get user roles.");
-                        // switch back to the connection credentials for the role search like we did for the user search in step 1
-                        if (connectionUsername != null && connectionUsername.trim().length() > 0) {
-                            env.put(Context.SECURITY_AUTHENTICATION, authentication);
-                            env.put(Context.SECURITY_PRINCIPAL, connectionUsername);
-                            env.put(Context.SECURITY_CREDENTIALS, connectionPassword);
-                        }
-                        context = new InitialDirContext(env);
+                        context = openContext(rolePool, roleEnv);
                         SearchControls controls = new SearchControls();
                         if (roleSearchSubtree) {
                             controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
@@ -355,49 +357,48 @@ public class LDAPLoginModule extends AbstractKarafLoginModule {
                         }
                         logger.debug("Looking for the user roles in LDAP with ");
                         logger.debug("  base DN: " + roleBaseDN);
-                        roleFilter = roleFilter.replaceAll(Pattern.quote("%u"), Matcher.quoteReplacement(user));
-                        roleFilter = roleFilter.replaceAll(Pattern.quote("%dn"), Matcher.quoteReplacement(userDN));
-                        roleFilter = roleFilter.replaceAll(Pattern.quote("%fqdn"), Matcher.quoteReplacement(userDN + "," + userBaseDN));
-                        roleFilter = roleFilter.replaceAll(Pattern.quote("%nsdn"), Matcher.quoteReplacement(userDNNamespace));
-                        roleFilter = roleFilter.replace("\\", "\\\\");
-                        logger.debug("  filter: " + roleFilter);
+                        String filter = roleFilter.replaceAll(Pattern.quote("%u"), Matcher.quoteReplacement(user));
+                        filter = filter.replaceAll(Pattern.quote("%dn"), Matcher.quoteReplacement(userDN));
+                        filter = filter.replaceAll(Pattern.quote("%fqdn"), Matcher.quoteReplacement(userDN + "," + userBaseDN));
+                        filter = filter.replaceAll(Pattern.quote("%nsdn"), Matcher.quoteReplacement(userDNNamespace));
+                        filter = filter.replace("\\", "\\\\");
+                        logger.debug("  filter: " + filter);
                         List<String> rolesList = new ArrayList<>();
-                        NamingEnumeration namingEnumeration = context.search(roleBaseDN, roleFilter, controls);
-                        while (namingEnumeration.hasMore()) {
-                            SearchResult result = (SearchResult) namingEnumeration.next();
-                            Attributes attributes = result.getAttributes();
-                            Attribute roles = attributes.get(roleNameAttribute);
-                            if (roles != null) {
-                                for (int i = 0; i < roles.size(); i++) {
-                                    String role = (String) roles.get(i);
-                                    if (role != null) {
-                                        logger.debug("User {} is a member of role {}", user, role);
-                                        // handle role mapping
-                                        Set<String> roleMappings = tryMappingRole(role);
-                                        if (roleMappings.isEmpty()) {
-                                            rolesList.add(role);
-                                        } else {
-                                            for (String roleMapped : roleMappings) {
-                                                rolesList.add(roleMapped);
+                        NamingEnumeration namingEnumeration = context.search(roleBaseDN, filter, controls);
+                        try {
+                            while (namingEnumeration.hasMore()) {
+                                SearchResult result = (SearchResult) namingEnumeration.next();
+                                Attributes attributes = result.getAttributes();
+                                Attribute roles = attributes.get(roleNameAttribute);
+                                if (roles != null) {
+                                    for (int i = 0; i < roles.size(); i++) {
+                                        String role = (String) roles.get(i);
+                                        if (role != null) {
+                                            logger.debug("User {} is a member of role {}", user, role);
+                                            // handle role mapping
+                                            Set<String> roleMappings = tryMappingRole(role);
+                                            if (roleMappings.isEmpty()) {
+                                                rolesList.add(role);
+                                            } else {
+                                                for (String roleMapped : roleMappings) {
+                                                    rolesList.add(roleMapped);
+                                                }
                                             }
                                         }
                                     }
                                 }
-                            }
 
+                            }
+                        } finally {
+                            namingEnumeration.close();
                         }
+                        reusable = true;
                         return rolesList.toArray(new String[rolesList.size()]);
                     } finally {
-                        if (context != null) {
-                            try {
-                                context.close();
-                            } catch (Exception e) {
-                                // ignore
-                            }
-                        }
+                        closeContext(rolePool, context, reusable);
                     }
                 }
-            });
+            }));
             for (String role : roles) {
                 principals.add(new RolePrincipal(role));
             }
@@ -407,6 +408,56 @@ public class LDAPLoginModule extends AbstractKarafLoginModule {
         return true;
     }
 
+    private static DirContext openContext(LDAPContextPool pool, Hashtable<String, Object> env) throws NamingException {
+        return pool != null ? pool.borrow() : new InitialDirContext(env);
+    }
+
+    private static void closeContext(LDAPContextPool pool, DirContext context, boolean reusable) {
+        if (context == null) {
+            return;
+        }
+        if (pool != null) {
+            if (reusable) {
+                pool.release(context);
+            } else {
+                pool.invalidate(context);
+            }
+        } else {
+            try {
+                context.close();
+            } catch (Exception e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Wraps a LDAP search so that it can also be run by the cache refresher thread,
+     * with the SSL socket factory and class loader of the login thread.
+     */
+    private Callable<String[]> withSsl(final Callable<String[]> callable) {
+        if (!ssl) {
+            return callable;
+        }
+        final SSLSocketFactory factory = ManagedSSLSocketFactory.getSocketFactory();
+        final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        return new Callable<String[]>() {
+            @Override
+            public String[] call() throws Exception {
+                SSLSocketFactory previousFactory = ManagedSSLSocketFactory.getSocketFactory();
+                ClassLoader previousClassLoader = Thread.currentThread().getContextClassLoader();
+                ManagedSSLSocketFactory.setSocketFactory(factory);
+                Thread.currentThread().setContextClassLoader(classLoader);
+                try {
+                    return callable.call();
+                } finally {
+                    ManagedSSLSocketFactory.setSocketFactory(previousFactory);
+                    Thread.currentThread().setContextClassLoader(previousClassLoader);
+                }
+            }
+        };
+    }
+
     protected Set<String> tryMappingRole(String role) {
         Set<String> roles = new HashSet<String>();
         if (roleMapping == null || roleMapping.isEmpty()) {
@@ -459,6 +510,10 @@ public class LDAPLoginModule extends AbstractKarafLoginModule {
             factories.set(factory);
         }
 
+        static SSLSocketFactory getSocketFactory() {
+            return factories.get();
+        }
+
         public static SSLSocketFactory getDefault() {
             SSLSocketFactory factory = factories.get();
             if (factory == null) {
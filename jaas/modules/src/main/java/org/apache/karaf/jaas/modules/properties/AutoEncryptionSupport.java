@@ -19,6 +19,7 @@ package org.apache.karaf.jaas.modules.properties;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
 
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
@@ -71,7 +72,7 @@ public class AutoEncryptionSupport implements Runnable, Closeable {
             dir.register(watchService, ENTRY_MODIFY);
 
             Path file = dir.resolve("users.properties");
-            encryptedPassword(new Properties(file.toFile()));
+            encryptedPassword(file.toFile());
 
             while (running) {
                 try {
@@ -86,7 +87,7 @@ public class AutoEncryptionSupport implements Runnable, Closeable {
                         // Context for directory entry event is the file name of entry
                         Path name = dir.resolve(ev.context());
                         if (file.equals(name)) {
-                            encryptedPassword(new Properties(file.toFile()));
+                            encryptedPassword(file.toFile());
                         }
                     }
                     key.reset();
@@ -104,7 +105,8 @@ public class AutoEncryptionSupport implements Runnable, Closeable {
         }
     }
 
-    void encryptedPassword(Properties users) throws IOException {
+    void encryptedPassword(File file) throws IOException {
+        Properties users = new Properties(file);
         boolean changed = false;
         for (String userName : users.keySet()) {
             String user = userName;
@@ -140,6 +142,8 @@ public class AutoEncryptionSupport implements Runnable, Closeable {
         }
         if (changed) {
             users.save();
+            // drop the cached view of the file, which holds the clear text passwords
+            UsersCache.invalidate(file);
         }
     }
 
@@ -24,6 +24,8 @@ import org.apache.karaf.jaas.modules.encryption.EncryptionSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.security.Principal;
 import java.util.ArrayList;
 import java.util.List;
@@ -35,6 +37,7 @@ public class PropertiesBackingEngine implements BackingEngine {
 
     private Properties users;
     private EncryptionSupport encryptionSupport;
+    private File usersFile;
 
     /**
      * Constructor
@@ -50,6 +53,19 @@ public class PropertiesBackingEngine implements BackingEngine {
         this.encryptionSupport = encryptionSupport;
     }
 
+    /**
+     * Constructor
+     *
+     * @param users
+     * @param encryptionSupport
+     * @param usersFile the file backing the users properties, its cached view is updated on each change
+     */
+    public PropertiesBackingEngine(Properties users, EncryptionSupport encryptionSupport, File usersFile) {
+        this.users = users;
+        this.encryptionSupport = encryptionSupport;
+        this.usersFile = usersFile;
+    }
+
     @Override
     public void addUser(String username, String password) {
         if (username.startsWith(GROUP_PREFIX))
@@ -93,7 +109,7 @@ public class PropertiesBackingEngine implements BackingEngine {
         }
 
         try {
-            users.save();
+            save();
         } catch (Exception ex) {
             LOGGER.error("Cannot update users file,", ex);
         }
@@ -109,7 +125,7 @@ public class PropertiesBackingEngine implements BackingEngine {
         users.remove(username);
 
         try {
-            users.save();
+            save();
         } catch (Exception ex) {
             LOGGER.error("Cannot remove users file,", ex);
         }
@@ -175,7 +191,7 @@ public class PropertiesBackingEngine implements BackingEngine {
             users.put(username, newUserInfos);
         }
         try {
-            users.save();
+            save();
         } catch (Exception ex) {
             LOGGER.error("Cannot update users file,", ex);
         }
@@ -205,7 +221,7 @@ public class PropertiesBackingEngine implements BackingEngine {
         }
 
         try {
-            users.save();
+            save();
         } catch (Exception ex) {
             LOGGER.error("Cannot update users file,", ex);
         }
@@ -269,4 +285,9 @@ public class PropertiesBackingEngine implements BackingEngine {
         deleteRole(GROUP_PREFIX + group, role);
     }
 
+    private void save() throws IOException {
+        users.save();
+        UsersCache.update(usersFile, users);
+    }
+
 }
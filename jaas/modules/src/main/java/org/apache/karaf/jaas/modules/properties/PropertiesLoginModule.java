@@ -30,7 +30,6 @@ import javax.security.auth.callback.UnsupportedCallbackException;
 import javax.security.auth.login.FailedLoginException;
 import javax.security.auth.login.LoginException;
 
-import org.apache.felix.utils.properties.Properties;
 import org.apache.karaf.jaas.boot.principal.GroupPrincipal;
 import org.apache.karaf.jaas.boot.principal.RolePrincipal;
 import org.apache.karaf.jaas.boot.principal.UserPrincipal;
@@ -67,9 +66,9 @@ public class PropertiesLoginModule extends AbstractKarafLoginModule {
             throw new LoginException("Users file not found at " + f);
         }
 
-        Properties users;
+        Map<String, String> users;
         try {
-            users = new Properties(f);
+            users = UsersCache.getUsers(f);
         } catch (IOException ioe) {
             throw new LoginException("Unable to load user properties file " + f);
         }
@@ -104,13 +103,7 @@ public class PropertiesLoginModule extends AbstractKarafLoginModule {
         String password = new String(((PasswordCallback) callbacks[1]).getPassword());
 
         // user infos container read from the users properties file
-        String userInfos = null;
-
-        try {
-            userInfos = (String) users.get(user);
-        } catch (NullPointerException e) {
-            //error handled in the next statement
-        }
+        String userInfos = users.get(user);
         if (userInfos == null) {
         	if (!this.detailedLoginExcepion) {
         		throw new FailedLoginException("login failed");
@@ -138,7 +131,7 @@ public class PropertiesLoginModule extends AbstractKarafLoginModule {
             if (infos[i].trim().startsWith(PropertiesBackingEngine.GROUP_PREFIX)) {
                 // it's a group reference
                 principals.add(new GroupPrincipal(infos[i].trim().substring(PropertiesBackingEngine.GROUP_PREFIX.length())));
-                String groupInfo = (String) users.get(infos[i].trim());
+                String groupInfo = users.get(infos[i].trim());
                 if (groupInfo != null) {
                     String[] roles = groupInfo.split(",");
                     for (int j = 1; j < roles.length; j++) {
@@ -151,8 +144,6 @@ public class PropertiesLoginModule extends AbstractKarafLoginModule {
             }
         }
 
-        users.clear();
-
         if (debug) {
             LOGGER.debug("Successfully logged in {}", user);
         }
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jaas.modules.properties;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.felix.utils.properties.Properties;
+
+/**
+ * Shared in-memory view of the users properties files.
+ *
+ * A file is parsed again only when its last modification time or length changes.
+ * As the modification time may have a coarse granularity, a file modified shortly
+ * before it has been read is always read again until it is stable.
+ */
+public class UsersCache {
+
+    /**
+     * Granularity of the file modification time on the slowest file systems.
+     */
+    private static final long MODIFICATION_GRANULARITY = 2000;
+
+    private static final Map<String, Entry> ENTRIES = new ConcurrentHashMap<String, Entry>();
+
+    private UsersCache() {
+    }
+
+    /**
+     * Returns an immutable snapshot of the users defined in the given file.
+     */
+    public static Map<String, String> getUsers(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+        Entry entry = ENTRIES.get(key);
+        if (entry != null && entry.isValid(lastModified, length)) {
+            return entry.users;
+        }
+        long loaded = System.currentTimeMillis();
+        entry = new Entry(lastModified, length, loaded, new Properties(file));
+        ENTRIES.put(key, entry);
+        return entry.users;
+    }
+
+    /**
+     * Replaces the cached snapshot of the given file after it has been saved.
+     */
+    public static void update(File file, Properties users) {
+        if (file == null) {
+            return;
+        }
+        ENTRIES.put(file.getAbsolutePath(), new Entry(file.lastModified(), file.length(), System.currentTimeMillis(), users));
+    }
+
+    /**
+     * Removes the cached snapshot of the given file.
+     */
+    public static void invalidate(File file) {
+        ENTRIES.remove(file.getAbsolutePath());
+    }
+
+    private static class Entry {
+        final long lastModified;
+        final long length;
+        final boolean racy;
+        final Map<String, String> users;
+
+        Entry(long lastModified, long length, long loaded, Properties properties) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.racy = lastModified + MODIFICATION_GRANULARITY > loaded;
+            Map<String, String> copy = new HashMap<String, String>();
+            for (String key : properties.keySet()) {
+                copy.put(key, properties.get(key));
+            }
+            this.users = Collections.unmodifiableMap(copy);
+        }
+
+        boolean isValid(long lastModified, long length) {
+            return !racy && this.lastModified == lastModified && this.length == length;
+        }
+    }
+
+}
@@ -16,11 +16,16 @@
 package org.apache.karaf.jaas.modules.jdbc;
 
 import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.security.auth.Subject;
 import javax.security.auth.callback.Callback;
@@ -148,6 +153,87 @@ public class JdbcLoginModuleTest {
         assertTrue(subject.getPrincipals().contains(new RolePrincipal("role2")));
     }
 
+    @Test
+    public void testLoginModuleWithSingleQueryAndCache() throws Exception {
+        JDBCBackingEngine engine = new JDBCBackingEngine(dataSource);
+        engine.addGroupRole("group1", "role2");
+        engine.addUser("abc", "xyz");
+        engine.addRole("abc", "role1");
+        engine.addGroup("abc", "group1");
+
+        // count the statements run on the database
+        final AtomicInteger queries = new AtomicInteger();
+        DataSource countingDataSource = countingProxy(DataSource.class, dataSource, queries);
+        BundleContext context = EasyMock.createMock(BundleContext.class);
+        ServiceReference reference = EasyMock.createMock(ServiceReference.class);
+        expect(context.getServiceReferences(DataSource.class.getName(), null)).andReturn(new ServiceReference[] { reference }).anyTimes();
+        expect(context.getService(reference)).andReturn(countingDataSource).anyTimes();
+        expect(context.ungetService(reference)).andReturn(true).anyTimes();
+        EasyMock.replay(context);
+        options.put(BundleContext.class.getName(), context);
+
+        options.put(JDBCLoginModule.PASSWORD_ROLE_QUERY,
+                "SELECT U.PASSWORD, R.ROLE FROM USERS U LEFT OUTER JOIN ROLES R ON U.USERNAME = R.USERNAME WHERE U.USERNAME=?");
+        options.put(JDBCCache.CACHE_TIME_TO_LIVE, "60");
+        try {
+            login("abc", "xyz");
+            int count = queries.get();
+            assertTrue(count > 0);
+
+            // the second login is served by the cache
+            Subject subject = login("abc", "xyz");
+            assertEquals(count, queries.get());
+            assertTrue(subject.getPrincipals().contains(new UserPrincipal("abc")));
+            assertTrue(subject.getPrincipals().contains(new GroupPrincipal("group1")));
+            assertTrue(subject.getPrincipals().contains(new RolePrincipal("role1")));
+            assertTrue(subject.getPrincipals().contains(new RolePrincipal("role2")));
+
+            // an update through the backing engine invalidates the cache
+            new JDBCBackingEngine(countingDataSource).addRole("abc", "role3");
+            count = queries.get();
+            subject = login("abc", "xyz");
+            assertTrue(queries.get() > count);
+            assertTrue(subject.getPrincipals().contains(new RolePrincipal("role3")));
+        } finally {
+            JDBCCache.clear();
+        }
+    }
+
+    private Subject login(String user, String password) throws Exception {
+        JDBCLoginModule module = new JDBCLoginModule();
+        Subject subject = new Subject();
+        module.initialize(subject, getCallbackHandler(user, password), null, options);
+        module.login();
+        module.commit();
+        return subject;
+    }
+
+    /**
+     * Wraps a datasource or a connection, counting the statements created through it.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T countingProxy(final Class<T> type, final Object target, final AtomicInteger queries) {
+        return (T) Proxy.newProxyInstance(JdbcLoginModuleTest.class.getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                Object result;
+                try {
+                    result = method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+                if (result instanceof Connection) {
+                    return countingProxy(Connection.class, result, queries);
+                }
+                if (method.getName().equals("prepareStatement") || method.getName().equals("createStatement")
+                        || method.getName().equals("prepareCall")) {
+                    queries.incrementAndGet();
+                }
+                return result;
+            }
+        });
+    }
+
     @Test
     public void testEngine() throws Exception {
         JDBCBackingEngine engine = new JDBCBackingEngine(dataSource);
@@ -29,16 +29,27 @@ import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+import javax.naming.spi.InitialContextFactory;
 import javax.security.auth.Subject;
 import javax.security.auth.callback.*;
 import javax.security.auth.login.LoginException;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.security.Principal;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Hashtable;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -57,6 +68,7 @@ public class LdapLoginModuleTest extends AbstractLdapTestUnit {
     @After
     public void tearDown() {
         LDAPCache.clear();
+        LDAPContextPool.clear();
     }
 
     @Test
@@ -192,6 +204,95 @@ public class LdapLoginModuleTest extends AbstractLdapTestUnit {
         assertFalse(module.login());
     }
 
+    @Test
+    public void testPooledContextsAndNegativeCache() throws Exception {
+        Properties options = ldapLoginModuleOptions();
+        options.put(LDAPContextPool.POOL_SIZE, "2");
+        options.put(LDAPCache.CACHE_NEGATIVE_TIME_TO_LIVE, "60");
+        options.put(LDAPLoginModule.INITIAL_CONTEXT_FACTORY, CountingContextFactory.class.getName());
+        CountingContextFactory.reset();
+        for (int i = 0; i < 2; i++) {
+            LDAPLoginModule module = new LDAPLoginModule();
+            Subject subject = new Subject();
+            module.initialize(subject, getCallbackHandler("admin", "admin123"), null, options);
+            assertTrue(module.login());
+            assertTrue(module.commit());
+            assertTrue(subject.getPrincipals().contains(new UserPrincipal("admin")));
+            assertTrue(subject.getPrincipals().contains(new RolePrincipal("admin")));
+
+            int searches = CountingContextFactory.SEARCHES.get();
+            module = new LDAPLoginModule();
+            module.initialize(new Subject(), getCallbackHandler("imnothere", "admin123"), null, options);
+            assertFalse(module.login());
+            if (i == 0) {
+                assertEquals("The unknown user is searched once", searches + 1, CountingContextFactory.SEARCHES.get());
+            } else {
+                assertEquals("The unknown user is served by the negative cache", searches, CountingContextFactory.SEARCHES.get());
+            }
+        }
+        // the user and role searches of both rounds share a single pooled connection context,
+        // only the user binds need their own context
+        assertEquals(1, CountingContextFactory.CONNECTIONS.get());
+        assertEquals(2, CountingContextFactory.BINDS.get());
+    }
+
+    /**
+     * Creates the LDAP contexts with the JDK factory, counting the connection contexts, the user binds
+     * and the searches.
+     */
+    public static class CountingContextFactory implements InitialContextFactory {
+
+        static final AtomicInteger CONNECTIONS = new AtomicInteger();
+        static final AtomicInteger BINDS = new AtomicInteger();
+        static final AtomicInteger SEARCHES = new AtomicInteger();
+
+        static void reset() {
+            CONNECTIONS.set(0);
+            BINDS.set(0);
+            SEARCHES.set(0);
+        }
+
+        @Override
+        public Context getInitialContext(Hashtable<?, ?> environment) throws NamingException {
+            Hashtable<Object, Object> env = new Hashtable<Object, Object>(environment);
+            env.put(Context.INITIAL_CONTEXT_FACTORY, LDAPLoginModule.DEFAULT_INITIAL_CONTEXT_FACTORY);
+            final DirContext context = new InitialDirContext(env);
+            if ("uid=admin,ou=system".equals(env.get(Context.SECURITY_PRINCIPAL))) {
+                CONNECTIONS.incrementAndGet();
+            } else {
+                BINDS.incrementAndGet();
+            }
+            return (Context) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { DirContext.class },
+                    new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            if ("search".equals(method.getName())) {
+                                SEARCHES.incrementAndGet();
+                            }
+                            try {
+                                return method.invoke(context, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                        }
+                    });
+        }
+    }
+
+    private CallbackHandler getCallbackHandler(final String name, final String password) {
+        return new CallbackHandler() {
+            public void handle(Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+                for (Callback cb : callbacks) {
+                    if (cb instanceof NameCallback) {
+                        ((NameCallback) cb).setName(name);
+                    } else if (cb instanceof PasswordCallback) {
+                        ((PasswordCallback) cb).setPassword(password.toCharArray());
+                    }
+                }
+            }
+        };
+    }
+
     @Test
     public void testEmptyPassword() throws Exception {
         Properties options = ldapLoginModuleOptions();
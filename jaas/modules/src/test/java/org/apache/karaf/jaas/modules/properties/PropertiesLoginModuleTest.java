@@ -131,6 +131,76 @@ public class PropertiesLoginModuleTest {
         }
     }
 
+    @Test
+    public void testLoginAfterUpdate() throws Exception {
+        File f = File.createTempFile(getClass().getName(), ".tmp");
+        try {
+            PropertiesBackingEngine pbe = new PropertiesBackingEngine(new Properties(f), null, f);
+            pbe.addUser("abc", "xyz");
+
+            Map<String, String> options = new HashMap<String, String>();
+            options.put(PropertiesLoginModule.USER_FILE, f.getAbsolutePath());
+
+            PropertiesLoginModule module = new PropertiesLoginModule();
+            module.initialize(new Subject(), new NamePasswordHandler("abc", "xyz"), null, options);
+            Assert.assertTrue(module.login());
+
+            // the cached users must be updated when the backing engine changes the password
+            pbe.addUser("abc", "uvw");
+
+            module = new PropertiesLoginModule();
+            module.initialize(new Subject(), new NamePasswordHandler("abc", "xyz"), null, options);
+            try {
+                module.login();
+                Assert.fail("The login should have failed as the password has been changed");
+            } catch (FailedLoginException fle) {
+                // good
+            }
+
+            module = new PropertiesLoginModule();
+            module.initialize(new Subject(), new NamePasswordHandler("abc", "uvw"), null, options);
+            Assert.assertTrue(module.login());
+        } finally {
+            if (!f.delete()) {
+                Assert.fail("Could not delete temporary file: " + f);
+            }
+        }
+    }
+
+    @Test
+    public void testStableFileIsCached() throws Exception {
+        File f = File.createTempFile(getClass().getName(), ".tmp");
+        File other = File.createTempFile(getClass().getName(), ".tmp");
+        try {
+            Properties p = new Properties(f);
+            p.put("abc", "xyz");
+            p.save();
+            // move the file out of the modification time granularity window
+            Assert.assertTrue(f.setLastModified(System.currentTimeMillis() - 10000));
+
+            Map<String, String> users = UsersCache.getUsers(f);
+            Assert.assertEquals("xyz", users.get("abc"));
+            Assert.assertSame("An unchanged file must not be parsed again", users, UsersCache.getUsers(f));
+
+            // the engine saves to another file, so that only the update of the cache
+            // can make the new password visible for the unchanged users file
+            PropertiesBackingEngine pbe = new PropertiesBackingEngine(new Properties(other), null, f);
+            pbe.addUser("abc", "uvw");
+            Assert.assertNotSame(users, UsersCache.getUsers(f));
+
+            Map<String, String> options = new HashMap<String, String>();
+            options.put(PropertiesLoginModule.USER_FILE, f.getAbsolutePath());
+            PropertiesLoginModule module = new PropertiesLoginModule();
+            module.initialize(new Subject(), new NamePasswordHandler("abc", "uvw"), null, options);
+            Assert.assertTrue(module.login());
+        } finally {
+            UsersCache.invalidate(f);
+            if (!f.delete() || !other.delete()) {
+                Assert.fail("Could not delete temporary files: " + f + ", " + other);
+            }
+        }
+    }
+
     @Test
     public void testLoginWithGroups() throws Exception {
         File f = File.createTempFile(getClass().getName(), ".tmp");
@@ -18,6 +18,9 @@ package org.apache.karaf.log.core;
 
 import java.util.Map;
 
+import javax.management.MBeanException;
+import javax.management.openmbean.TabularData;
+
 /**
  * Log MBean.
  */
@@ -29,4 +32,19 @@ public interface LogMBean {
     void setLevel(String level);
     void setLevel(String logger, String level);
 
+    /**
+     * Query the events of the in-memory log buffer, oldest first.
+     *
+     * @param minLevel the minimum level of the events, or null for all levels.
+     * @param loggerPrefix the prefix of the logger names, or null for all loggers.
+     * @param fromTime the minimum timestamp of the events, or 0 for no minimum.
+     * @param toTime the maximum timestamp of the events, or 0 for no maximum.
+     * @param thread the name of the thread which logged the events, or null for all threads.
+     * @param mdcKey a MDC key the events must have, or null.
+     * @param fromSequence the sequence to start from, use the last returned sequence plus one to get the next page.
+     * @param maxResults the maximum number of events returned.
+     * @return the events with their sequence, timestamp, level, logger, thread and message.
+     */
+    TabularData query(String minLevel, String loggerPrefix, long fromTime, long toTime, String thread, String mdcKey, long fromSequence, int maxResults) throws MBeanException;
+
 }
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.log.core;
+
+/**
+ * Criteria used to select events from the in-memory log buffer.
+ * <p/>
+ * All criteria are optional. Events are returned from the oldest to the newest, starting
+ * at the given sequence number, so that a result can be read page by page by passing the
+ * {@link LogQueryResult#getNextSequence() next sequence} of a page to the query of the next one.
+ */
+public class LogQuery {
+
+    private Level minLevel;
+    private String loggerPrefix;
+    private long fromTime = Long.MIN_VALUE;
+    private long toTime = Long.MAX_VALUE;
+    private String thread;
+    private String mdcKey;
+    private String mdcValue;
+    private boolean throwableOnly;
+    private long fromSequence;
+    private int maxResults = Integer.MAX_VALUE;
+
+    public Level getMinLevel() {
+        return minLevel;
+    }
+
+    /**
+     * Only select events logged at the given level or above.
+     */
+    public LogQuery minLevel(Level minLevel) {
+        this.minLevel = minLevel;
+        return this;
+    }
+
+    public String getLoggerPrefix() {
+        return loggerPrefix;
+    }
+
+    /**
+     * Only select events whose logger name starts with the given prefix.
+     */
+    public LogQuery loggerPrefix(String loggerPrefix) {
+        this.loggerPrefix = loggerPrefix;
+        return this;
+    }
+
+    public long getFromTime() {
+        return fromTime;
+    }
+
+    public long getToTime() {
+        return toTime;
+    }
+
+    /**
+     * Only select events with a timestamp between the given bounds, both inclusive.
+     */
+    public LogQuery timeRange(long fromTime, long toTime) {
+        this.fromTime = fromTime;
+        this.toTime = toTime;
+        return this;
+    }
+
+    public String getThread() {
+        return thread;
+    }
+
+    /**
+     * Only select events logged by the given thread.
+     */
+    public LogQuery thread(String thread) {
+        this.thread = thread;
+        return this;
+    }
+
+    public String getMdcKey() {
+        return mdcKey;
+    }
+
+    public String getMdcValue() {
+        return mdcValue;
+    }
+
+    /**
+     * Only select events having the given MDC key, with any value if the given value is <code>null</code>.
+     */
+    public LogQuery mdc(String mdcKey, String mdcValue) {
+        this.mdcKey = mdcKey;
+        this.mdcValue = mdcValue;
+        return this;
+    }
+
+    public boolean isThrowableOnly() {
+        return throwableOnly;
+    }
+
+    /**
+     * Only select events carrying an exception.
+     */
+    public LogQuery throwableOnly(boolean throwableOnly) {
+        this.throwableOnly = throwableOnly;
+        return this;
+    }
+
+    public long getFromSequence() {
+        return fromSequence;
+    }
+
+    /**
+     * Start at the given sequence number, older events are ignored.
+     */
+    public LogQuery fromSequence(long fromSequence) {
+        this.fromSequence = fromSequence;
+        return this;
+    }
+
+    public int getMaxResults() {
+        return maxResults;
+    }
+
+    /**
+     * Return at most the given number of events.
+     */
+    public LogQuery maxResults(int maxResults) {
+        this.maxResults = maxResults;
+        return this;
+    }
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.log.core;
+
+import org.ops4j.pax.logging.spi.PaxLoggingEvent;
+
+/**
+ * Events selected by a {@link LogQuery}.
+ * <p/>
+ * The events are read lazily from the log buffer while iterating, the result must
+ * only be iterated once.
+ */
+public interface LogQueryResult extends Iterable<PaxLoggingEvent> {
+
+    /**
+     * Returns the sequence number of the last event returned by the iterator, or <code>-1</code>
+     * if no event has been returned yet.
+     */
+    long getLastSequence();
+
+    /**
+     * Returns the sequence number to use to query the events following the ones already returned.
+     */
+    long getNextSequence();
+
+}
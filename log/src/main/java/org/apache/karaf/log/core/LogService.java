@@ -33,6 +33,12 @@ public interface LogService {
     Iterable<PaxLoggingEvent> getEvents();
     Iterable<PaxLoggingEvent> getEvents(int maxNum);
     PaxLoggingEvent getLastException(String logger);
+
+    /**
+     * Returns the events of the in-memory log buffer matching the given query, oldest first.
+     * The events are read lazily while iterating over the result.
+     */
+    LogQueryResult query(LogQuery query);
     void addAppender(PaxAppender appender);
     void removeAppender(PaxAppender appender);
 }
@@ -16,11 +16,24 @@
  */
 package org.apache.karaf.log.core.internal;
 
+import javax.management.MBeanException;
 import javax.management.NotCompliantMBeanException;
 import javax.management.StandardMBean;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
 
+import org.apache.karaf.log.core.Level;
 import org.apache.karaf.log.core.LogMBean;
+import org.apache.karaf.log.core.LogQuery;
+import org.apache.karaf.log.core.LogQueryResult;
 import org.apache.karaf.log.core.LogService;
+import org.ops4j.pax.logging.spi.PaxLoggingEvent;
 
 import java.util.Map;
 
@@ -56,4 +69,40 @@ public class LogMBeanImpl extends StandardMBean implements LogMBean {
         this.logService.setLevel(logger, level);
     }
 
+    @Override
+    public TabularData query(String minLevel, String loggerPrefix, long fromTime, long toTime, String thread, String mdcKey, long fromSequence, int maxResults) throws MBeanException {
+        try {
+            CompositeType eventType = new CompositeType("Event", "Log event",
+                    new String[]{"Sequence", "Timestamp", "Level", "Logger", "Thread", "Message"},
+                    new String[]{"Sequence of the event", "Timestamp of the event", "Level of the event", "Logger of the event", "Thread which logged the event", "Message of the event"},
+                    new OpenType[]{SimpleType.LONG, SimpleType.LONG, SimpleType.STRING, SimpleType.STRING, SimpleType.STRING, SimpleType.STRING});
+            TabularType tableType = new TabularType("Events", "Table of log events", eventType, new String[]{"Sequence"});
+            TabularData table = new TabularDataSupport(tableType);
+
+            LogQuery query = new LogQuery()
+                    .loggerPrefix(loggerPrefix)
+                    .thread(thread)
+                    .mdc(mdcKey, null)
+                    .fromSequence(fromSequence)
+                    .maxResults(maxResults);
+            if (minLevel != null) {
+                query.minLevel(Level.valueOf(minLevel.toUpperCase()));
+            }
+            query.timeRange(fromTime > 0 ? fromTime : Long.MIN_VALUE, toTime > 0 ? toTime : Long.MAX_VALUE);
+
+            LogQueryResult result = logService.query(query);
+            for (PaxLoggingEvent event : result) {
+                CompositeData data = new CompositeDataSupport(eventType,
+                        new String[]{"Sequence", "Timestamp", "Level", "Logger", "Thread", "Message"},
+                        new Object[]{result.getLastSequence(), event.getTimeStamp(),
+                                event.getLevel() != null ? event.getLevel().toString() : null,
+                                event.getLoggerName(), event.getThreadName(), event.getRenderedMessage()});
+                table.put(data);
+            }
+            return table;
+        } catch (Exception e) {
+            throw new MBeanException(null, e.getMessage());
+        }
+    }
+
 }
@@ -23,6 +23,8 @@ import java.util.Map;
 import java.util.TreeMap;
 
 import org.apache.karaf.log.core.Level;
+import org.apache.karaf.log.core.LogQuery;
+import org.apache.karaf.log.core.LogQueryResult;
 import org.apache.karaf.log.core.LogService;
 import org.ops4j.pax.logging.spi.PaxAppender;
 import org.ops4j.pax.logging.spi.PaxLoggingEvent;
@@ -175,10 +177,6 @@ public class LogServiceImpl implements LogService {
         }
     }
 
-    private boolean checkIfFromRequestedLog(PaxLoggingEvent event, String logger) {
-        return (event.getLoggerName().lastIndexOf(logger) >= 0) ? true : false;
-    }
-
     private String getLevelFromProperty(String prop) {
         if (prop == null) {
             return null;
@@ -219,24 +217,13 @@ public class LogServiceImpl implements LogService {
     
     @Override
     public PaxLoggingEvent getLastException(String logger) {
-        PaxLoggingEvent throwableEvent = null;
-        Iterable<PaxLoggingEvent> le = getEvents();
-        for (PaxLoggingEvent event : le) {
-            // if this is an exception, and the log is the same as the requested log,
-            // then save this exception and continue iterating from oldest to newest
-            if ((event.getThrowableStrRep() != null)
-                    &&(logger != null)
-                    &&(checkIfFromRequestedLog(event, logger))) {
-                throwableEvent = event;
-              // Do not break, as we iterate from the oldest to the newest event
-            } else if ((event.getThrowableStrRep() != null)&&(logger == null)) {
-                // now check if there has been no log passed in, and if this is an exception
-                // then save this exception and continue iterating from oldest to newest
-                throwableEvent = event;             
-            }
-        }
+        // the events carrying an exception are indexed, look for the newest matching one
+        return events.getLastException(logger);
+    }
 
-        return throwableEvent;
+    @Override
+    public LogQueryResult query(LogQuery query) {
+        return events.query(query);
     }
 
     @Override
@@ -20,70 +20,93 @@ package org.apache.karaf.log.core.internal;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import org.apache.karaf.log.core.Level;
+import org.apache.karaf.log.core.LogQuery;
+import org.apache.karaf.log.core.LogQueryResult;
 import org.ops4j.pax.logging.spi.PaxAppender;
 import org.ops4j.pax.logging.spi.PaxLoggingEvent;
 
 /**
- * A list that only keep the last N elements added
+ * A list that only keep the last N elements added.
+ * <p/>
+ * The elements are stored in a lock-free ring buffer: each added element gets a unique sequence number
+ * and is stored in the slot computed from it, so concurrent writers never wait for each other or for
+ * readers. Readers take a snapshot of the sequence range they are interested in and only keep the slots
+ * still holding the expected sequence, an element being overwritten while it is read is simply skipped.
+ * <p/>
+ * Secondary indexes of the sequences per level and of the events carrying an exception are maintained
+ * on append, and the timestamps of the events, which are appended nearly in order, are used to narrow
+ * the sequence range of time based queries.
  */
 public class LruList implements PaxAppender {
 
-    private PaxLoggingEvent[] elements;
-    private transient int start = 0;
-    private transient int end = 0;
-    private transient boolean full = false;
+    /**
+     * Maximum difference, in milliseconds, between the timestamps of events appended out of order.
+     * The timestamps are taken by each logging thread before the event is appended, so concurrent
+     * loggers may append slightly older events after more recent ones.
+     */
+    private static final long TIMESTAMP_TOLERANCE = 1000;
+
+    private final AtomicReferenceArray<Slot> elements;
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile long cleared = 0;
     private final int maxElements;
     private final List<PaxAppender> appenders;
+    private final SequenceIndex[] levelIndexes;
+    private final SequenceIndex throwableIndex;
 
     public LruList(int size) {
         if (size <= 0) {
             throw new IllegalArgumentException("The size must be greater than 0");
         }
-        elements = new PaxLoggingEvent[size];
-        maxElements = elements.length;
-        appenders = new ArrayList<PaxAppender>();
+        elements = new AtomicReferenceArray<Slot>(size);
+        maxElements = size;
+        appenders = new CopyOnWriteArrayList<PaxAppender>();
+        levelIndexes = new SequenceIndex[Level.ERROR.ordinal() + 1];
+        for (int i = 0; i < levelIndexes.length; i++) {
+            levelIndexes[i] = new SequenceIndex(size);
+        }
+        throwableIndex = new SequenceIndex(size);
     }
 
-    public synchronized int size() {
-        int size = 0;
-        if (end < start) {
-            size = maxElements - start + end;
-        } else if (end == start) {
-            size = (full ? maxElements : 0);
-        } else {
-            size = end - start;
-        }
-        return size;
+    public int size() {
+        long end = sequence.get();
+        return (int) Math.min(end - Math.max(cleared, end - maxElements), maxElements);
     }
 
-    public synchronized void clear() {
-        start = 0;
-        end = 0;
-        elements = new PaxLoggingEvent[maxElements];
+    public void clear() {
+        cleared = sequence.get();
     }
 
-    public synchronized void add(PaxLoggingEvent element) {
+    public void add(PaxLoggingEvent element) {
         if (null == element) {
              throw new NullPointerException("Attempted to add null object to buffer");
         }
-        if (size() == maxElements) {
-            Object e = elements[start];
-            if (null != e) {
-                elements[start++] = null;
-                if (start >= maxElements) {
-                    start = 0;
-                }
-                full = false;
+        long seq = sequence.getAndIncrement();
+        Slot slot = new Slot(seq, element, getLevel(element));
+        int index = (int) (seq % maxElements);
+        for (;;) {
+            Slot current = elements.get(index);
+            // a slower writer must not overwrite a more recent element
+            if (current != null && current.sequence > seq) {
+                break;
+            }
+            if (elements.compareAndSet(index, current, slot)) {
+                break;
             }
         }
-        elements[end++] = element;
-        if (end >= maxElements) {
-            end = 0;
-        }
-        if (end == start) {
-            full = true;
+        levelIndexes[slot.level].add(seq);
+        if (element.getThrowableStrRep() != null) {
+            throwableIndex.add(seq);
         }
         for (PaxAppender appender : appenders) {
             try {
@@ -94,25 +117,161 @@ public class LruList implements PaxAppender {
         }
     }
 
-    public synchronized Iterable<PaxLoggingEvent> getElements() {
-        return getElements(size());
+    /**
+     * Returns the sequence number that will be given to the next added element.
+     */
+    public long getSequence() {
+        return sequence.get();
+    }
+
+    public Iterable<PaxLoggingEvent> getElements() {
+        return getElements(maxElements);
+    }
+
+    public Iterable<PaxLoggingEvent> getElements(int nb) {
+        long end = sequence.get();
+        nb = Math.min(Math.max(0, nb), maxElements);
+        return getElements(end - nb, end);
+    }
+
+    private List<PaxLoggingEvent> getElements(long from, long to) {
+        from = Math.max(from, Math.max(cleared, to - maxElements));
+        List<PaxLoggingEvent> result = new ArrayList<PaxLoggingEvent>((int) Math.max(0, to - from));
+        for (long seq = from; seq < to; seq++) {
+            Slot slot = elements.get((int) (seq % maxElements));
+            if (slot != null && slot.sequence == seq) {
+                result.add(slot.element);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the most recent event carrying an exception and accepted by the given logger filter.
+     */
+    public PaxLoggingEvent getLastException(String logger) {
+        long end = sequence.get();
+        long[] sequences = throwableIndex.get(Math.max(cleared, end - maxElements), end);
+        for (int i = sequences.length - 1; i >= 0; i--) {
+            Slot slot = getSlot(sequences[i]);
+            if (slot != null && (logger == null || slot.element.getLoggerName().lastIndexOf(logger) >= 0)) {
+                return slot.element;
+            }
+        }
+        return null;
+    }
+
+    public LogQueryResult query(LogQuery query) {
+        long end = sequence.get();
+        long start = Math.max(query.getFromSequence(), Math.max(cleared, end - maxElements));
+        // the range is widened by the timestamp tolerance, the events are then filtered individually
+        if (query.getFromTime() > Long.MIN_VALUE + TIMESTAMP_TOLERANCE) {
+            start = firstAfter(start, end, query.getFromTime() - 1 - TIMESTAMP_TOLERANCE, false);
+        }
+        if (query.getToTime() < Long.MAX_VALUE - TIMESTAMP_TOLERANCE) {
+            end = firstAfter(start, end, query.getToTime() + TIMESTAMP_TOLERANCE, true);
+        }
+        long[] candidates = null;
+        if (query.isThrowableOnly()) {
+            candidates = throwableIndex.get(start, end);
+        } else if (query.getMinLevel() != null && query.getMinLevel().ordinal() > Level.TRACE.ordinal()
+                && query.getMinLevel() != Level.DEFAULT) {
+            List<long[]> parts = new ArrayList<long[]>();
+            int nb = 0;
+            for (int i = query.getMinLevel().ordinal(); i < levelIndexes.length; i++) {
+                long[] part = levelIndexes[i].get(start, end);
+                parts.add(part);
+                nb += part.length;
+            }
+            candidates = new long[nb];
+            nb = 0;
+            for (long[] part : parts) {
+                System.arraycopy(part, 0, candidates, nb, part.length);
+                nb += part.length;
+            }
+            Arrays.sort(candidates);
+        }
+        return new QueryResult(query, start, end, candidates);
+    }
+
+    /**
+     * Returns the first sequence in the given range of an event logged after the given time.
+     * The events are appended nearly in order, so their timestamps are considered non decreasing,
+     * the callers widening the searched time by {@link #TIMESTAMP_TOLERANCE}.
+     * If the search reaches a slot being written or overwritten, the range narrowed so far is
+     * kept, and its lower or upper end is returned depending on the bound being computed.
+     */
+    private long firstAfter(long lo, long hi, long time, boolean upperBound) {
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            Slot slot = getSlot(mid);
+            if (slot == null) {
+                // the range can not be narrowed further, events will be filtered individually
+                return upperBound ? hi : lo;
+            }
+            if (slot.element.getTimeStamp() <= time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
     }
 
-    public synchronized Iterable<PaxLoggingEvent> getElements(int nb) {
-        int s = size();
-        nb = Math.min(Math.max(0, nb), s);
-        PaxLoggingEvent[] e = new PaxLoggingEvent[nb];
-        for (int i = 0; i < nb; i++) {
-            e[i] = elements[(i + s - nb + start) % maxElements];
+    private Slot getSlot(long seq) {
+        Slot slot = elements.get((int) (seq % maxElements));
+        return slot != null && slot.sequence == seq && seq >= cleared ? slot : null;
+    }
+
+    private static int getLevel(PaxLoggingEvent event) {
+        String level = event.getLevel() != null ? event.getLevel().toString() : null;
+        if (level != null) {
+            level = level.toUpperCase();
+            if ("FATAL".equals(level)) {
+                return Level.ERROR.ordinal();
+            }
+            for (Level l : Level.values()) {
+                if (l != Level.DEFAULT && l.name().equals(level)) {
+                    return l.ordinal();
+                }
+            }
         }
-        return Arrays.asList(e);
+        return Level.INFO.ordinal();
     }
 
-    public synchronized void addAppender(PaxAppender appender) {
+    private static boolean matches(Slot slot, LogQuery query) {
+        PaxLoggingEvent event = slot.element;
+        if (query.getMinLevel() != null && query.getMinLevel() != Level.DEFAULT && slot.level < query.getMinLevel().ordinal()) {
+            return false;
+        }
+        if (query.isThrowableOnly() && event.getThrowableStrRep() == null) {
+            return false;
+        }
+        if (event.getTimeStamp() < query.getFromTime() || event.getTimeStamp() > query.getToTime()) {
+            return false;
+        }
+        if (query.getLoggerPrefix() != null
+                && (event.getLoggerName() == null || !event.getLoggerName().startsWith(query.getLoggerPrefix()))) {
+            return false;
+        }
+        if (query.getThread() != null && !query.getThread().equals(event.getThreadName())) {
+            return false;
+        }
+        if (query.getMdcKey() != null) {
+            Map<?, ?> mdc = event.getProperties();
+            Object value = mdc != null ? mdc.get(query.getMdcKey()) : null;
+            if (value == null || (query.getMdcValue() != null && !query.getMdcValue().equals(value.toString()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void addAppender(PaxAppender appender) {
         this.appenders.add(appender);
     }
 
-    public synchronized void removeAppender(PaxAppender appender) {
+    public void removeAppender(PaxAppender appender) {
         this.appenders.remove(appender);
     }
     
@@ -121,4 +280,138 @@ public class LruList implements PaxAppender {
         add(event);
     }
 
+    private static final class Slot {
+        final long sequence;
+        final PaxLoggingEvent element;
+        final int level;
+
+        Slot(long sequence, PaxLoggingEvent element, int level) {
+            this.sequence = sequence;
+            this.element = element;
+            this.level = level;
+        }
+    }
+
+    /**
+     * Ring of the last sequences added to an index, read the same way as the elements.
+     */
+    private static final class SequenceIndex {
+        private final AtomicLongArray sequences;
+        private final AtomicLong count = new AtomicLong();
+
+        SequenceIndex(int size) {
+            sequences = new AtomicLongArray(size);
+        }
+
+        void add(long seq) {
+            long n = count.getAndIncrement();
+            sequences.set((int) (n % sequences.length()), seq);
+        }
+
+        /**
+         * Returns the indexed sequences in the given range, in ascending order.
+         */
+        long[] get(long from, long to) {
+            int size = sequences.length();
+            long n = count.get();
+            long[] result = new long[(int) Math.min(n, size)];
+            int nb = 0;
+            for (long i = Math.max(0, n - size); i < n; i++) {
+                long seq = sequences.get((int) (i % size));
+                if (seq >= from && seq < to) {
+                    result[nb++] = seq;
+                }
+            }
+            result = Arrays.copyOf(result, nb);
+            // concurrent additions may leave the ring slightly out of order
+            Arrays.sort(result);
+            return result;
+        }
+    }
+
+    /**
+     * Lazy iteration over the candidate sequences of a query.
+     */
+    private final class QueryResult implements LogQueryResult, Iterator<PaxLoggingEvent> {
+        private final LogQuery query;
+        private final long end;
+        private final long[] candidates;
+        private long position;
+        private int returned;
+        private long lastSequence = -1;
+        private long nextSequence;
+        private Slot next;
+        private boolean iterated;
+
+        QueryResult(LogQuery query, long start, long end, long[] candidates) {
+            this.query = query;
+            this.end = end;
+            this.candidates = candidates;
+            this.position = candidates != null ? 0 : start;
+            this.nextSequence = start;
+        }
+
+        @Override
+        public Iterator<PaxLoggingEvent> iterator() {
+            if (iterated) {
+                throw new IllegalStateException("The query result can only be iterated once");
+            }
+            iterated = true;
+            return this;
+        }
+
+        @Override
+        public long getLastSequence() {
+            return lastSequence;
+        }
+
+        @Override
+        public long getNextSequence() {
+            return nextSequence;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && returned < query.getMaxResults()) {
+                long seq;
+                if (candidates != null) {
+                    if (position >= candidates.length) {
+                        nextSequence = end;
+                        return false;
+                    }
+                    seq = candidates[(int) position++];
+                } else {
+                    if (position >= end) {
+                        nextSequence = end;
+                        return false;
+                    }
+                    seq = position++;
+                }
+                Slot slot = getSlot(seq);
+                if (slot != null && matches(slot, query)) {
+                    next = slot;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public PaxLoggingEvent next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Slot slot = next;
+            next = null;
+            returned++;
+            lastSequence = slot.sequence;
+            nextSequence = slot.sequence + 1;
+            return slot.element;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
 }
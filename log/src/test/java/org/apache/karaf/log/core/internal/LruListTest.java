@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.log.core.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import org.apache.karaf.log.core.LogQuery;
+import org.apache.karaf.log.core.LogQueryResult;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.ops4j.pax.logging.spi.PaxLevel;
+import org.ops4j.pax.logging.spi.PaxLoggingEvent;
+
+/**
+ * Test cases for {@link LruList}
+ */
+public class LruListTest extends TestCase {
+
+    public void testKeepsLastElements() {
+        LruList list = new LruList(3);
+        List<PaxLoggingEvent> events = createEvents(5);
+        for (PaxLoggingEvent event : events) {
+            list.add(event);
+        }
+        assertEquals(3, list.size());
+        assertEquals(events.subList(2, 5), toList(list.getElements()));
+        assertEquals(events.subList(3, 5), toList(list.getElements(2)));
+        assertEquals(events.subList(2, 5), toList(list.getElements(10)));
+    }
+
+    public void testClearAndSequence() {
+        LruList list = new LruList(10);
+        List<PaxLoggingEvent> events = createEvents(4);
+        list.add(events.get(0));
+        list.add(events.get(1));
+        list.clear();
+        assertEquals(0, list.size());
+        assertTrue(toList(list.getElements()).isEmpty());
+
+        long seq = list.getSequence();
+        list.add(events.get(2));
+        list.add(events.get(3));
+        assertEquals(2, list.size());
+        assertEquals(events.subList(2, 4), toList(list.getElements()));
+        assertEquals(events.subList(3, 4), toList(list.query(new LogQuery().fromSequence(seq + 1))));
+    }
+
+    public void testConcurrentWriters() throws Exception {
+        final LruList list = new LruList(100);
+        final PaxLoggingEvent event = createEvents(1).get(0);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        list.add(event);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(4000, list.getSequence());
+        assertEquals(100, list.size());
+        assertEquals(100, toList(list.getElements()).size());
+    }
+
+    public void testQuery() {
+        LruList list = new LruList(10);
+        List<PaxLoggingEvent> events = new ArrayList<PaxLoggingEvent>();
+        for (int i = 0; i < 15; i++) {
+            PaxLoggingEvent event = EasyMock.createNiceMock(PaxLoggingEvent.class);
+            EasyMock.expect(event.getLoggerName()).andStubReturn(i % 2 == 0 ? "org.apache.karaf.a" : "org.apache.karaf.b");
+            EasyMock.expect(event.getTimeStamp()).andStubReturn(1000L + i);
+            EasyMock.expect(event.getThreadName()).andStubReturn("thread-" + (i % 3));
+            EasyMock.expect(event.getThrowableStrRep()).andStubReturn(i % 4 == 0 ? new String[] { "exception" } : null);
+            EasyMock.replay(event);
+            events.add(event);
+            list.add(event);
+        }
+
+        assertEquals(Arrays.asList(events.get(6), events.get(8), events.get(10), events.get(12), events.get(14)),
+                toList(list.query(new LogQuery().loggerPrefix("org.apache.karaf.a"))));
+        assertEquals(events.subList(8, 12), toList(list.query(new LogQuery().timeRange(1008, 1011))));
+        assertEquals(Arrays.asList(events.get(7), events.get(10), events.get(13)),
+                toList(list.query(new LogQuery().thread("thread-1"))));
+        assertEquals(Arrays.asList(events.get(8), events.get(12)),
+                toList(list.query(new LogQuery().throwableOnly(true))));
+        assertSame(events.get(12), list.getLastException(null));
+        assertNull(list.getLastException("org.apache.karaf.b"));
+
+        // paging
+        LogQueryResult page = list.query(new LogQuery().maxResults(3));
+        assertEquals(events.subList(5, 8), toList(page));
+        page = list.query(new LogQuery().maxResults(3).fromSequence(page.getNextSequence()));
+        assertEquals(events.subList(8, 11), toList(page));
+        assertEquals(10, page.getLastSequence());
+    }
+
+    public void testQueryTimeRangeWithUnpublishedSlot() throws Exception {
+        final LruList list = new LruList(10);
+        List<PaxLoggingEvent> events = new ArrayList<PaxLoggingEvent>();
+        for (int i = 0; i < 5; i++) {
+            events.add(createEvent(1000L + i));
+            list.add(events.get(i));
+        }
+        // a writer blocked after taking its sequence leaves its slot unpublished
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final PaxLoggingEvent blocked = EasyMock.createNiceMock(PaxLoggingEvent.class);
+        EasyMock.expect(blocked.getTimeStamp()).andStubReturn(1005L);
+        EasyMock.expect(blocked.getLevel()).andStubAnswer(new IAnswer<PaxLevel>() {
+            public PaxLevel answer() throws Throwable {
+                writing.countDown();
+                release.await();
+                return null;
+            }
+        });
+        EasyMock.replay(blocked);
+        Thread writer = new Thread() {
+            public void run() {
+                list.add(blocked);
+            }
+        };
+        writer.start();
+        try {
+            writing.await();
+            for (int i = 6; i < 10; i++) {
+                PaxLoggingEvent event = createEvent(1000L + i);
+                events.add(event);
+                list.add(event);
+            }
+            assertEquals(Arrays.asList(events.get(2), events.get(3), events.get(4), events.get(5), events.get(6), events.get(7)),
+                    toList(list.query(new LogQuery().timeRange(1002, 1008))));
+        } finally {
+            release.countDown();
+            writer.join();
+        }
+    }
+
+    public void testQueryTimeRangeWithOutOfOrderEvents() {
+        LruList list = new LruList(10);
+        // concurrent loggers append events slightly out of order at both edges of the range
+        long[] timestamps = { 1000, 1003, 1002, 1004, 1005, 1007, 1006, 1008 };
+        List<PaxLoggingEvent> events = new ArrayList<PaxLoggingEvent>();
+        for (long timestamp : timestamps) {
+            PaxLoggingEvent event = createEvent(timestamp);
+            events.add(event);
+            list.add(event);
+        }
+        assertEquals(Arrays.asList(events.get(1), events.get(3), events.get(4), events.get(6)),
+                toList(list.query(new LogQuery().timeRange(1003, 1006))));
+    }
+
+    private static PaxLoggingEvent createEvent(long timestamp) {
+        PaxLoggingEvent event = EasyMock.createNiceMock(PaxLoggingEvent.class);
+        EasyMock.expect(event.getTimeStamp()).andStubReturn(timestamp);
+        EasyMock.replay(event);
+        return event;
+    }
+
+    private static List<PaxLoggingEvent> createEvents(int nb) {
+        List<PaxLoggingEvent> events = new ArrayList<PaxLoggingEvent>();
+        for (int i = 0; i < nb; i++) {
+            PaxLoggingEvent event = EasyMock.createNiceMock(PaxLoggingEvent.class);
+            EasyMock.replay(event);
+            events.add(event);
+        }
+        return events;
+    }
+
+    private static List<PaxLoggingEvent> toList(Iterable<PaxLoggingEvent> elements) {
+        List<PaxLoggingEvent> list = new ArrayList<PaxLoggingEvent>();
+        for (PaxLoggingEvent element : elements) {
+            list.add(element);
+        }
+        return list;
+    }
+
+}
@@ -0,0 +1,309 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.management;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.regex.Pattern;
+
+import javax.management.ObjectName;
+import javax.security.auth.Subject;
+
+import org.apache.karaf.service.guard.tools.ACLConfigurationParser;
+
+/**
+ * Precompiled, immutable view of the <code>jmx.acl*</code> configurations.
+ * <p/>
+ * The configurations are normalized once when the index is built, the PIDs applying to a given
+ * ObjectName are resolved once per ObjectName, and the required roles and per-subject decisions
+ * are kept in bounded LRU caches. Changes to the configurations produce a new index (see
+ * {@link #withConfiguration(String, Dictionary)} and {@link #withoutConfiguration(String)}), so
+ * the caches never need to be invalidated individually.
+ */
+class JmxAclIndex {
+
+    static final String JMX_ACL_PID_PREFIX = "jmx.acl";
+
+    static final String JMX_ACL_WHITELIST = "jmx.acl.whitelist";
+
+    private static final String JMX_OBJECTNAME_PROPERTY_WILDCARD = "_";
+
+    private static final int MAX_OBJECT_NAMES = 1024;
+
+    private static final int MAX_REQUIRED_ROLES = 4096;
+
+    private static final int MAX_DECISIONS_PER_SUBJECT = 1024;
+
+    /**
+     * ACL PIDs in the order they have been returned by the ConfigurationAdmin, as PID matching
+     * returns the first matching configuration.
+     */
+    private final List<String> pids;
+    private final List<String[]> splitPids;
+    private final Map<String, Dictionary<String, Object>> acls;
+    private final Set<String> whitelist;
+    private final Set<String> bypassObjectNames;
+    private final Set<String> bypassOperations;
+
+    private final Map<ObjectName, ObjectNameAcl> objectNameAcls = lru(MAX_OBJECT_NAMES);
+    private final Map<String, List<String>> requiredRoles = lru(MAX_REQUIRED_ROLES);
+    private final Map<Subject, Map<String, Boolean>> decisions =
+            Collections.synchronizedMap(new WeakHashMap<Subject, Map<String, Boolean>>());
+
+    JmxAclIndex(Map<String, Dictionary<String, Object>> configurations, Set<String> whitelist) {
+        this.pids = new ArrayList<String>(configurations.keySet());
+        this.splitPids = new ArrayList<String[]>();
+        this.acls = new LinkedHashMap<String, Dictionary<String, Object>>();
+        for (Map.Entry<String, Dictionary<String, Object>> entry : configurations.entrySet()) {
+            splitPids.add(entry.getKey().split(Pattern.quote(".")));
+            acls.put(entry.getKey(), ACLConfigurationParser.trimKeys(entry.getValue()));
+        }
+        this.whitelist = whitelist;
+        this.bypassObjectNames = new HashSet<String>();
+        this.bypassOperations = new HashSet<String>();
+        for (String bypassObjectName : whitelist) {
+            if (bypassObjectName.split(";").length > 1) {
+                bypassOperations.add(bypassObjectName);
+            } else {
+                bypassObjectNames.add(bypassObjectName);
+            }
+        }
+    }
+
+    /**
+     * Returns a new index where the configuration of the given PID is replaced.
+     */
+    JmxAclIndex withConfiguration(String pid, Dictionary<String, Object> properties) {
+        Map<String, Dictionary<String, Object>> configurations = new LinkedHashMap<String, Dictionary<String, Object>>(acls);
+        configurations.put(pid, properties);
+        Set<String> newWhitelist = whitelist;
+        if (JMX_ACL_WHITELIST.equals(pid)) {
+            newWhitelist = new HashSet<String>();
+            for (Enumeration<String> keys = properties.keys(); keys.hasMoreElements();) {
+                newWhitelist.add(keys.nextElement());
+            }
+        }
+        return new JmxAclIndex(configurations, newWhitelist);
+    }
+
+    /**
+     * Returns a new index where the configuration of the given PID is removed.
+     */
+    JmxAclIndex withoutConfiguration(String pid) {
+        Map<String, Dictionary<String, Object>> configurations = new LinkedHashMap<String, Dictionary<String, Object>>(acls);
+        configurations.remove(pid);
+        Set<String> newWhitelist = whitelist;
+        if (JMX_ACL_WHITELIST.equals(pid)) {
+            newWhitelist = Collections.emptySet();
+        }
+        return new JmxAclIndex(configurations, newWhitelist);
+    }
+
+    boolean canBypassRBAC(ObjectName objectName, String operationName) {
+        for (String name : getObjectNameAcl(objectName).whitelistNames) {
+            if (bypassObjectNames.contains(name) || bypassOperations.contains(name + ";" + operationName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    List<String> getRequiredRoles(ObjectName objectName, String methodName, Object[] params, String[] signature) {
+        // roles only depend on the invocation parameters through exact and regex argument rules
+        boolean cacheable = params == null || params.length == 0;
+        String key = null;
+        if (cacheable) {
+            key = getKey(objectName, methodName, params, signature);
+            List<String> roles = requiredRoles.get(key);
+            if (roles != null) {
+                return roles;
+            }
+        }
+        List<String> roles = Collections.emptyList();
+        for (Dictionary<String, Object> acl : getObjectNameAcl(objectName).acls) {
+            List<String> r = new ArrayList<String>();
+            ACLConfigurationParser.Specificity s = ACLConfigurationParser.getRolesForInvocationOnTrimmedKeys(methodName, params, signature, acl, r);
+            if (s != ACLConfigurationParser.Specificity.NO_MATCH) {
+                roles = Collections.unmodifiableList(r);
+                break;
+            }
+        }
+        if (cacheable) {
+            requiredRoles.put(key, roles);
+        }
+        return roles;
+    }
+
+    /**
+     * Returns the cached decision for the given subject, or {@code null} if the decision is not known yet
+     * or can not be cached.
+     */
+    Boolean getDecision(Subject subject, ObjectName objectName, String methodName, Object[] params, String[] signature) {
+        if (subject == null || (params != null && params.length > 0)) {
+            return null;
+        }
+        Map<String, Boolean> subjectDecisions = decisions.get(subject);
+        return subjectDecisions != null ? subjectDecisions.get(getKey(objectName, methodName, params, signature)) : null;
+    }
+
+    void putDecision(Subject subject, ObjectName objectName, String methodName, Object[] params, String[] signature, boolean decision) {
+        if (subject == null || (params != null && params.length > 0)) {
+            return;
+        }
+        Map<String, Boolean> subjectDecisions;
+        synchronized (decisions) {
+            subjectDecisions = decisions.get(subject);
+            if (subjectDecisions == null) {
+                subjectDecisions = lru(MAX_DECISIONS_PER_SUBJECT);
+                decisions.put(subject, subjectDecisions);
+            }
+        }
+        subjectDecisions.put(getKey(objectName, methodName, params, signature), decision);
+    }
+
+    private ObjectNameAcl getObjectNameAcl(ObjectName objectName) {
+        ObjectNameAcl acl = objectNameAcls.get(objectName);
+        if (acl == null) {
+            acl = new ObjectNameAcl();
+            for (String pid : iterateDownPids(getNameSegments(objectName))) {
+                if (!pid.equals(JMX_ACL_PID_PREFIX)) {
+                    acl.whitelistNames.add(pid.substring(JMX_ACL_PID_PREFIX.length() + 1));
+                }
+                String generalPid = getGeneralPid(pid);
+                if (generalPid != null) {
+                    acl.acls.add(acls.get(generalPid));
+                }
+            }
+            objectNameAcls.put(objectName, acl);
+        }
+        return acl;
+    }
+
+    private String getGeneralPid(String pid) {
+        String[] pidStrArray = pid.split(Pattern.quote("."));
+        for (int p = 0; p < splitPids.size(); p++) {
+            String[] idStrArray = splitPids.get(p);
+            if (idStrArray.length == pidStrArray.length) {
+                boolean match = true;
+                for (int i = 0; i < idStrArray.length; i++) {
+                    if (!idStrArray[i].equals(JMX_OBJECTNAME_PROPERTY_WILDCARD)
+                        && !idStrArray[i].equals(pidStrArray[i])) {
+                        match = false;
+                        break;
+                    }
+                }
+                if (match) {
+                    return pids.get(p);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static List<String> getNameSegments(ObjectName objectName) {
+        List<String> segments = new ArrayList<String>();
+        segments.add(objectName.getDomain());
+        // TODO can an ObjectName property contain a comma as key or value ?
+        // TODO support quoting as described in http://docs.oracle.com/javaee/1.4/api/javax/management/ObjectName.html
+        for (String s : objectName.getKeyPropertyListString().split("[,]")) {
+            int index = s.indexOf('=');
+            if (index < 0) {
+                continue;
+            }
+            String key = objectName.getKeyProperty(s.substring(0, index));
+            if (s.substring(0, index).equals("type")) {
+                segments.add(1, key);
+            } else {
+                segments.add(key);
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Given a list of segments, return a list of PIDs that are searched in this order.
+     * For example, given the following segments: org.foo, bar, test
+     * the following list of PIDs will be generated (in this order):
+     *      jmx.acl.org.foo.bar.test
+     *      jmx.acl.org.foo.bar
+     *      jmx.acl.org.foo
+     *      jmx.acl
+     * The order is used as a search order, in which the most specific PID is searched first.
+     *
+     * @param segments the ObjectName segments.
+     * @return the PIDs corresponding with the ObjectName in the above order.
+     */
+    private static List<String> iterateDownPids(List<String> segments) {
+        List<String> res = new ArrayList<String>();
+        for (int i = segments.size(); i > 0; i--) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(JMX_ACL_PID_PREFIX);
+            for (int j = 0; j < i; j++) {
+                sb.append('.');
+                sb.append(segments.get(j));
+            }
+            res.add(sb.toString());
+        }
+        res.add(JMX_ACL_PID_PREFIX); // this is the top PID (aka jmx.acl)
+        return res;
+    }
+
+    private static String getKey(ObjectName objectName, String methodName, Object[] params, String[] signature) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(objectName.getCanonicalName()).append('#').append(methodName);
+        if (signature != null) {
+            sb.append('(');
+            for (int i = 0; i < signature.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(signature[i]);
+            }
+            sb.append(')');
+        }
+        if (params != null) {
+            sb.append("[]");
+        }
+        return sb.toString();
+    }
+
+    private static <K, V> Map<K, V> lru(final int maxEntries) {
+        return Collections.synchronizedMap(new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    /**
+     * The whitelist names and ACL configurations applying to an ObjectName, from the most specific to the least specific.
+     */
+    private static class ObjectNameAcl {
+        final List<String> whitelistNames = new ArrayList<String>();
+        final List<Dictionary<String, Object>> acls = new ArrayList<Dictionary<String, Object>>();
+    }
+
+}
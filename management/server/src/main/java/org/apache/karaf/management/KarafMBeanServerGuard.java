@@ -22,6 +22,8 @@ import org.apache.karaf.util.jaas.JaasHelper;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.service.cm.Configuration;
 import org.osgi.service.cm.ConfigurationAdmin;
+import org.osgi.service.cm.ConfigurationEvent;
+import org.osgi.service.cm.ConfigurationListener;
 
 import javax.management.*;
 import javax.security.auth.Subject;
@@ -30,34 +32,37 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.security.AccessControlContext;
 import java.security.AccessController;
-import java.security.Principal;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Dictionary;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-public class KarafMBeanServerGuard implements InvocationHandler {
+public class KarafMBeanServerGuard implements InvocationHandler, ConfigurationListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(KarafMBeanServerGuard.class);    
 
-    private static final String JMX_ACL_PID_PREFIX = "jmx.acl";
+    private static final String JMX_ACL_PID_PREFIX = JmxAclIndex.JMX_ACL_PID_PREFIX;
     
-    private static final String JMX_ACL_WHITELIST = "jmx.acl.whitelist";
-
-
-    private static final String JMX_OBJECTNAME_PROPERTY_WILDCARD = "_";
+    private static final String JMX_ACL_WHITELIST = JmxAclIndex.JMX_ACL_WHITELIST;
 
     private ConfigurationAdmin configAdmin;
 
+    private volatile JmxAclIndex index;
+
     public ConfigurationAdmin getConfigAdmin() {
         return configAdmin;
     }
 
-    public void setConfigAdmin(ConfigurationAdmin configAdmin) {
+    public synchronized void setConfigAdmin(ConfigurationAdmin configAdmin) {
         this.configAdmin = configAdmin;
+        this.index = null;
     }
 
     public void init() {
@@ -97,8 +102,10 @@ public class KarafMBeanServerGuard implements InvocationHandler {
      * @throws IOException
      */
     public boolean canInvoke(MBeanServer mbeanServer, ObjectName objectName) throws JMException, IOException {
-        MBeanInfo info = mbeanServer.getMBeanInfo(objectName);
+        return canInvoke(objectName, mbeanServer.getMBeanInfo(objectName));
+    }
 
+    private boolean canInvoke(ObjectName objectName, MBeanInfo info) throws IOException {
         for (MBeanOperationInfo operation : info.getOperations()) {
             List<String> sig = new ArrayList<String>();
             for (MBeanParameterInfo param : operation.getSignature()) {
@@ -134,9 +141,10 @@ public class KarafMBeanServerGuard implements InvocationHandler {
      * @throws IOException
      */
     public boolean canInvoke(MBeanServer mbeanServer, ObjectName objectName, String methodName) throws JMException, IOException {
-        methodName = methodName.trim();
-        MBeanInfo info = mbeanServer.getMBeanInfo(objectName);
+        return canInvoke(objectName, mbeanServer.getMBeanInfo(objectName), methodName.trim());
+    }
 
+    private boolean canInvoke(ObjectName objectName, MBeanInfo info, String methodName) throws IOException {
         for (MBeanOperationInfo op : info.getOperations()) {
             if (!methodName.equals(op.getName())) {
                 continue;
@@ -182,110 +190,127 @@ public class KarafMBeanServerGuard implements InvocationHandler {
         return canInvoke(objectName, methodName, signature);
     }
 
-    private boolean canInvoke(ObjectName objectName, String methodName, String[] signature) throws IOException {
-        if (canBypassRBAC(objectName, methodName)) {
-            return true;
+    /**
+     * Bulk version of the {@code canInvoke} methods. The MBeanInfo is retrieved at most once for the MBean and
+     * all the requested methods are evaluated in a single pass.
+     *
+     * @param mbeanServer the MBeanServer where the object is registered.
+     * @param objectName the MBean ObjectName.
+     * @param methods the methods to check. A method can be specified with its signature, such as
+     *                {@code foo(java.lang.String)}, or without, in which case any overload of the method matches.
+     *                If the list is empty, a check is done whether the current user can invoke <em>any</em> method.
+     * @return the result for each requested method, in the request order. If the list of methods is empty,
+     *      the result is stored under the empty string key.
+     * @throws JMException
+     * @throws IOException
+     */
+    public Map<String, Boolean> canInvoke(MBeanServer mbeanServer, ObjectName objectName, List<String> methods) throws JMException, IOException {
+        Map<String, Boolean> result = new LinkedHashMap<String, Boolean>();
+        if (methods.isEmpty()) {
+            result.put("", canInvoke(objectName, mbeanServer.getMBeanInfo(objectName)));
+            return result;
         }
-        for (String role : getRequiredRoles(objectName, methodName, signature)) {
-            if (JaasHelper.currentUserHasRole(role))
-                return true;
+        MBeanInfo info = null;
+        for (String method : methods) {
+            List<String> argTypes = new ArrayList<String>();
+            String name = parseMethodName(method, argTypes);
+            if (name.equals(method)) {
+                if (info == null) {
+                    info = mbeanServer.getMBeanInfo(objectName);
+                }
+                result.put(method, canInvoke(objectName, info, name.trim()));
+            } else {
+                result.put(method, canInvoke(objectName, name, argTypes.toArray(new String[argTypes.size()])));
+            }
         }
-
-        return false;
+        return result;
     }
 
-    private void handleGetAttribute(MBeanServer proxy, ObjectName objectName, String attributeName) throws JMException, IOException {
-        MBeanInfo info = proxy.getMBeanInfo(objectName);
-        String prefix = null;
-        for (MBeanAttributeInfo attr : info.getAttributes()) {
-            if (attr.getName().equals(attributeName)) {
-                prefix = attr.isIs() ? "is" : "get";
-            }
-        }
-        if (prefix == null) {
-            LOG.debug("Attribute " + attributeName + " can not be found for MBean " + objectName.toString());
-        } else {
-            handleInvoke(objectName, prefix + attributeName, new Object[]{}, new String[]{});
+    private static String parseMethodName(String method, List<String> argTypes) {
+        method = method.trim();
+        int index = method.indexOf('(');
+        if (index < 0)
+            return method;
+
+        String args = method.substring(index + 1, method.length() - 1);
+        for (String arg : args.split(",")) {
+            argTypes.add(arg);
         }
+
+        return method.substring(0, index);
     }
 
-    private void handleGetAttributes(MBeanServer proxy, ObjectName objectName, String[] attributeNames) throws JMException, IOException {
-        for (String attr : attributeNames) {
-            handleGetAttribute(proxy, objectName, attr);
-        }
+    private boolean canInvoke(ObjectName objectName, String methodName, String[] signature) throws IOException {
+        return isAllowed(objectName, methodName, null, signature);
     }
 
-    private void handleSetAttribute(MBeanServer proxy, ObjectName objectName, Attribute attribute) throws JMException, IOException {
-        String dataType = null;
+    private void handleGetAttribute(MBeanServer proxy, ObjectName objectName, String attributeName) throws JMException, IOException {
+        handleGetAttributes(proxy, objectName, new String[] { attributeName });
+    }
+
+    private void handleGetAttributes(MBeanServer proxy, ObjectName objectName, String[] attributeNames) throws JMException, IOException {
         MBeanInfo info = proxy.getMBeanInfo(objectName);
-        for (MBeanAttributeInfo attr : info.getAttributes()) {
-            if (attr.getName().equals(attribute.getName())) {
-                dataType = attr.getType();
-                break;
+        Map<String, MBeanAttributeInfo> attributes = getAttributes(info);
+        for (String attributeName : attributeNames) {
+            MBeanAttributeInfo attr = attributes.get(attributeName);
+            if (attr == null) {
+                LOG.debug("Attribute " + attributeName + " can not be found for MBean " + objectName.toString());
+            } else {
+                handleInvoke(objectName, (attr.isIs() ? "is" : "get") + attributeName, new Object[]{}, new String[]{});
             }
         }
+    }
 
-        if (dataType == null)
-            throw new IllegalStateException("Attribute data type can not be found");
-
-        handleInvoke(objectName, "set" + attribute.getName(), new Object[]{ attribute.getValue() }, new String[]{ dataType });
+    private void handleSetAttribute(MBeanServer proxy, ObjectName objectName, Attribute attribute) throws JMException, IOException {
+        AttributeList attributes = new AttributeList();
+        attributes.add(attribute);
+        handleSetAttributes(proxy, objectName, attributes);
     }
 
     private void handleSetAttributes(MBeanServer proxy, ObjectName objectName, AttributeList attributes) throws JMException, IOException {
-        for (Attribute attr : attributes.asList()) {
-            handleSetAttribute(proxy, objectName, attr);
+        MBeanInfo info = proxy.getMBeanInfo(objectName);
+        Map<String, MBeanAttributeInfo> attributeInfos = getAttributes(info);
+        for (Attribute attribute : attributes.asList()) {
+            MBeanAttributeInfo attr = attributeInfos.get(attribute.getName());
+            if (attr == null)
+                throw new IllegalStateException("Attribute data type can not be found");
+
+            handleInvoke(objectName, "set" + attribute.getName(), new Object[]{ attribute.getValue() }, new String[]{ attr.getType() });
         }
     }
-    
-    private boolean canBypassRBAC(ObjectName objectName, String operationName) {
-        List<String> allBypassObjectName = new ArrayList<String>();
-        try {
-            Configuration[] configs = configAdmin.listConfigurations("(service.pid=" + JMX_ACL_WHITELIST + ")");
-            if (configs != null) {
-                for (Configuration config : configs) {
-                    Enumeration<String> keys = config.getProperties().keys();
-                    while (keys.hasMoreElements()) {
-                        String element = keys.nextElement();
-                        allBypassObjectName.add(element);
-                    }
-                }
-            }
-        } catch (InvalidSyntaxException ise) {
-            throw new RuntimeException(ise);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        } 
-
-        for (String pid : iterateDownPids(getNameSegments(objectName))) {
-            if (!pid.equals("jmx.acl"))  {
-                for (String bypassObjectName : allBypassObjectName) {
-                    String objectNameAndMethod[] = bypassObjectName.split(";");
-                    if (objectNameAndMethod.length > 1) {
-                        //check both the ObjectName and MethodName
-                        if (bypassObjectName.equals(pid.substring("jmx.acl.".length()) 
-                            + ";" + operationName)) {
-                            return true;
-                        }
-                    } else {
-                        if (bypassObjectName.equals(pid.substring("jmx.acl.".length()))) {
-                            return true;
-                        }
-                    }
-                }
-            }
+
+    private static Map<String, MBeanAttributeInfo> getAttributes(MBeanInfo info) {
+        Map<String, MBeanAttributeInfo> attributes = new HashMap<String, MBeanAttributeInfo>();
+        for (MBeanAttributeInfo attr : info.getAttributes()) {
+            attributes.put(attr.getName(), attr);
         }
-        return false;
+        return attributes;
     }
 
     void handleInvoke(ObjectName objectName, String operationName, Object[] params, String[] signature) throws IOException {
-        if (canBypassRBAC(objectName, operationName)) {
-            return;
+        if (!isAllowed(objectName, operationName, params, signature)) {
+            throw new SecurityException("Insufficient roles/credentials for operation");
         }
-        for (String role : getRequiredRoles(objectName, operationName, params, signature)) {
-            if (JaasHelper.currentUserHasRole(role))
-                return;
+    }
+
+    private boolean isAllowed(ObjectName objectName, String operationName, Object[] params, String[] signature) throws IOException {
+        JmxAclIndex index = getIndex();
+        if (index.canBypassRBAC(objectName, operationName)) {
+            return true;
         }
-        throw new SecurityException("Insufficient roles/credentials for operation");
+        Subject subject = getCurrentSubject();
+        Boolean decision = index.getDecision(subject, objectName, operationName, params, signature);
+        if (decision == null) {
+            decision = Boolean.FALSE;
+            for (String role : index.getRequiredRoles(objectName, operationName, params, signature)) {
+                if (JaasHelper.currentUserHasRole(role)) {
+                    decision = Boolean.TRUE;
+                    break;
+                }
+            }
+            index.putDecision(subject, objectName, operationName, params, signature, decision);
+        }
+        return decision;
     }
 
     List<String> getRequiredRoles(ObjectName objectName, String methodName, String[] signature) throws IOException {
@@ -293,103 +318,85 @@ public class KarafMBeanServerGuard implements InvocationHandler {
     }
 
     List<String> getRequiredRoles(ObjectName objectName, String methodName, Object[] params, String[] signature) throws IOException {
+        return getIndex().getRequiredRoles(objectName, methodName, params, signature);
+    }
 
-        List<String> allPids = new ArrayList<String>();
-        try {
-            for (Configuration config : configAdmin.listConfigurations("(service.pid=jmx.acl*)")) {
-                allPids.add(config.getPid());
-            }
-        } catch (InvalidSyntaxException ise) {
-            throw new RuntimeException(ise);
+    /**
+     * Updates the ACL index when a <code>jmx.acl*</code> configuration changes. Only the modified PID is
+     * reloaded from the ConfigurationAdmin.
+     */
+    public void configurationEvent(ConfigurationEvent event) {
+        String pid = event.getPid();
+        if (pid == null || !pid.startsWith(JmxAclIndex.JMX_ACL_PID_PREFIX)) {
+            return;
         }
-
-        for (String pid : iterateDownPids(getNameSegments(objectName))) {
-            String generalPid = getGeneralPid(allPids, pid);
-            if (generalPid.length() > 0) {
-                Configuration config = configAdmin.getConfiguration(generalPid, null);
-                List<String> roles = new ArrayList<String>();
-                ACLConfigurationParser.Specificity s = ACLConfigurationParser.getRolesForInvocation(methodName, params, signature, config.getProperties(), roles);
-                if (s != ACLConfigurationParser.Specificity.NO_MATCH) {
-                    return roles;
+        synchronized (this) {
+            if (index == null) {
+                // not built yet, it will be fully loaded on first use
+                return;
+            }
+            try {
+                if (event.getType() == ConfigurationEvent.CM_DELETED) {
+                    index = index.withoutConfiguration(pid);
+                } else if (event.getType() == ConfigurationEvent.CM_UPDATED) {
+                    Configuration[] configs = configAdmin.listConfigurations("(service.pid=" + pid + ")");
+                    if (configs != null && configs.length > 0 && configs[0].getProperties() != null) {
+                        index = index.withConfiguration(pid, configs[0].getProperties());
+                    } else {
+                        index = index.withoutConfiguration(pid);
+                    }
                 }
+            } catch (Exception e) {
+                LOG.warn("Unable to update JMX ACL for " + pid + ", reloading all ACLs", e);
+                index = null;
             }
         }
-        return Collections.emptyList();
     }
 
-    private String getGeneralPid(List<String> allPids, String pid) {
-        String ret = "";
-        String[] pidStrArray = pid.split(Pattern.quote("."));
-        for (String id : allPids) {
-            String[] idStrArray = id.split(Pattern.quote("."));
-            if (idStrArray.length == pidStrArray.length) {
-                boolean match = true;
-                for (int i = 0; i < idStrArray.length; i++) {
-                    if (idStrArray[i].equals(JMX_OBJECTNAME_PROPERTY_WILDCARD) 
-                        || idStrArray[i].equals(pidStrArray[i])) {
-                        continue;
-                    } else {
-                        match = false;
-                        break;
-                    }
-                }
-                if (match) {
-                    ret = id;
-                    return ret;
+    private JmxAclIndex getIndex() {
+        JmxAclIndex idx = index;
+        if (idx == null) {
+            synchronized (this) {
+                idx = index;
+                if (idx == null) {
+                    idx = loadIndex();
+                    index = idx;
                 }
             }
         }
-        
-        return ret;
+        return idx;
     }
 
-    private List<String> getNameSegments(ObjectName objectName) {
-        List<String> segments = new ArrayList<String>();
-        segments.add(objectName.getDomain());
-        // TODO can an ObjectName property contain a comma as key or value ?
-        // TODO support quoting as described in http://docs.oracle.com/javaee/1.4/api/javax/management/ObjectName.html
-        for (String s : objectName.getKeyPropertyListString().split("[,]")) {
-            int index = s.indexOf('=');
-            if (index < 0) {
-                continue;
+    private JmxAclIndex loadIndex() {
+        Map<String, Dictionary<String, Object>> configurations = new LinkedHashMap<String, Dictionary<String, Object>>();
+        Set<String> whitelist = new HashSet<String>();
+        try {
+            Configuration[] configs = configAdmin.listConfigurations("(service.pid=" + JMX_ACL_PID_PREFIX + "*)");
+            if (configs != null) {
+                for (Configuration config : configs) {
+                    configurations.put(config.getPid(), config.getProperties());
+                }
             }
-            String key = objectName.getKeyProperty(s.substring(0, index));
-            if (s.substring(0, index).equals("type")) {
-                segments.add(1, key);
-            } else {
-                segments.add(key);
+            configs = configAdmin.listConfigurations("(service.pid=" + JMX_ACL_WHITELIST + ")");
+            if (configs != null) {
+                for (Configuration config : configs) {
+                    Enumeration<String> keys = config.getProperties().keys();
+                    while (keys.hasMoreElements()) {
+                        whitelist.add(keys.nextElement());
+                    }
+                }
             }
+        } catch (InvalidSyntaxException ise) {
+            throw new RuntimeException(ise);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
-        
-        return segments;
+        return new JmxAclIndex(configurations, whitelist);
     }
 
-    /**
-     * Given a list of segments, return a list of PIDs that are searched in this order.
-     * For example, given the following segments: org.foo, bar, test
-     * the following list of PIDs will be generated (in this order):
-     *      jmx.acl.org.foo.bar.test
-     *      jmx.acl.org.foo.bar
-     *      jmx.acl.org.foo
-     *      jmx.acl
-     * The order is used as a search order, in which the most specific PID is searched first.
-     *
-     * @param segments the ObjectName segments.
-     * @return the PIDs corresponding with the ObjectName in the above order.
-     */
-    private List<String> iterateDownPids(List<String> segments) {
-        List<String> res = new ArrayList<String>();
-        for (int i = segments.size(); i > 0; i--) {
-            StringBuilder sb = new StringBuilder();
-            sb.append(JMX_ACL_PID_PREFIX);
-            for (int j = 0; j < i; j++) {
-                sb.append('.');
-                sb.append(segments.get(j));
-            }
-            res.add(sb.toString());
-        }
-        res.add(JMX_ACL_PID_PREFIX); // this is the top PID (aka jmx.acl)
-        return res;
+    private static Subject getCurrentSubject() {
+        AccessControlContext acc = AccessController.getContext();
+        return acc != null ? Subject.getSubject(acc) : null;
     }
 
 }
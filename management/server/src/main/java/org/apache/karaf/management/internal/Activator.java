@@ -36,6 +36,7 @@ import org.apache.karaf.util.tracker.RequireService;
 import org.apache.karaf.util.tracker.Services;
 import org.osgi.framework.ServiceReference;
 import org.osgi.service.cm.ConfigurationAdmin;
+import org.osgi.service.cm.ConfigurationListener;
 import org.osgi.service.cm.ManagedService;
 import org.osgi.util.tracker.ServiceTracker;
 import org.osgi.util.tracker.ServiceTrackerCustomizer;
@@ -92,6 +93,7 @@ public class Activator extends BaseActivator implements ManagedService {
         KarafMBeanServerGuard guard = new KarafMBeanServerGuard();
         guard.setConfigAdmin(configurationAdmin);
         guard.init();
+        register(ConfigurationListener.class, guard);
 
         rmiRegistryFactory = new RmiRegistryFactory();
         rmiRegistryFactory.setCreate(true);
@@ -28,7 +28,7 @@ import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.CompositeDataSupport;
 import javax.management.openmbean.TabularData;
 import javax.management.openmbean.TabularDataSupport;
-import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -68,48 +68,33 @@ public class JMXSecurityMBeanImpl extends StandardMBean implements JMXSecurityMB
 
     public TabularData canInvoke(Map<String, List<String>> bulkQuery) throws Exception {
         TabularData table = new TabularDataSupport(CAN_INVOKE_TABULAR_TYPE);
+        KarafMBeanServerGuard guard = (KarafMBeanServerGuard) KarafMBeanServerBuilder.getGuard();
 
         for (Map.Entry<String, List<String>> entry : bulkQuery.entrySet()) {
             String objectName = entry.getKey();
             List<String> methods = entry.getValue();
-            if (methods.size() == 0) {
-                boolean res = canInvoke(objectName);
-                CompositeData data = new CompositeDataSupport(CAN_INVOKE_RESULT_ROW_TYPE, CAN_INVOKE_RESULT_COLUMNS, new Object[]{ objectName, "", res });
-                table.put(data);
+            Map<String, Boolean> results;
+            if (guard != null) {
+                // all the methods of a MBean are evaluated at once
+                results = guard.canInvoke(mbeanServer, new ObjectName(objectName), methods);
             } else {
+                results = new LinkedHashMap<String, Boolean>();
+                if (methods.isEmpty()) {
+                    results.put("", true);
+                }
                 for (String method : methods) {
-                    List<String> argTypes = new ArrayList<String>();
-                    String name = parseMethodName(method, argTypes);
-
-                    boolean res;
-                    if (name.equals(method)) {
-                        res = canInvoke(objectName, name);
-                    } else {
-                        res = canInvoke(objectName, name, argTypes.toArray(new String[]{}));
-                    }
-                    CompositeData data = new CompositeDataSupport(CAN_INVOKE_RESULT_ROW_TYPE, CAN_INVOKE_RESULT_COLUMNS, new Object[]{ objectName, method, res });
-                    table.put(data);
+                    results.put(method, true);
                 }
             }
+            for (Map.Entry<String, Boolean> result : results.entrySet()) {
+                CompositeData data = new CompositeDataSupport(CAN_INVOKE_RESULT_ROW_TYPE, CAN_INVOKE_RESULT_COLUMNS, new Object[]{ objectName, result.getKey(), result.getValue() });
+                table.put(data);
+            }
         }
 
         return table;
     }
 
-    private String parseMethodName(String method, List<String> argTypes) {
-        method = method.trim();
-        int index = method.indexOf('(');
-        if (index < 0)
-            return method;
-
-        String args = method.substring(index + 1, method.length() - 1);
-        for (String arg : args.split(",")) {
-            argTypes.add(arg);
-        }
-
-        return method.substring(0, index);
-    }
-
     public MBeanServer getMBeanServer() {
         return this.mbeanServer;
     }
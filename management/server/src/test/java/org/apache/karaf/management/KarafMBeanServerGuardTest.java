@@ -22,8 +22,10 @@ import org.apache.karaf.util.jaas.JaasHelper;
 import org.easymock.EasyMock;
 import org.osgi.framework.Constants;
 import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
 import org.osgi.service.cm.Configuration;
 import org.osgi.service.cm.ConfigurationAdmin;
+import org.osgi.service.cm.ConfigurationEvent;
 
 import javax.management.*;
 import javax.security.auth.Subject;
@@ -354,6 +356,54 @@ public class KarafMBeanServerGuardTest extends TestCase {
                 guard.getRequiredRoles(on, "test", new Object[]{new Long(17)}, new String[]{"java.lang.Long"}));
     }
 
+    @SuppressWarnings("unchecked")
+    public void testRequiredRolesConfigurationEvents() throws Exception {
+        Dictionary<String, Object> conf1 = new Hashtable<String, Object>();
+        conf1.put("doit", "master");
+        conf1.put(Constants.SERVICE_PID, "jmx.acl.foo.bar.Test");
+        Dictionary<String, Object> conf2 = new Hashtable<String, Object>();
+        conf2.put("doit", "editor");
+        conf2.put(Constants.SERVICE_PID, "jmx.acl.foo.bar.Test");
+
+        Configuration c1 = EasyMock.createMock(Configuration.class);
+        EasyMock.expect(c1.getPid()).andReturn("jmx.acl.foo.bar.Test").anyTimes();
+        EasyMock.expect(c1.getProperties()).andReturn(conf1).anyTimes();
+        Configuration c2 = EasyMock.createMock(Configuration.class);
+        EasyMock.expect(c2.getPid()).andReturn("jmx.acl.foo.bar.Test").anyTimes();
+        EasyMock.expect(c2.getProperties()).andReturn(conf2).anyTimes();
+        EasyMock.replay(c1, c2);
+
+        ConfigurationAdmin ca = EasyMock.createMock(ConfigurationAdmin.class);
+        EasyMock.expect(ca.listConfigurations(EasyMock.eq("(service.pid=jmx.acl*)"))).andReturn(
+                new Configuration[]{c1}).once();
+        EasyMock.expect(ca.listConfigurations(EasyMock.eq("(service.pid=jmx.acl.whitelist)"))).andReturn(
+                null).once();
+        EasyMock.expect(ca.listConfigurations(EasyMock.eq("(service.pid=jmx.acl.foo.bar.Test)"))).andReturn(
+                new Configuration[]{c2}).once();
+        EasyMock.replay(ca);
+
+        KarafMBeanServerGuard guard = new KarafMBeanServerGuard();
+        guard.setConfigAdmin(ca);
+
+        ObjectName on = ObjectName.getInstance("foo.bar:type=Test");
+        assertEquals(Collections.singletonList("master"),
+                guard.getRequiredRoles(on, "doit", new Object[]{}, new String[]{}));
+        assertEquals("The ACLs are cached", Collections.singletonList("master"),
+                guard.getRequiredRoles(on, "doit", new Object[]{}, new String[]{}));
+
+        ServiceReference<ConfigurationAdmin> ref = EasyMock.createMock(ServiceReference.class);
+        EasyMock.replay(ref);
+        guard.configurationEvent(new ConfigurationEvent(ref, ConfigurationEvent.CM_UPDATED, null, "jmx.acl.foo.bar.Test"));
+        assertEquals(Collections.singletonList("editor"),
+                guard.getRequiredRoles(on, "doit", new Object[]{}, new String[]{}));
+
+        guard.configurationEvent(new ConfigurationEvent(ref, ConfigurationEvent.CM_DELETED, null, "jmx.acl.foo.bar.Test"));
+        assertEquals(Collections.emptyList(),
+                guard.getRequiredRoles(on, "doit", new Object[]{}, new String[]{}));
+
+        EasyMock.verify(ca);
+    }
+
     @SuppressWarnings("unchecked")
     private ConfigurationAdmin getMockConfigAdmin(Dictionary<String, Object> configuration) throws IOException, InvalidSyntaxException {
         configuration.put(Constants.SERVICE_PID, "jmx.acl.foo.bar.Test");
@@ -1398,6 +1448,61 @@ public class KarafMBeanServerGuardTest extends TestCase {
         });
     }
 
+    public void testCanInvokeBulk() throws Exception {
+        final ObjectName on = ObjectName.getInstance("foo.bar:type=Test");
+
+        MBeanParameterInfo[] sig = new MBeanParameterInfo[]{new MBeanParameterInfo("arg1", "java.lang.String", "")};
+        MBeanOperationInfo op = new MBeanOperationInfo("doit", "", sig, "int", MBeanOperationInfo.INFO);
+        MBeanParameterInfo[] sig2 = new MBeanParameterInfo[]{
+                new MBeanParameterInfo("arg1", "java.lang.String", ""),
+                new MBeanParameterInfo("arg2", "java.lang.String", "")};
+        MBeanOperationInfo op2 = new MBeanOperationInfo("doit", "", sig2, "int", MBeanOperationInfo.INFO);
+        MBeanAttributeInfo attr = new MBeanAttributeInfo("Toast", "boolean", "", true, false, false);
+
+        MBeanInfo info = EasyMock.createMock(MBeanInfo.class);
+        EasyMock.expect(info.getOperations()).andReturn(new MBeanOperationInfo[]{op, op2}).anyTimes();
+        EasyMock.expect(info.getAttributes()).andReturn(new MBeanAttributeInfo[]{attr}).anyTimes();
+        EasyMock.replay(info);
+
+        final MBeanServer mbs = EasyMock.createMock(MBeanServer.class);
+        // the MBeanInfo is only retrieved once per bulk query
+        EasyMock.expect(mbs.getMBeanInfo(on)).andReturn(info).times(2);
+        EasyMock.replay(mbs);
+
+        Dictionary<String, Object> configuration = new Hashtable<String, Object>();
+        configuration.put("doit(java.lang.String)", "admin");
+        configuration.put("doit(java.lang.String,java.lang.String)", "viewer");
+        configuration.put("getToast", "viewer");
+        ConfigurationAdmin ca = getMockConfigAdmin(configuration);
+
+        final KarafMBeanServerGuard guard = new KarafMBeanServerGuard();
+        guard.setConfigAdmin(ca);
+
+        Subject subject = loginWithTestRoles("viewer");
+        Subject.doAs(subject, new PrivilegedAction<Void>() {
+            public Void run() {
+                try {
+                    Map<String, Boolean> result = guard.canInvoke(mbs, on,
+                            Arrays.asList("doit", "doit(java.lang.String)", "getToast", "setToast"));
+                    assertEquals(Arrays.asList("doit", "doit(java.lang.String)", "getToast", "setToast"),
+                            new ArrayList<String>(result.keySet()));
+                    assertTrue(result.get("doit"));
+                    assertFalse(result.get("doit(java.lang.String)"));
+                    assertTrue(result.get("getToast"));
+                    assertFalse(result.get("setToast"));
+
+                    assertEquals(Collections.singletonMap("", true),
+                            guard.canInvoke(mbs, on, Collections.<String>emptyList()));
+
+                    return null;
+                } catch (Throwable th) {
+                    throw new RuntimeException(th);
+                }
+            }
+        });
+        EasyMock.verify(mbs);
+    }
+
     private Subject loginWithTestRoles(String... roles) throws LoginException {
         Subject subject = new Subject();
         LoginModule lm = new TestLoginModule(roles);
@@ -182,15 +182,18 @@ public class JMXSecurityMBeanImplTestCase extends TestCase {
 
             KarafMBeanServerGuard testGuard = EasyMock.createMock(KarafMBeanServerGuard.class);
             String objectName = "foo.bar.testing:type=SomeMBean";
-            final String[] la = new String[]{"long"};
-            final String[] sa = new String[]{"java.lang.String"};
-            EasyMock.expect(testGuard.canInvoke(EasyMock.eq(mbs), EasyMock.eq(new ObjectName(objectName)), EasyMock.eq("testMethod"), EasyMock.aryEq(la))).andReturn(true).anyTimes();
-            EasyMock.expect(testGuard.canInvoke(EasyMock.eq(mbs), EasyMock.eq(new ObjectName(objectName)), EasyMock.eq("testMethod"), EasyMock.aryEq(sa))).andReturn(false).anyTimes();
-            EasyMock.expect(testGuard.canInvoke(EasyMock.eq(mbs), EasyMock.eq(new ObjectName(objectName)), EasyMock.eq("otherMethod"))).andReturn(true).anyTimes();
+            Map<String, Boolean> res = new LinkedHashMap<String, Boolean>();
+            res.put("otherMethod", true);
+            res.put("testMethod(long)", true);
+            res.put("testMethod(java.lang.String)", false);
+            EasyMock.expect(testGuard.canInvoke(mbs, new ObjectName(objectName),
+                    Arrays.asList("otherMethod", "testMethod(long)", "testMethod(java.lang.String)"))).andReturn(res).once();
             String objectName2 = "foo.bar.testing:type=SomeOtherMBean";
-            EasyMock.expect(testGuard.canInvoke(EasyMock.eq(mbs), EasyMock.eq(new ObjectName(objectName2)))).andReturn(true).anyTimes();
+            EasyMock.expect(testGuard.canInvoke(mbs, new ObjectName(objectName2), Collections.<String>emptyList()))
+                    .andReturn(Collections.singletonMap("", true)).once();
             String objectName3 = "foo.bar.foo.testing:type=SomeOtherMBean";
-            EasyMock.expect(testGuard.canInvoke(EasyMock.eq(mbs), EasyMock.eq(new ObjectName(objectName3)))).andReturn(false).anyTimes();
+            EasyMock.expect(testGuard.canInvoke(mbs, new ObjectName(objectName3), Collections.<String>emptyList()))
+                    .andReturn(Collections.singletonMap("", false)).once();
             EasyMock.replay(testGuard);
             KarafMBeanServerBuilder.setGuard(testGuard);
 
@@ -76,8 +76,23 @@ public class ACLConfigurationParser {
      */
     public static Specificity getRolesForInvocation(String methodName, Object[] params, String[] signature,
                                                     Dictionary<String, Object> config, List<String> addToRoles) {
-        Dictionary<String, Object> properties = trimKeys(config);
+        return getRolesForInvocationOnTrimmedKeys(methodName, params, signature, trimKeys(config), addToRoles);
+    }
 
+    /**
+     * Same as {@link #getRolesForInvocation(String, Object[], String[], Dictionary, List)} but for a configuration
+     * whose keys have already been normalized with {@link #trimKeys(Dictionary)}. This allows callers to compile
+     * a configuration once and evaluate it many times.
+     *
+     * @param methodName the method name to be invoked.
+     * @param params the parameters provided for the invocation, may be {@code null}.
+     * @param signature the signature of the method specified as an array of class name.
+     * @param properties the configuration to check against, as returned by {@link #trimKeys(Dictionary)}.
+     * @param addToRoles the list of roles (which may be empty) if a matching configuration iteam has been found.
+     * @return the specificity
+     */
+    public static Specificity getRolesForInvocationOnTrimmedKeys(String methodName, Object[] params, String[] signature,
+                                                                 Dictionary<String, Object> properties, List<String> addToRoles) {
         Specificity s = getRolesBasedOnSignature(methodName, params, signature, properties, addToRoles);
         if (s != Specificity.NO_MATCH) {
             return s;
@@ -136,7 +151,14 @@ public class ACLConfigurationParser {
         return Specificity.NO_MATCH;
     }
 
-    private static Dictionary<String, Object> trimKeys(Dictionary<String, Object> properties) {
+    /**
+     * Returns a copy of the given configuration where the spaces in the keys (outside of quoted arguments)
+     * have been removed.
+     *
+     * @param properties the configuration.
+     * @return the normalized configuration.
+     */
+    public static Dictionary<String, Object> trimKeys(Dictionary<String, Object> properties) {
         Dictionary<String, Object> d = new Hashtable<String, Object>();
         for (Enumeration<String> e = properties.keys(); e.hasMoreElements(); ) {
             String key = e.nextElement();
@@ -19,6 +19,7 @@ package org.apache.karaf.services.mavenproxy.internal;
 import java.io.IOException;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.karaf.util.tracker.BaseActivator;
 import org.apache.karaf.util.tracker.Managed;
@@ -53,6 +54,9 @@ public class Activator extends BaseActivator implements ManagedService {
         String downloadRole = getString("maven.downloadRole", null);
         String uploadRole = getString("maven.uploadRole", "karaf");
         int poolSize = getInt("maven.poolSize", 8);
+        long cacheSize = getLong("maven.cache.size", 32 * 1024 * 1024);
+        long cacheMaxEntrySize = getLong("maven.cache.maxEntrySize", 4 * 1024 * 1024);
+        int cacheMetadataTimeToLive = getInt("maven.cache.metadataTimeToLive", 60);
         Hashtable<String, String> config = new Hashtable<>();
         if (getConfiguration() != null) {
             for (Enumeration<String> e = getConfiguration().keys(); e.hasMoreElements();) {
@@ -63,8 +67,13 @@ public class Activator extends BaseActivator implements ManagedService {
         }
         this.resolver = MavenResolvers.createMavenResolver(null, config, pid);
         this.alias = alias;
-        this.servlet = new MavenProxyServlet(this.resolver, poolSize, realm, downloadRole, uploadRole);
+        ArtifactCache cache = null;
+        if (cacheSize > 0) {
+            cache = new ArtifactCache(cacheSize, cacheMaxEntrySize, TimeUnit.SECONDS.toMillis(cacheMetadataTimeToLive));
+        }
+        this.servlet = new MavenProxyServlet(this.resolver, poolSize, realm, downloadRole, uploadRole, cache);
         this.httpService.registerServlet(this.alias, this.servlet, config, null);
+        registerMBean(new MavenProxyMBeanImpl(this.servlet), "type=mavenproxy");
     }
 
     @Override
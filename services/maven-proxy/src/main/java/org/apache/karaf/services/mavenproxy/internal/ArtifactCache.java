@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.services.mavenproxy.internal;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory cache of the content of recently served artifacts and metadata.
+ *
+ * The cache is bounded by the total size of the cached contents, the least recently
+ * used entries being evicted first. Metadata and snapshot artifacts may change in the
+ * remote repositories, so they are only kept for a short time.
+ */
+public class ArtifactCache {
+
+    private final long maxSize;
+    private final long maxEntrySize;
+    private final long volatileTimeToLive;
+    private final LinkedHashMap<String, CachedArtifact> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxSize            the maximum total size of the cached contents, in bytes.
+     * @param maxEntrySize       the maximum size of a single cached content, in bytes.
+     * @param volatileTimeToLive the time to live of metadata and snapshots, in milliseconds.
+     */
+    public ArtifactCache(long maxSize, long maxEntrySize, long volatileTimeToLive) {
+        this.maxSize = maxSize;
+        this.maxEntrySize = Math.min(maxEntrySize, maxSize);
+        this.volatileTimeToLive = volatileTimeToLive;
+    }
+
+    public boolean accept(long length) {
+        return length <= maxEntrySize;
+    }
+
+    public synchronized CachedArtifact get(String path) {
+        CachedArtifact artifact = entries.get(path);
+        if (artifact != null && artifact.expiration > 0 && artifact.expiration < System.currentTimeMillis()) {
+            entries.remove(path);
+            size -= artifact.data.length;
+            artifact = null;
+        }
+        if (artifact != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return artifact;
+    }
+
+    public CachedArtifact put(String path, byte[] data, long lastModified, boolean isVolatile) {
+        long expiration = isVolatile ? System.currentTimeMillis() + volatileTimeToLive : 0;
+        CachedArtifact artifact = new CachedArtifact(data, lastModified, expiration);
+        if (!accept(data.length)) {
+            return artifact;
+        }
+        synchronized (this) {
+            CachedArtifact old = entries.put(path, artifact);
+            if (old != null) {
+                size -= old.data.length;
+            }
+            size += data.length;
+            for (Iterator<CachedArtifact> it = entries.values().iterator(); size > maxSize && it.hasNext();) {
+                size -= it.next().data.length;
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+        return artifact;
+    }
+
+    /**
+     * Removes all the entries whose path starts with the given prefix.
+     */
+    public synchronized void invalidate(String prefix) {
+        for (Iterator<Map.Entry<String, CachedArtifact>> it = entries.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, CachedArtifact> entry = it.next();
+            if (entry.getKey().startsWith(prefix)) {
+                size -= entry.getValue().data.length;
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+
+    public static class CachedArtifact {
+        final byte[] data;
+        final long lastModified;
+        final long expiration;
+
+        CachedArtifact(byte[] data, long lastModified, long expiration) {
+            this.data = data;
+            this.lastModified = lastModified;
+            this.expiration = expiration;
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.services.mavenproxy.internal;
+
+/**
+ * Statistics of the maven proxy.
+ */
+public interface MavenProxyMBean {
+
+    /**
+     * @return the number of download requests served.
+     */
+    long getRequests();
+
+    /**
+     * @return the number of bytes of artifacts and metadata sent.
+     */
+    long getBytesServed();
+
+    /**
+     * @return the average time to serve a download request, in milliseconds.
+     */
+    double getAverageLatency();
+
+    /**
+     * @return the longest time to serve a download request, in milliseconds.
+     */
+    double getMaxLatency();
+
+    /**
+     * @return the number of requests served from the in-memory cache.
+     */
+    long getCacheHits();
+
+    /**
+     * @return the number of requests which had to be resolved.
+     */
+    long getCacheMisses();
+
+    /**
+     * @return the number of entries evicted from the cache to make room for new ones.
+     */
+    long getCacheEvictions();
+
+    /**
+     * @return the number of cached artifacts and metadata.
+     */
+    int getCacheEntries();
+
+    /**
+     * @return the total size of the cached contents, in bytes.
+     */
+    long getCacheSize();
+
+    /**
+     * @return the maximum size of the cached contents, in bytes, 0 if the cache is disabled.
+     */
+    long getCacheMaxSize();
+
+    /**
+     * Remove all the cached artifacts and metadata.
+     */
+    void clearCache();
+
+    /**
+     * Reset all the counters.
+     */
+    void resetStatistics();
+
+}
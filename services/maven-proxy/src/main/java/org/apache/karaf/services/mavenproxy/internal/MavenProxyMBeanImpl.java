@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.services.mavenproxy.internal;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+
+/**
+ * Implementation of the maven proxy MBean.
+ */
+public class MavenProxyMBeanImpl extends StandardMBean implements MavenProxyMBean {
+
+    private final MavenProxyServlet servlet;
+
+    public MavenProxyMBeanImpl(MavenProxyServlet servlet) throws NotCompliantMBeanException {
+        super(MavenProxyMBean.class);
+        this.servlet = servlet;
+    }
+
+    @Override
+    public long getRequests() {
+        return servlet.getRequests();
+    }
+
+    @Override
+    public long getBytesServed() {
+        return servlet.getBytesServed();
+    }
+
+    @Override
+    public double getAverageLatency() {
+        long requests = servlet.getRequests();
+        return requests > 0 ? toMillis(servlet.getTotalLatency() / requests) : 0;
+    }
+
+    @Override
+    public double getMaxLatency() {
+        return toMillis(servlet.getMaxLatency());
+    }
+
+    @Override
+    public long getCacheHits() {
+        return servlet.getCache() != null ? servlet.getCache().getHits() : 0;
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return servlet.getCache() != null ? servlet.getCache().getMisses() : 0;
+    }
+
+    @Override
+    public long getCacheEvictions() {
+        return servlet.getCache() != null ? servlet.getCache().getEvictions() : 0;
+    }
+
+    @Override
+    public int getCacheEntries() {
+        return servlet.getCache() != null ? servlet.getCache().getCount() : 0;
+    }
+
+    @Override
+    public long getCacheSize() {
+        return servlet.getCache() != null ? servlet.getCache().getSize() : 0;
+    }
+
+    @Override
+    public long getCacheMaxSize() {
+        return servlet.getCache() != null ? servlet.getCache().getMaxSize() : 0;
+    }
+
+    @Override
+    public void clearCache() {
+        if (servlet.getCache() != null) {
+            servlet.getCache().clear();
+        }
+    }
+
+    @Override
+    public void resetStatistics() {
+        servlet.resetStatistics();
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+}
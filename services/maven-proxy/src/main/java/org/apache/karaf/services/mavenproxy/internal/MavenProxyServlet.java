@@ -16,17 +16,20 @@
  */
 package org.apache.karaf.services.mavenproxy.internal;
 
+import java.io.Closeable;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.Principal;
 import java.util.Enumeration;
 import java.util.Properties;
@@ -37,6 +40,7 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.regex.Matcher;
@@ -54,11 +58,14 @@ import javax.security.auth.login.LoginContext;
 import javax.security.auth.login.LoginException;
 import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.bind.DatatypeConverter;
 
+import org.apache.karaf.services.mavenproxy.internal.ArtifactCache.CachedArtifact;
 import org.apache.karaf.util.StreamUtils;
 import org.ops4j.pax.url.mvn.MavenResolver;
 import org.osgi.framework.Bundle;
@@ -98,23 +105,67 @@ public class MavenProxyServlet extends HttpServlet {
 
     protected static final String LOCATION_HEADER = "X-Location";
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long[] UNSATISFIABLE_RANGE = new long[0];
+
     private final ConcurrentMap<String, ArtifactDownloadFuture> requestMap = new ConcurrentHashMap<>();
     private final int threadMaximumPoolSize;
     private final String realm;
     private final String downloadRole;
     private final String uploadRole;
+    private final ArtifactCache cache;
     private ThreadPoolExecutor executorService;
 
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
+
     protected File tmpFolder = new File(System.getProperty("karaf.data") + File.separator + "maven" + File.separator + "proxy" + File.separator + "tmp");
 
     final MavenResolver resolver;
 
     public MavenProxyServlet(MavenResolver resolver, int threadMaximumPoolSize, String realm, String downloadRole, String uploadRole) {
+        this(resolver, threadMaximumPoolSize, realm, downloadRole, uploadRole, null);
+    }
+
+    public MavenProxyServlet(MavenResolver resolver, int threadMaximumPoolSize, String realm, String downloadRole, String uploadRole, ArtifactCache cache) {
         this.resolver = resolver;
         this.threadMaximumPoolSize = threadMaximumPoolSize;
         this.realm = realm;
         this.downloadRole = downloadRole;
         this.uploadRole = uploadRole;
+        this.cache = cache;
+    }
+
+    public ArtifactCache getCache() {
+        return cache;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getBytesServed() {
+        return bytesServed.get();
+    }
+
+    public long getTotalLatency() {
+        return totalLatency.get();
+    }
+
+    public long getMaxLatency() {
+        return maxLatency.get();
+    }
+
+    public void resetStatistics() {
+        requests.set(0);
+        bytesServed.set(0);
+        totalLatency.set(0);
+        maxLatency.set(0);
+        if (cache != null) {
+            cache.resetStatistics();
+        }
     }
 
 
@@ -281,9 +332,18 @@ public class MavenProxyServlet extends HttpServlet {
             tpath = tpath.substring(1);
         }
         final String path = tpath;
+        final long start = System.nanoTime();
 
         final AsyncContext asyncContext = req.startAsync();
         asyncContext.setTimeout(TimeUnit.MINUTES.toMillis(5));
+        CachedArtifact cached = cache != null ? cache.get(path) : null;
+        if (cached != null) {
+            LOGGER.debug("Serving cached artifact : {}", path);
+            if (!send(req, resp, asyncContext, null, path, null, cached, start)) {
+                complete(asyncContext, start, 0);
+            }
+            return;
+        }
         final ArtifactDownloadFuture future = new ArtifactDownloadFuture(path);
         ArtifactDownloadFuture masterFuture = requestMap.putIfAbsent(path, future);
         if (masterFuture == null) {
@@ -294,7 +354,7 @@ public class MavenProxyServlet extends HttpServlet {
                 public void run() {
                     try {
                         File file = download(path);
-                        future.setValue(file);
+                        future.setValue(cache(path, file));
                     } catch (Throwable t) {
                         future.setValue(t);
                     }
@@ -310,39 +370,293 @@ public class MavenProxyServlet extends HttpServlet {
                 if (value instanceof Throwable) {
                     LOGGER.warn("Error while downloading artifact: {}", ((Throwable) value).getMessage(), value);
                     resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-                } else if (value instanceof File) {
-                    File artifactFile = (File) value;
-                    try (InputStream is = new FileInputStream(artifactFile)) {
-                        LOGGER.info("Writing response for file : {}", path);
-                        resp.setStatus(HttpServletResponse.SC_OK);
-                        resp.setContentType("application/octet-stream");
-                        resp.setDateHeader("Date", System.currentTimeMillis());
-                        resp.setHeader("Connection", "close");
-                        resp.setContentLength(is.available());
-                        Bundle bundle = FrameworkUtil.getBundle(getClass());
-                        if (bundle != null) {
-                            resp.setHeader("Server", bundle.getSymbolicName() + "/" + bundle.getVersion());
-                        } else {
-                            resp.setHeader("Server", "Karaf Maven Proxy");
-                        }
-                        StreamUtils.copy(is, resp.getOutputStream());
-                    } catch (Exception e) {
-                        LOGGER.warn("Error while sending artifact: {}", e.getMessage(), e);
-                        resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                } else if (value instanceof File || value instanceof CachedArtifact) {
+                    File file = value instanceof File ? (File) value : null;
+                    CachedArtifact cached = value instanceof CachedArtifact ? (CachedArtifact) value : null;
+                    if (send(req, resp, asyncContext, future, path, file, cached, start)) {
+                        // the future will be released once the content has been written
+                        return;
                     }
                 } else {
                     resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
                 }
                 future.release();
-                try {
-                    asyncContext.complete();
-                } catch (IllegalStateException e) {
-                    // Ignore, the response must have already been sent with an error
-                }
+                complete(asyncContext, start, 0);
             }
         });
     }
 
+    /**
+     * Keeps the content of the downloaded file in memory if it is small enough.
+     *
+     * @return the cached artifact, or the file if it has not been cached.
+     */
+    private Object cache(String path, File file) throws IOException {
+        if (cache == null || file == null || !cache.accept(file.length())) {
+            return file;
+        }
+        boolean metadata = ARTIFACT_METADATA_URL_REGEX.matcher(path).matches();
+        long lastModified = file.lastModified();
+        byte[] data = Files.readAllBytes(file.toPath());
+        if (metadata) {
+            // merged metadata are written to temporary files
+            file.delete();
+        }
+        boolean isVolatile = metadata || path.contains("SNAPSHOT");
+        return cache.put(path, data, lastModified, isVolatile);
+    }
+
+    private void complete(AsyncContext asyncContext, long start, long bytes) {
+        long latency = System.nanoTime() - start;
+        requests.incrementAndGet();
+        bytesServed.addAndGet(bytes);
+        totalLatency.addAndGet(latency);
+        for (long max = maxLatency.get(); latency > max && !maxLatency.compareAndSet(max, latency); max = maxLatency.get()) {
+            // retry
+        }
+        try {
+            asyncContext.complete();
+        } catch (IllegalStateException e) {
+            // Ignore, the response must have already been sent with an error
+        }
+    }
+
+    /**
+     * Sends the headers of the response for the given file or cached content and starts writing the content asynchronously.
+     *
+     * @return <code>true</code> if the content is being written, in which case the future will be released
+     * and the async context completed once done.
+     */
+    private boolean send(HttpServletRequest req, HttpServletResponse resp, AsyncContext asyncContext,
+                         ArtifactDownloadFuture future, String path, File file, CachedArtifact cached, long started) {
+        FileChannel channel = null;
+        try {
+            long length;
+            long lastModified;
+            if (cached != null) {
+                length = cached.data.length;
+                lastModified = cached.lastModified;
+            } else {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                length = channel.size();
+                lastModified = file.lastModified();
+            }
+            String etag = getETag(lastModified, length);
+            resp.setDateHeader("Date", System.currentTimeMillis());
+            resp.setDateHeader("Last-Modified", lastModified);
+            resp.setHeader("ETag", etag);
+            resp.setHeader("Accept-Ranges", "bytes");
+            Bundle bundle = FrameworkUtil.getBundle(getClass());
+            if (bundle != null) {
+                resp.setHeader("Server", bundle.getSymbolicName() + "/" + bundle.getVersion());
+            } else {
+                resp.setHeader("Server", "Karaf Maven Proxy");
+            }
+            if (isNotModified(req, etag, lastModified)) {
+                LOGGER.debug("Artifact not modified : {}", path);
+                resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return false;
+            }
+            long start = 0;
+            long count = length;
+            long[] range = getRange(req, etag, lastModified, length);
+            if (range == UNSATISFIABLE_RANGE) {
+                resp.setHeader("Content-Range", "bytes */" + length);
+                resp.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return false;
+            } else if (range != null) {
+                start = range[0];
+                count = range[1] - range[0] + 1;
+                resp.setHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+                resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            } else {
+                resp.setStatus(HttpServletResponse.SC_OK);
+            }
+            LOGGER.info("Writing response for file : {}", path);
+            resp.setContentType("application/octet-stream");
+            resp.setContentLengthLong(count);
+            ServletOutputStream os = resp.getOutputStream();
+            os.setWriteListener(new ArtifactWriter(os, channel, cached != null ? cached.data : null, start, count,
+                    future, asyncContext, path, started));
+            channel = null;
+            return true;
+        } catch (Exception e) {
+            LOGGER.warn("Error while sending artifact: {}", e.getMessage(), e);
+            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            return false;
+        } finally {
+            close(channel);
+        }
+    }
+
+    private static String getETag(long lastModified, long length) {
+        return "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+    }
+
+    private static boolean isNotModified(HttpServletRequest req, String etag, long lastModified) {
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            // If-Modified-Since must be ignored when If-None-Match is present
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince = getDateHeader(req, "If-Modified-Since");
+        // http dates have a one second precision
+        return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * Returns the first and last positions of the requested range, <code>null</code> if the whole
+     * content must be sent or {@link #UNSATISFIABLE_RANGE} if the range can not be satisfied.
+     * Only single ranges are supported, the whole content is sent for multiple ranges.
+     */
+    private static long[] getRange(HttpServletRequest req, String etag, long lastModified, long length) {
+        String range = req.getHeader("Range");
+        if (range == null || !range.startsWith("bytes=")) {
+            return null;
+        }
+        String ifRange = req.getHeader("If-Range");
+        if (ifRange != null) {
+            if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+                if (!ifRange.equals(etag)) {
+                    return null;
+                }
+            } else {
+                long date = getDateHeader(req, "If-Range");
+                if (date < 0 || date / 1000 != lastModified / 1000) {
+                    return null;
+                }
+            }
+        }
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0 || spec.indexOf(',') >= 0) {
+            return null;
+        }
+        try {
+            if (dash == 0) {
+                long suffix = Long.parseLong(spec.substring(1).trim());
+                if (suffix <= 0 || length == 0) {
+                    return UNSATISFIABLE_RANGE;
+                }
+                return new long[] { Math.max(0, length - suffix), length - 1 };
+            }
+            long first = Long.parseLong(spec.substring(0, dash).trim());
+            long last = dash < spec.length() - 1 ? Long.parseLong(spec.substring(dash + 1).trim()) : Long.MAX_VALUE;
+            if (first < 0 || last < first) {
+                return null;
+            }
+            if (first >= length) {
+                return UNSATISFIABLE_RANGE;
+            }
+            return new long[] { first, Math.min(last, length - 1) };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static long getDateHeader(HttpServletRequest req, String name) {
+        try {
+            return req.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * Writes a region of a file or cached content to the response, without blocking when the client is slow to read.
+     */
+    private class ArtifactWriter implements WriteListener {
+
+        private final ServletOutputStream os;
+        private final FileChannel channel;
+        private final byte[] data;
+        private final ArtifactDownloadFuture future;
+        private final AsyncContext asyncContext;
+        private final String path;
+        private final long started;
+        private final long count;
+        private final ByteBuffer buffer;
+        private long position;
+        private long remaining;
+        private boolean done;
+
+        private ArtifactWriter(ServletOutputStream os, FileChannel channel, byte[] data, long position, long count,
+                               ArtifactDownloadFuture future, AsyncContext asyncContext, String path, long started) {
+            this.os = os;
+            this.channel = channel;
+            this.data = data;
+            this.position = position;
+            this.count = count;
+            this.remaining = count;
+            this.future = future;
+            this.asyncContext = asyncContext;
+            this.path = path;
+            this.started = started;
+            this.buffer = data == null ? ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(count, 1))) : null;
+        }
+
+        @Override
+        public void onWritePossible() throws IOException {
+            while (os.isReady()) {
+                if (remaining <= 0) {
+                    done();
+                    return;
+                }
+                int len = (int) Math.min(BUFFER_SIZE, remaining);
+                // a single write per readiness check, as required by non-blocking output streams
+                if (data != null) {
+                    os.write(data, (int) position, len);
+                } else {
+                    buffer.clear();
+                    buffer.limit(len);
+                    len = channel.read(buffer, position);
+                    if (len < 0) {
+                        throw new EOFException("Unexpected end of file " + path);
+                    }
+                    os.write(buffer.array(), 0, len);
+                }
+                position += len;
+                remaining -= len;
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            LOGGER.warn("Error while sending artifact: {}", t.getMessage(), t);
+            done();
+        }
+
+        private synchronized void done() {
+            if (!done) {
+                done = true;
+                close(channel);
+                if (future != null) {
+                    future.release();
+                }
+                complete(asyncContext, started, count - remaining);
+            }
+        }
+    }
+
     public File download(String path) throws InvalidMavenArtifactRequest {
         if (path == null) {
             throw new InvalidMavenArtifactRequest();
@@ -364,10 +678,8 @@ public class MavenProxyServlet extends HttpServlet {
             LOGGER.info("Received request for maven artifact : {}", path);
             try {
                 MavenCoord artifact = convertArtifactPathToCoord(path);
-                Path download = resolver.resolve(artifact.groupId, artifact.artifactId, artifact.classifier, artifact.type, artifact.version).toPath();
-                Path tmpFile = Files.createTempFile("mvn-", ".tmp");
-                Files.copy(download, tmpFile, StandardCopyOption.REPLACE_EXISTING);
-                return tmpFile.toFile();
+                // served straight from the local repository, which is only updated by atomic renames
+                return resolver.resolve(artifact.groupId, artifact.artifactId, artifact.classifier, artifact.type, artifact.version);
             } catch (Exception e) {
                 LOGGER.warn(String.format("Could not find artifact : %s due to %s", path, e.getMessage()), e);
                 return null;
@@ -393,7 +705,8 @@ public class MavenProxyServlet extends HttpServlet {
             if (participants.decrementAndGet() == 0) {
                 requestMap.remove(path);
                 Object v = getValue();
-                if (v instanceof File) {
+                // merged metadata are written to temporary files
+                if (v instanceof File && ARTIFACT_METADATA_URL_REGEX.matcher(path).matches()) {
                     ((File) v).delete();
                 }
             }
@@ -487,6 +800,11 @@ public class MavenProxyServlet extends HttpServlet {
         Matcher artifactMatcher = ARTIFACT_REQUEST_URL_REGEX.matcher(path);
         Matcher metadataMatcher = ARTIFACT_METADATA_URL_REGEX.matcher(path);
 
+        if (cache != null) {
+            // the upload may replace a cached artifact and changes the metadata of the artifact
+            cache.invalidate(getParent(getParent(path)));
+        }
+
         if (metadataMatcher.matches()) {
             LOGGER.info("Received upload request for maven metadata : {}", path);
             try {
@@ -512,6 +830,11 @@ public class MavenProxyServlet extends HttpServlet {
         return false;
     }
 
+    private static String getParent(String path) {
+        int idx = path.lastIndexOf('/', path.endsWith("/") ? path.length() - 2 : path.length() - 1);
+        return idx >= 0 ? path.substring(0, idx + 1) : "";
+    }
+
     protected static String readMvnCoordsPath(File file) throws Exception {
         try (JarFile jarFile = new JarFile(file)) {
             String previous = null;
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.services.mavenproxy.internal;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ArtifactCacheTest {
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        ArtifactCache cache = new ArtifactCache(30, 20, 1000);
+        cache.put("a", new byte[10], 0, false);
+        cache.put("b", new byte[10], 0, false);
+        cache.put("c", new byte[10], 0, false);
+        assertNotNull(cache.get("a"));
+        cache.put("d", new byte[10], 0, false);
+
+        assertEquals(30, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertNotNull(cache.get("d"));
+
+        // too big to be cached
+        cache.put("e", new byte[25], 0, false);
+        assertNull(cache.get("e"));
+        assertEquals(3, cache.getCount());
+    }
+
+    @Test
+    public void testExpiresVolatileEntries() throws Exception {
+        ArtifactCache cache = new ArtifactCache(100, 100, 10);
+        cache.put("g/a/maven-metadata.xml", new byte[10], 0, true);
+        cache.put("g/a/1.0/a-1.0.jar", new byte[10], 0, false);
+        Thread.sleep(50);
+        assertNull(cache.get("g/a/maven-metadata.xml"));
+        assertNotNull(cache.get("g/a/1.0/a-1.0.jar"));
+        assertEquals(10, cache.getSize());
+
+        cache.invalidate("g/a/");
+        assertEquals(0, cache.getCount());
+        assertEquals(0, cache.getSize());
+    }
+
+}
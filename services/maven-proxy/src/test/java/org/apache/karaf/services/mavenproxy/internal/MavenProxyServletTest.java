@@ -380,6 +380,8 @@ public class MavenProxyServletTest {
             EasyMock.expect(request.startAsync()).andReturn(context);
             context.setTimeout(EasyMock.anyInt());
             EasyMock.expectLastCall();
+            EasyMock.expect(request.getHeader((String) EasyMock.anyObject())).andReturn(null).anyTimes();
+            EasyMock.expect(request.getDateHeader((String) EasyMock.anyObject())).andReturn(-1L).anyTimes();
 
             HttpServletResponse response = EasyMock.createMock(HttpServletResponse.class);
             final ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -402,14 +404,19 @@ public class MavenProxyServletTest {
 
 				@Override
 				public void setWriteListener(WriteListener writeListener) {
-					// TODO Auto-generated method stub
-					
+					try {
+						writeListener.onWritePossible();
+					} catch (IOException e) {
+						writeListener.onError(e);
+					}
 				}
             }).anyTimes();
             response.setStatus(EasyMock.anyInt());
             EasyMock.expectLastCall().anyTimes();
             response.setContentLength(EasyMock.anyInt());
             EasyMock.expectLastCall().anyTimes();
+            response.setContentLengthLong(EasyMock.anyLong());
+            EasyMock.expectLastCall().anyTimes();
             response.setContentType((String) EasyMock.anyObject());
             EasyMock.expectLastCall().anyTimes();
             response.setDateHeader((String) EasyMock.anyObject(), EasyMock.anyLong());
@@ -472,6 +479,8 @@ public class MavenProxyServletTest {
             EasyMock.expect(request.startAsync()).andReturn(context);
             context.setTimeout(EasyMock.anyInt());
             EasyMock.expectLastCall();
+            EasyMock.expect(request.getHeader((String) EasyMock.anyObject())).andReturn(null).anyTimes();
+            EasyMock.expect(request.getDateHeader((String) EasyMock.anyObject())).andReturn(-1L).anyTimes();
 
             HttpServletResponse response = EasyMock.createMock(HttpServletResponse.class);
             final ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -494,14 +503,19 @@ public class MavenProxyServletTest {
 
 				@Override
 				public void setWriteListener(WriteListener writeListener) {
-					// TODO Auto-generated method stub
-					
+					try {
+						writeListener.onWritePossible();
+					} catch (IOException e) {
+						writeListener.onError(e);
+					}
 				}
             }).anyTimes();
             response.setStatus(EasyMock.anyInt());
             EasyMock.expectLastCall().anyTimes();
             response.setContentLength(EasyMock.anyInt());
             EasyMock.expectLastCall().anyTimes();
+            response.setContentLengthLong(EasyMock.anyLong());
+            EasyMock.expectLastCall().anyTimes();
             response.setContentType((String) EasyMock.anyObject());
             EasyMock.expectLastCall().anyTimes();
             response.setDateHeader((String) EasyMock.anyObject(), EasyMock.anyLong());
@@ -538,6 +552,181 @@ public class MavenProxyServletTest {
         }
     }
 
+    @Test
+    public void testConditionalAndRangeDownload() throws Exception {
+        final String old = System.getProperty("karaf.data");
+        System.setProperty("karaf.data", new File("target").getCanonicalPath());
+        try {
+            File artifact = new File("target/test-artifact.jar");
+            FileUtils.writeByteArrayToFile(artifact, new byte[] { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 });
+
+            MavenResolver resolver = EasyMock.createMock(MavenResolver.class);
+            EasyMock.expect(resolver.resolve("org.apache.camel", "camel-core", "", "jar", "2.13.0")).andReturn(artifact).anyTimes();
+            EasyMock.replay(resolver);
+            MavenProxyServlet servlet = new MavenProxyServlet(resolver, 5, null, null, null);
+            servlet.init();
+
+            Map<String, String> headers = new HashMap<>();
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            assertEquals(HttpServletResponse.SC_OK, testGet(servlet, headers, baos));
+            Assert.assertArrayEquals(new byte[] { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 }, baos.toByteArray());
+            assertEquals("bytes", headers.get("Accept-Ranges"));
+            String etag = headers.get("ETag");
+
+            headers.clear();
+            headers.put("If-None-Match", etag);
+            baos.reset();
+            assertEquals(HttpServletResponse.SC_NOT_MODIFIED, testGet(servlet, headers, baos));
+            assertEquals(0, baos.size());
+
+            headers.clear();
+            headers.put("Range", "bytes=2-4");
+            baos.reset();
+            assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, testGet(servlet, headers, baos));
+            Assert.assertArrayEquals(new byte[] { 2, 3, 4 }, baos.toByteArray());
+            assertEquals("bytes 2-4/10", headers.get("Content-Range"));
+
+            headers.clear();
+            headers.put("Range", "bytes=-3");
+            baos.reset();
+            assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, testGet(servlet, headers, baos));
+            Assert.assertArrayEquals(new byte[] { 7, 8, 9 }, baos.toByteArray());
+
+            headers.clear();
+            headers.put("Range", "bytes=20-");
+            baos.reset();
+            assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, testGet(servlet, headers, baos));
+            assertEquals("bytes */10", headers.get("Content-Range"));
+
+            // the artifact is served from the local repository and must not be removed
+            assertTrue(artifact.isFile());
+            servlet.destroy();
+        } finally {
+            if (old != null) {
+                System.setProperty("karaf.data", old);
+            }
+        }
+    }
+
+    @Test
+    public void testCachedDownload() throws Exception {
+        final String old = System.getProperty("karaf.data");
+        System.setProperty("karaf.data", new File("target").getCanonicalPath());
+        try {
+            File artifact = new File("target/test-cached-artifact.jar");
+            FileUtils.writeByteArrayToFile(artifact, new byte[] { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 });
+
+            MavenResolver resolver = EasyMock.createMock(MavenResolver.class);
+            EasyMock.expect(resolver.resolve("org.apache.camel", "camel-core", "", "jar", "2.13.0")).andReturn(artifact).once();
+            EasyMock.replay(resolver);
+            ArtifactCache cache = new ArtifactCache(1024, 1024, 1000);
+            MavenProxyServlet servlet = new MavenProxyServlet(resolver, 5, null, null, null, cache);
+            servlet.init();
+
+            Map<String, String> headers = new HashMap<>();
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            assertEquals(HttpServletResponse.SC_OK, testGet(servlet, headers, baos));
+            String etag = headers.get("ETag");
+            baos.reset();
+            assertEquals(HttpServletResponse.SC_OK, testGet(servlet, headers, baos));
+            Assert.assertArrayEquals(new byte[] { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 }, baos.toByteArray());
+            assertEquals(etag, headers.get("ETag"));
+
+            EasyMock.verify(resolver);
+            assertEquals(1, cache.getHits());
+            assertEquals(1, cache.getMisses());
+            assertEquals(10, cache.getSize());
+
+            MavenProxyMBean mbean = new MavenProxyMBeanImpl(servlet);
+            assertEquals(2, mbean.getRequests());
+            assertEquals(20, mbean.getBytesServed());
+            mbean.clearCache();
+            assertEquals(0, mbean.getCacheEntries());
+            servlet.destroy();
+        } finally {
+            if (old != null) {
+                System.setProperty("karaf.data", old);
+            }
+        }
+    }
+
+    /**
+     * Sends a GET request with the given headers, which are replaced by the response headers.
+     */
+    private int testGet(MavenProxyServlet servlet, final Map<String, String> headers, final ByteArrayOutputStream baos) throws Exception {
+        AsyncContext context = EasyMock.createMock(AsyncContext.class);
+        context.setTimeout(EasyMock.anyInt());
+        EasyMock.expectLastCall();
+        final CountDownLatch latch = new CountDownLatch(1);
+        context.complete();
+        EasyMock.expectLastCall().andAnswer(new IAnswer<Object>() {
+            @Override
+            public Object answer() throws Throwable {
+                latch.countDown();
+                return null;
+            }
+        });
+
+        HttpServletRequest request = EasyMock.createMock(HttpServletRequest.class);
+        EasyMock.expect(request.getPathInfo()).andReturn("org/apache/camel/camel-core/2.13.0/camel-core-2.13.0.jar");
+        EasyMock.expect(request.startAsync()).andReturn(context);
+        for (String name : new String[] { "If-None-Match", "Range", "If-Range" }) {
+            EasyMock.expect(request.getHeader(name)).andReturn(headers.get(name)).anyTimes();
+        }
+        EasyMock.expect(request.getDateHeader((String) EasyMock.anyObject())).andReturn(-1L).anyTimes();
+
+        final int[] status = new int[1];
+        HttpServletResponse rm = EasyMock.createNiceMock(HttpServletResponse.class);
+        HttpServletResponse response = new HttpServletResponseWrapper(rm) {
+            @Override
+            public void setStatus(int sc) {
+                status[0] = sc;
+            }
+
+            @Override
+            public void setHeader(String name, String value) {
+                headers.put(name, value);
+            }
+
+            @Override
+            public ServletOutputStream getOutputStream() {
+                return new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        baos.write(b);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        baos.write(b, off, len);
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return true;
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener writeListener) {
+                        try {
+                            writeListener.onWritePossible();
+                        } catch (IOException e) {
+                            writeListener.onError(e);
+                        }
+                    }
+                };
+            }
+        };
+
+        EasyMock.makeThreadSafe(context, true);
+        EasyMock.replay(request, rm, context);
+        headers.clear();
+        servlet.doGet(request, response);
+        latch.await();
+        EasyMock.verify(request, context);
+        return status[0];
+    }
+
     @Test
     public void testJarUploadFullMvnPath() throws Exception {
         String jarPath = "org.acme/acme-core/1.0/acme-core-1.0.jar";
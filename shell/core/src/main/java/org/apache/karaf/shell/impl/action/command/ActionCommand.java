@@ -32,29 +32,45 @@ public class ActionCommand implements org.apache.karaf.shell.api.console.Command
 
     private final ManagerImpl manager;
     private final Class<? extends Action> actionClass;
+    private final Command command;
+    private volatile ActionMetadata metadata;
 
     public ActionCommand(ManagerImpl manager, Class<? extends Action> actionClass) {
         this.manager = manager;
         this.actionClass = actionClass;
+        this.command = actionClass.getAnnotation(Command.class);
     }
 
     public Class<? extends Action> getActionClass() {
         return actionClass;
     }
 
+    /**
+     * Returns the options and arguments of the action, computed on the first execution
+     * so that an invalid action only fails when it is used.
+     */
+    public ActionMetadata getMetadata() {
+        ActionMetadata m = metadata;
+        if (m == null) {
+            m = new ActionMetadata(actionClass);
+            metadata = m;
+        }
+        return m;
+    }
+
     @Override
     public String getScope() {
-        return actionClass.getAnnotation(Command.class).scope();
+        return command.scope();
     }
 
     @Override
     public String getName() {
-        return actionClass.getAnnotation(Command.class).name();
+        return command.name();
     }
 
     @Override
     public String getDescription() {
-        return actionClass.getAnnotation(Command.class).description();
+        return command.description();
     }
 
     @Override
@@ -79,7 +95,7 @@ public class ActionCommand implements org.apache.karaf.shell.api.console.Command
     public Object execute(Session session, List<Object> arguments) throws Exception {
         Action action = createNewAction(session);
         try {
-            if (new DefaultActionPreparator().prepare(action, session, arguments)) {
+            if (new DefaultActionPreparator().prepare(action, getMetadata(), session, arguments)) {
                 return action.execute();
             }
         } finally {
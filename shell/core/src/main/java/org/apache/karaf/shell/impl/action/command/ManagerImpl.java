@@ -26,6 +26,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.karaf.shell.api.action.Action;
 import org.apache.karaf.shell.api.action.Command;
@@ -44,6 +46,7 @@ public class ManagerImpl implements Manager {
     private final Registry dependencies;
     private final Registry registrations;
     private final Map<Class<?>, Object> instances = new HashMap<Class<?>, Object>();
+    private final ConcurrentMap<Class<?>, InjectionPoints> injectionPoints = new ConcurrentHashMap<Class<?>, InjectionPoints>();
     private final boolean allowCustomServices;
 
     public ManagerImpl(Registry dependencies, Registry registrations) {
@@ -67,40 +70,33 @@ public class ManagerImpl implements Manager {
                 throw new IllegalArgumentException("Class " + clazz.getName() + " is not annotated with @Service");
             }
         }
+        InjectionPoints points = getInjectionPoints(clazz);
         T instance = clazz.newInstance();
         // Inject services
-        for (Class<?> cl = clazz; cl != Object.class; cl = cl.getSuperclass()) {
-            for (Field field : cl.getDeclaredFields()) {
-                if (field.getAnnotation(Reference.class) != null) {
-                    GenericType type = new GenericType(field.getGenericType());
-                    Object value;
-                    if (type.getRawClass() == List.class) {
-                        Set<Object> set = new HashSet<Object>();
-                        set.addAll(registry.getServices(type.getActualTypeArgument(0).getRawClass()));
-                        if (registry != this.dependencies) {
-                            set.addAll(this.dependencies.getServices(type.getActualTypeArgument(0).getRawClass()));
-                        }
-                        value = new ArrayList<Object>(set);
-                    } else {
-                        value = registry.getService(type.getRawClass());
-                        if (value == null && registry != this.dependencies) {
-                            value = this.dependencies.getService(type.getRawClass());
-                        }
-                    }
-                    if (!allowCustomServices && value == null) {
-                        throw new IllegalStateException("No service matching " + field.getType().getName());
-                    }
-                    field.setAccessible(true);
-                    field.set(instance, value);
+        for (int i = 0; i < points.references.size(); i++) {
+            Field field = points.references.get(i);
+            GenericType type = points.types.get(i);
+            Object value;
+            if (type.getRawClass() == List.class) {
+                Set<Object> set = new HashSet<Object>();
+                set.addAll(registry.getServices(type.getActualTypeArgument(0).getRawClass()));
+                if (registry != this.dependencies) {
+                    set.addAll(this.dependencies.getServices(type.getActualTypeArgument(0).getRawClass()));
+                }
+                value = new ArrayList<Object>(set);
+            } else {
+                value = registry.getService(type.getRawClass());
+                if (value == null && registry != this.dependencies) {
+                    value = this.dependencies.getService(type.getRawClass());
                 }
             }
-        }
-        for (Method method : clazz.getDeclaredMethods()) {
-            Init ann = method.getAnnotation(Init.class);
-            if (ann != null && method.getParameterTypes().length == 0 && method.getReturnType() == void.class) {
-                method.setAccessible(true);
-                method.invoke(instance);
+            if (!allowCustomServices && value == null) {
+                throw new IllegalStateException("No service matching " + field.getType().getName());
             }
+            field.set(instance, value);
+        }
+        for (Method method : points.init) {
+            method.invoke(instance);
         }
         return instance;
     }
@@ -113,15 +109,20 @@ public class ManagerImpl implements Manager {
                 throw new IllegalArgumentException("Class " + clazz.getName() + " is not annotated with @Service");
             }
         }
-        for (Method method : clazz.getDeclaredMethods()) {
-            Destroy ann = method.getAnnotation(Destroy.class);
-            if (ann != null && method.getParameterTypes().length == 0 && method.getReturnType() == void.class) {
-                method.setAccessible(true);
-                method.invoke(instance);
-            }
+        for (Method method : getInjectionPoints(clazz).destroy) {
+            method.invoke(instance);
         }
     }
 
+    private InjectionPoints getInjectionPoints(Class<?> clazz) {
+        InjectionPoints points = injectionPoints.get(clazz);
+        if (points == null) {
+            points = new InjectionPoints(clazz);
+            injectionPoints.putIfAbsent(clazz, points);
+        }
+        return points;
+    }
+
     @Override
     public void register(Class<?> clazz) {
         if (!allowCustomServices) {
@@ -165,6 +166,7 @@ public class ManagerImpl implements Manager {
         synchronized (instances) {
             object = instances.remove(clazz);
         }
+        injectionPoints.remove(clazz);
         if (object != null) {
             registrations.unregister(object);
             if (object instanceof Completer) {
@@ -176,4 +178,38 @@ public class ManagerImpl implements Manager {
             }
         }
     }
+
+    /**
+     * Fields annotated with {@link Reference} and lifecycle methods of a class, scanned once.
+     */
+    private static class InjectionPoints {
+        final List<Field> references = new ArrayList<Field>();
+        final List<GenericType> types = new ArrayList<GenericType>();
+        final List<Method> init = new ArrayList<Method>();
+        final List<Method> destroy = new ArrayList<Method>();
+
+        InjectionPoints(Class<?> clazz) {
+            for (Class<?> cl = clazz; cl != Object.class; cl = cl.getSuperclass()) {
+                for (Field field : cl.getDeclaredFields()) {
+                    if (field.getAnnotation(Reference.class) != null) {
+                        field.setAccessible(true);
+                        references.add(field);
+                        types.add(new GenericType(field.getGenericType()));
+                    }
+                }
+            }
+            for (Method method : clazz.getDeclaredMethods()) {
+                if (method.getParameterTypes().length == 0 && method.getReturnType() == void.class) {
+                    if (method.getAnnotation(Init.class) != null) {
+                        method.setAccessible(true);
+                        init.add(method);
+                    }
+                    if (method.getAnnotation(Destroy.class) != null) {
+                        method.setAccessible(true);
+                        destroy.add(method);
+                    }
+                }
+            }
+        }
+    }
 }
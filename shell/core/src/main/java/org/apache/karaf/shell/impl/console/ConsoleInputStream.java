@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.impl.console;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Input of a console session, filled by a {@link Pipe}.
+ * Bytes are kept in a ring buffer, the pipe being blocked when it is full.
+ * A lock is used rather than the monitor of the stream so that a session
+ * run by a virtual thread does not pin its carrier thread while waiting.
+ */
+class ConsoleInputStream extends InputStream {
+
+    private final byte[] buffer;
+    private final Lock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private int head;
+    private int count;
+    private boolean eof;
+    private boolean shutdown;
+
+    ConsoleInputStream(int size) {
+        buffer = new byte[size];
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte b[], int off, int len) throws IOException {
+        if (b == null) {
+            throw new NullPointerException();
+        } else if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        } else if (len == 0) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            if (shutdown) {
+                return -1;
+            }
+            checkInterrupt();
+            while (count == 0) {
+                if (eof || shutdown) {
+                    return -1;
+                }
+                try {
+                    notEmpty.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                checkInterrupt();
+            }
+            int nb = Math.min(len, count);
+            int first = Math.min(nb, buffer.length - head);
+            System.arraycopy(buffer, head, b, off, first);
+            System.arraycopy(buffer, 0, b, off + first, nb - first);
+            head = (head + nb) % buffer.length;
+            count -= nb;
+            notFull.signalAll();
+            return nb;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int available() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks if the reader has been interrupted, before and after waiting for input.
+     */
+    protected void checkInterrupt() throws IOException {
+        if (Thread.interrupted()) {
+            throw new InterruptedIOException("Keyboard interruption");
+        }
+    }
+
+    /**
+     * Adds bytes to the buffer, waiting for the reader to make room if needed.
+     * The bytes which do not fit are dropped if the stream is shut down meanwhile.
+     */
+    void receive(byte[] b, int off, int len) throws InterruptedException {
+        lock.lock();
+        try {
+            while (len > 0 && !shutdown) {
+                if (count == buffer.length) {
+                    notFull.await();
+                    continue;
+                }
+                int tail = (head + count) % buffer.length;
+                int nb = Math.min(len, Math.min(buffer.length - count, buffer.length - tail));
+                System.arraycopy(b, off, buffer, tail, nb);
+                count += nb;
+                off += nb;
+                len -= nb;
+                notEmpty.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ends the stream once the buffered bytes have been read.
+     */
+    void receiveEof() {
+        lock.lock();
+        try {
+            eof = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ends the stream immediately, waking up the blocked reader and writer.
+     */
+    void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isShutdown() {
+        lock.lock();
+        try {
+            return shutdown;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
@@ -32,8 +32,9 @@ import java.lang.management.ManagementFactory;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -70,12 +71,24 @@ public class ConsoleSessionImpl implements Session {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ConsoleSessionImpl.class);
 
+    // Threads reading the input of the sessions, reused across sessions
+    private static final ExecutorService PIPES = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Karaf shell pipe thread");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     // Input stream
-    final BlockingQueue<Integer> queue = new ArrayBlockingQueue<Integer>(1024);
-    final ConsoleInputStream console = new ConsoleInputStream();
-    final Pipe pipe = new Pipe();
+    final ConsoleInputStream console = new ConsoleInputStream(1024) {
+        @Override
+        protected void checkInterrupt() throws IOException {
+            ConsoleSessionImpl.this.checkInterrupt();
+        }
+    };
+    final Pipe pipe;
     volatile boolean running;
-    volatile boolean eof;
 
     final SessionFactory factory;
     final ThreadIO threadIO;
@@ -110,6 +123,20 @@ public class ConsoleSessionImpl implements Session {
         this.err = err;
         this.closeCallback = closeCallback;
 
+        // Input pipe
+        pipe = new Pipe(in, console, err) {
+            @Override
+            protected boolean isIgnoreInterrupts() {
+                return ShellUtil.getBoolean(ConsoleSessionImpl.this, Session.IGNORE_INTERRUPTS);
+            }
+
+            @Override
+            protected void onInterrupt() {
+                reader.getCursorBuffer().clear();
+                ConsoleSessionImpl.this.interrupt();
+            }
+        };
+
         // Terminal
         terminal = term == null ? new JLineTerminal(new UnsupportedTerminal()) : term;
 
@@ -229,6 +256,7 @@ public class ConsoleSessionImpl implements Session {
             }
         }
         running = false;
+        console.shutdown();
         pipe.interrupt();
         if (thread != Thread.currentThread()) {
             thread.interrupt();
@@ -251,7 +279,7 @@ public class ConsoleSessionImpl implements Session {
             threadIO.setStreams(session.getKeyboard(), out, err);
             thread = Thread.currentThread();
             running = true;
-            pipe.start();
+            PIPES.execute(pipe);
             Properties brandingProps = Branding.loadBrandingProperties(terminal);
             welcome(brandingProps);
             setSessionProperties(brandingProps);
@@ -495,112 +523,4 @@ public class ConsoleSessionImpl implements Session {
         return parts[0];
     }
 
-    private class ConsoleInputStream extends InputStream {
-        private int read(boolean wait) throws IOException {
-            if (!running) {
-                return -1;
-            }
-            checkInterrupt();
-            if (eof && queue.isEmpty()) {
-                return -1;
-            }
-            Integer i;
-            if (wait) {
-                try {
-                    i = queue.take();
-                } catch (InterruptedException e) {
-                    throw new InterruptedIOException();
-                }
-                checkInterrupt();
-            } else {
-                i = queue.poll();
-            }
-            if (i == null) {
-                return -1;
-            }
-            return i;
-        }
-
-        @Override
-        public int read() throws IOException {
-            return read(true);
-        }
-
-        @Override
-        public int read(byte b[], int off, int len) throws IOException {
-            if (b == null) {
-                throw new NullPointerException();
-            } else if (off < 0 || len < 0 || len > b.length - off) {
-                throw new IndexOutOfBoundsException();
-            } else if (len == 0) {
-                return 0;
-            }
-
-            int nb = 1;
-            int i = read(true);
-            if (i < 0) {
-                return -1;
-            }
-            b[off++] = (byte) i;
-            while (nb < len) {
-                i = read(false);
-                if (i < 0) {
-                    return nb;
-                }
-                b[off++] = (byte) i;
-                nb++;
-            }
-            return nb;
-        }
-
-        @Override
-        public int available() throws IOException {
-            return queue.size();
-        }
-    }
-
-    private class Pipe extends Thread {
-        public Pipe() {
-            super("Karaf shell pipe thread");
-            setDaemon(true);
-        }
-
-        public void run() {
-            boolean useAvailable = !System.getProperty("os.name").toLowerCase().contains("windows");
-            try {
-                while (running) {
-                    try {
-                        while (useAvailable && in.available() == 0) {
-                            if (!running) {
-                                return;
-                            }
-                            Thread.sleep(50);
-                        }
-                        int c = in.read();
-                        if (c == -1) {
-                            return;
-                        } else if (c == 4 && !ShellUtil.getBoolean(ConsoleSessionImpl.this, Session.IGNORE_INTERRUPTS)) {
-                            err.print("^D");
-                            err.flush();
-                            return;
-                        } else if (c == 3 && !ShellUtil.getBoolean(ConsoleSessionImpl.this, Session.IGNORE_INTERRUPTS)) {
-                            err.println("^C");
-                            reader.getCursorBuffer().clear();
-                            ConsoleSessionImpl.this.interrupt();
-                        }
-                        queue.put(c);
-                    } catch (Throwable t) {
-                        return;
-                    }
-                }
-            } finally {
-                eof = true;
-                try {
-                    queue.put(-1);
-                } catch (InterruptedException e) {
-                }
-            }
-        }
-    }
-
 }
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.impl.console;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+
+/**
+ * Reads the input of a session in chunks, handling the interrupt (^C) and end of transmission (^D)
+ * keys while a command is executed.
+ *
+ * The pipe is blocked in the read of the input while the session is idle, and must be
+ * interrupted or the input closed to stop it.
+ */
+class Pipe implements Runnable {
+
+    private final InputStream in;
+    private final ConsoleInputStream console;
+    private final PrintStream err;
+    private Thread thread;
+
+    Pipe(InputStream in, ConsoleInputStream console, PrintStream err) {
+        this.in = in;
+        this.console = console;
+        this.err = err;
+    }
+
+    public synchronized void interrupt() {
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if ^C and ^D must be given to the session like any other key.
+     */
+    protected boolean isIgnoreInterrupts() {
+        return false;
+    }
+
+    /**
+     * Called when ^C is read, once the bytes read before it have been given to the session.
+     */
+    protected void onInterrupt() {
+    }
+
+    public void run() {
+        synchronized (this) {
+            thread = Thread.currentThread();
+        }
+        byte[] buf = new byte[1024];
+        try {
+            while (!console.isShutdown()) {
+                try {
+                    int nb = in.read(buf);
+                    if (nb < 0) {
+                        return;
+                    }
+                    int start = 0;
+                    for (int i = 0; i < nb; i++) {
+                        int c = buf[i];
+                        if ((c == 3 || c == 4) && !isIgnoreInterrupts()) {
+                            console.receive(buf, start, i - start);
+                            start = i;
+                            if (c == 4) {
+                                err.print("^D");
+                                err.flush();
+                                return;
+                            }
+                            err.println("^C");
+                            onInterrupt();
+                        }
+                    }
+                    console.receive(buf, start, nb - start);
+                } catch (Throwable t) {
+                    return;
+                }
+            }
+        } finally {
+            // make sure the pooled thread is not interrupted once reused
+            synchronized (this) {
+                thread = null;
+            }
+            Thread.interrupted();
+            console.receiveEof();
+        }
+    }
+
+}
@@ -71,7 +71,7 @@ public class LocalConsoleManager {
             public Session run() {
                 String encoding = getEncoding();
                 session = sessionFactory.create(
-                                      StreamWrapUtil.reWrapIn(terminal, System.in),
+                                      new InterruptibleInputStream(StreamWrapUtil.reWrapIn(terminal, System.in)),
                                       StreamWrapUtil.reWrap(System.out), 
                                       StreamWrapUtil.reWrap(System.err),
                                       new JLineTerminal(terminal),
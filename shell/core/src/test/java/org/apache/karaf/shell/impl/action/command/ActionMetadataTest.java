@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.impl.action.command;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Argument;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ActionMetadataTest {
+
+    @Test
+    public void testMetadata() {
+        ActionMetadata metadata = new ActionMetadata(MyAction.class);
+        assertEquals("test", metadata.getCommand().scope());
+        assertEquals(2, metadata.getOptions().size());
+        assertSame(metadata.getOption("-v"), metadata.getOption("--verbose"));
+        assertEquals("-n", metadata.getOption("--count").name());
+        assertNull(metadata.getOption("--unknown"));
+        assertEquals(2, metadata.getOrderedArguments().size());
+        assertEquals("first", metadata.getOrderedArguments().get(0).name());
+        assertEquals("others", metadata.getOrderedArguments().get(1).name());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingArgumentIndex() {
+        new ActionMetadata(InvalidAction.class);
+    }
+
+    @Test
+    public void testPrepare() throws Exception {
+        ActionMetadata metadata = new ActionMetadata(MyAction.class);
+        MyAction action = new MyAction();
+        List<Object> params = Arrays.<Object>asList("--verbose", "--count", "3", "a", "b", "c");
+        assertTrue(new DefaultActionPreparator().prepare(action, metadata, null, params));
+        assertTrue(action.verbose);
+        assertEquals(3, action.count);
+        assertEquals("a", action.first);
+        assertEquals(Arrays.asList("b", "c"), action.others);
+    }
+
+    @Command(scope = "test", name = "action")
+    public static class MyAction implements Action {
+        @Option(name = "-v", aliases = "--verbose")
+        boolean verbose;
+
+        @Option(name = "-n", aliases = "--count")
+        int count;
+
+        @Argument(index = 0, required = true)
+        String first;
+
+        @Argument(index = 1, multiValued = true)
+        List<String> others;
+
+        @Override
+        public Object execute() throws Exception {
+            return null;
+        }
+    }
+
+    @Command(scope = "test", name = "invalid")
+    public static class InvalidAction implements Action {
+        @Argument(index = 1)
+        String second;
+
+        @Override
+        public Object execute() throws Exception {
+            return null;
+        }
+    }
+
+}
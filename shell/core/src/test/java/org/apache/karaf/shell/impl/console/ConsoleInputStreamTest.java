@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.impl.console;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ConsoleInputStreamTest {
+
+    @Test
+    public void testWrapAround() throws Exception {
+        ConsoleInputStream console = new ConsoleInputStream(8);
+        console.receive(bytes("abcdef"), 0, 6);
+        assertEquals("abcd", read(console, 4));
+        // the second chunk is stored at the end and the start of the buffer
+        console.receive(bytes("ghijkl"), 0, 6);
+        assertEquals(8, console.available());
+        assertEquals("efghijkl", read(console, 8));
+        assertEquals(0, console.available());
+    }
+
+    @Test
+    public void testReceiveBlocksWhenFull() throws Exception {
+        final ConsoleInputStream console = new ConsoleInputStream(8);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> writer = executor.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    console.receive(bytes("0123456789abcdefghij"), 0, 20);
+                    return null;
+                }
+            });
+            StringBuilder sb = new StringBuilder();
+            while (sb.length() < 20) {
+                sb.append(read(console, 3));
+            }
+            assertEquals("0123456789abcdefghij", sb.toString());
+            writer.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testEof() throws Exception {
+        ConsoleInputStream console = new ConsoleInputStream(8);
+        console.receive(bytes("ab"), 0, 2);
+        console.receiveEof();
+        // the buffered bytes are read before the end of the stream
+        assertEquals("ab", read(console, 8));
+        assertEquals(-1, console.read());
+    }
+
+    @Test
+    public void testShutdownWakesBlockedReader() throws Exception {
+        final ConsoleInputStream console = new ConsoleInputStream(8);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> reader = executor.submit(new Callable<Integer>() {
+                public Integer call() throws Exception {
+                    return console.read();
+                }
+            });
+            Thread.sleep(100);
+            assertFalse(reader.isDone());
+            console.shutdown();
+            assertEquals(-1, (int) reader.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes();
+    }
+
+    private static String read(ConsoleInputStream console, int len) throws IOException {
+        byte[] b = new byte[len];
+        int nb = console.read(b, 0, len);
+        return new String(Arrays.copyOf(b, nb));
+    }
+
+}
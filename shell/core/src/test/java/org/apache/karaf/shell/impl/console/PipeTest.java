@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.impl.console;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class PipeTest {
+
+    @Test
+    public void testInterruptMidChunk() throws Exception {
+        final ConsoleInputStream console = new ConsoleInputStream(1024);
+        final int[] available = { -1 };
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        Pipe pipe = new Pipe(new ByteArrayInputStream(bytes("ab\u0003cd")), console, new PrintStream(err, true)) {
+            @Override
+            protected void onInterrupt() {
+                available[0] = console.available();
+            }
+        };
+        pipe.run();
+        // the bytes before ^C are given to the session before it is interrupted
+        assertEquals(2, available[0]);
+        assertEquals("ab\u0003cd", read(console, 8));
+        assertEquals(-1, console.read());
+        assertEquals("^C", err.toString().trim());
+    }
+
+    @Test
+    public void testEndOfTransmission() throws Exception {
+        ConsoleInputStream console = new ConsoleInputStream(1024);
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        Pipe pipe = new Pipe(new ByteArrayInputStream(bytes("ab\u0004cd")), console, new PrintStream(err, true));
+        pipe.run();
+        // ^D ends the stream, the bytes after it are dropped
+        assertEquals("ab", read(console, 8));
+        assertEquals(-1, console.read());
+        assertEquals("^D", err.toString());
+    }
+
+    @Test
+    public void testIgnoreInterrupts() throws Exception {
+        ConsoleInputStream console = new ConsoleInputStream(1024);
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        Pipe pipe = new Pipe(new ByteArrayInputStream(bytes("ab\u0003c\u0004d")), console, new PrintStream(err, true)) {
+            @Override
+            protected boolean isIgnoreInterrupts() {
+                return true;
+            }
+        };
+        pipe.run();
+        assertEquals("ab\u0003c\u0004d", read(console, 8));
+        assertEquals(-1, console.read());
+        assertEquals(0, err.size());
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes();
+    }
+
+    private static String read(ConsoleInputStream console, int len) throws IOException {
+        byte[] b = new byte[len];
+        int nb = console.read(b, 0, len);
+        return new String(Arrays.copyOf(b, nb));
+    }
+
+}
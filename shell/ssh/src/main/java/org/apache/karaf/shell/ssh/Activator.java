@@ -54,6 +54,7 @@ public class Activator extends BaseActivator implements ManagedService {
     KarafAgentFactory agentFactory;
     SessionFactory sessionFactory;
     SshServer server;
+    ShellFactoryImpl shellFactory;
 
     @Override
     protected void doOpen() throws Exception {
@@ -116,6 +117,10 @@ public class Activator extends BaseActivator implements ManagedService {
             }
             server = null;
         }
+        if (shellFactory != null) {
+            shellFactory.close();
+            shellFactory = null;
+        }
         super.doStop();
     }
 
@@ -131,6 +136,10 @@ public class Activator extends BaseActivator implements ManagedService {
         String macs           = getString("macs", "hmac-sha1");
         String ciphers        = getString("ciphers", "aes256-ctr,aes192-ctr,aes128-ctr,arcfour256");
         String welcomeBanner  = getString("welcomeBanner", null);
+        int outputBufferSize  = getInt("sshOutputBufferSize", ShellFactoryImpl.DEFAULT_OUTPUT_BUFFER_SIZE);
+        long outputFlushDelay = getLong("sshOutputFlushDelay", ShellFactoryImpl.DEFAULT_OUTPUT_FLUSH_DELAY);
+        int maxSessions       = getInt("sshMaxSessions", ShellFactoryImpl.DEFAULT_MAX_SESSIONS);
+        boolean virtualThreads = getBoolean("sshVirtualThreads", false);
         
         SimpleGeneratorHostKeyProvider keyPairProvider = new SimpleGeneratorHostKeyProvider();
         keyPairProvider.setPath(hostKey);
@@ -147,7 +156,8 @@ public class Activator extends BaseActivator implements ManagedService {
         server.setHost(sshHost);
         server.setMacFactories(SshUtils.buildMacs(macs));
         server.setCipherFactories(SshUtils.buildCiphers(ciphers));
-        server.setShellFactory(new ShellFactoryImpl(sessionFactory));
+        shellFactory = new ShellFactoryImpl(sessionFactory, outputBufferSize, outputFlushDelay, maxSessions, virtualThreads);
+        server.setShellFactory(shellFactory);
         server.setCommandFactory(new ScpCommandFactory(new ShellCommandFactory(sessionFactory)));
         server.setSubsystemFactories(Arrays.<NamedFactory<org.apache.sshd.server.Command>>asList(new SftpSubsystem.Factory()));
         server.setKeyPairProvider(keyPairProvider);
@@ -27,6 +27,17 @@ import java.io.PrintStream;
 import java.nio.charset.Charset;
 import java.security.PrivilegedAction;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.security.auth.Subject;
 
@@ -41,16 +52,62 @@ import org.apache.sshd.server.Environment;
 import org.apache.sshd.server.ExitCallback;
 import org.apache.sshd.server.SessionAware;
 import org.apache.sshd.server.session.ServerSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * SSHD {@link org.apache.sshd.server.Command} factory which provides access to
  * Shell.
+ *
+ * The sessions are run by a shared pool of threads, which are kept for a minute
+ * once idle so that they can be reused by the next sessions, or by virtual threads
+ * when supported by the JVM. The number of concurrent sessions can be bounded, the
+ * sessions opened above that limit being refused.
  */
 public class ShellFactoryImpl implements Factory<Command> {
+
+    public static final int DEFAULT_OUTPUT_BUFFER_SIZE = 8192;
+    public static final long DEFAULT_OUTPUT_FLUSH_DELAY = 10;
+    public static final int DEFAULT_MAX_SESSIONS = 0; // Unbounded
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShellFactoryImpl.class);
+
+    private static final ScheduledExecutorService FLUSHER = createFlusher();
+
     private SessionFactory sessionFactory;
+    private final int outputBufferSize;
+    private final long outputFlushDelay;
+    private final Semaphore sessions;
+    private final ExecutorService executor;
 
     public ShellFactoryImpl(SessionFactory sessionFactory) {
+        this(sessionFactory, DEFAULT_OUTPUT_BUFFER_SIZE, DEFAULT_OUTPUT_FLUSH_DELAY);
+    }
+
+    public ShellFactoryImpl(SessionFactory sessionFactory, int outputBufferSize, long outputFlushDelay) {
+        this(sessionFactory, outputBufferSize, outputFlushDelay, DEFAULT_MAX_SESSIONS, false);
+    }
+
+    /**
+     * @param outputBufferSize the size of the buffer of the output streams of the sessions, in bytes.
+     * @param outputFlushDelay the minimum delay between two flushes of the output streams, in milliseconds.
+     * @param maxSessions      the maximum number of concurrent sessions, or 0 for no limit.
+     * @param virtualThreads   <code>true</code> to run the sessions in virtual threads if the JVM supports them.
+     */
+    public ShellFactoryImpl(SessionFactory sessionFactory, int outputBufferSize, long outputFlushDelay,
+                            int maxSessions, boolean virtualThreads) {
         this.sessionFactory = sessionFactory;
+        this.outputBufferSize = outputBufferSize;
+        this.outputFlushDelay = outputFlushDelay;
+        this.sessions = maxSessions > 0 ? new Semaphore(maxSessions) : null;
+        this.executor = createExecutor(virtualThreads);
+    }
+
+    /**
+     * Stops the threads of the sessions once they are closed.
+     */
+    public void close() {
+        executor.shutdown();
     }
 
     public Command create() {
@@ -75,11 +132,11 @@ public class ShellFactoryImpl implements Factory<Command> {
         }
 
         public void setOutputStream(final OutputStream out) {
-            this.out = out;
+            this.out = new LfToCrLfFilterOutputStream(out, outputBufferSize, outputFlushDelay);
         }
 
         public void setErrorStream(final OutputStream err) {
-            this.err = err;
+            this.err = new LfToCrLfFilterOutputStream(err, outputBufferSize, outputFlushDelay);
         }
 
         public void setExitCallback(ExitCallback callback) {
@@ -91,6 +148,12 @@ public class ShellFactoryImpl implements Factory<Command> {
         }
 
         public void start(final Environment env) throws IOException {
+            if (sessions != null && !sessions.tryAcquire()) {
+                err.write("Too many concurrent sessions, please retry later\n".getBytes());
+                err.flush();
+                throw new IOException("Unable to start shell: too many concurrent sessions");
+            }
+            boolean started = false;
             try {
                 final Subject subject = ShellImpl.this.session != null ? ShellImpl.this.session
                         .getAttribute(KarafJaasAuthenticator.SUBJECT_ATTRIBUTE_KEY) : null;
@@ -102,25 +165,31 @@ public class ShellFactoryImpl implements Factory<Command> {
                 };
                 String encoding = getEncoding();
                 final Session session = sessionFactory.create(in,
-                        lfToCrLfPrintStream(out), lfToCrLfPrintStream(err), terminal, encoding, destroyCallback);
+                        new PrintStream(out, true), new PrintStream(err, true), terminal, encoding, destroyCallback);
                 for (Map.Entry<String, String> e : env.getEnv().entrySet()) {
                     session.put(e.getKey(), e.getValue());
                 }
-                JaasHelper.doAs(subject, new PrivilegedAction<Object>() {
-                    public Object run() {
-                        new Thread(session, "Karaf ssh console user " + ShellUtil.getCurrentUserName()).start();
-                        return null;
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            runSession(session, subject);
+                        } finally {
+                            if (sessions != null) {
+                                sessions.release();
+                            }
+                        }
                     }
                 });
+                started = true;
             } catch (Exception e) {
                 throw (IOException) new IOException("Unable to start shell").initCause(e);
+            } finally {
+                if (!started && sessions != null) {
+                    sessions.release();
+                }
             }
         }
 
-        private PrintStream lfToCrLfPrintStream(OutputStream stream) {
-            return new PrintStream(new LfToCrLfFilterOutputStream(stream), true);
-        }
-
         public void destroy() {
             if (!closed) {
                 closed = true;
@@ -132,6 +201,52 @@ public class ShellFactoryImpl implements Factory<Command> {
 
     }
 
+    private static void runSession(final Session session, Subject subject) {
+        final Thread thread = Thread.currentThread();
+        final String name = thread.getName();
+        try {
+            JaasHelper.doAs(subject, new PrivilegedAction<Object>() {
+                public Object run() {
+                    thread.setName("Karaf ssh console user " + ShellUtil.getCurrentUserName());
+                    session.run();
+                    return null;
+                }
+            });
+        } finally {
+            thread.setName(name);
+        }
+    }
+
+    private static ExecutorService createExecutor(boolean virtualThreads) {
+        ThreadFactory factory = virtualThreads ? createVirtualThreadFactory() : null;
+        if (factory != null) {
+            // virtual threads are cheap to create and should not be pooled
+            return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 0, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(), factory);
+        }
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "Karaf ssh session " + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    private static ThreadFactory createVirtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "Karaf ssh session ", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (Exception e) {
+            LOGGER.warn("Virtual threads are not supported by this JVM, using platform threads for ssh sessions");
+            return null;
+        }
+    }
+
     /**
      * Get the default encoding.  Will first look at the LC_CTYPE environment variable, then the input.encoding
      * system property, then the default charset according to the JVM.
@@ -186,24 +301,176 @@ public class ShellFactoryImpl implements Factory<Command> {
         }
     }
 
+    private static ScheduledExecutorService createFlusher() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Karaf ssh output flusher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.setKeepAliveTime(1, TimeUnit.MINUTES);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Buffered output stream converting line feeds to carriage return / line feed pairs.
+     *
+     * Arrays are converted and copied in bulk to the buffer, which is written to the underlying
+     * stream when full. Flushes are throttled: a flush is done immediately if the previous one
+     * is older than <code>flushDelay</code> milliseconds, else it is delayed, so that the large
+     * output of a command is sent in full packets while the echo of the console stays immediate.
+     * Writes may block on the ssh channel, so a lock is used instead of the monitor of the
+     * stream to not pin the carrier of a session run by a virtual thread.
+     */
     // TODO: remove this class when sshd use lf->crlf conversion by default
-    public class LfToCrLfFilterOutputStream extends FilterOutputStream {
+    public static class LfToCrLfFilterOutputStream extends FilterOutputStream {
 
+        private final byte[] buffer;
+        private final long flushDelay;
+        private final Lock lock = new ReentrantLock();
+        private int count;
         private boolean lastWasCr;
+        private long lastFlush;
+        private boolean flushScheduled;
+        private boolean closed;
 
         public LfToCrLfFilterOutputStream(OutputStream out) {
+            this(out, DEFAULT_OUTPUT_BUFFER_SIZE, 0);
+        }
+
+        public LfToCrLfFilterOutputStream(OutputStream out, int bufferSize, long flushDelay) {
             super(out);
+            this.buffer = new byte[Math.max(bufferSize, 16)];
+            this.flushDelay = TimeUnit.MILLISECONDS.toNanos(flushDelay);
+            this.lastFlush = System.nanoTime() - this.flushDelay;
         }
 
         @Override
         public void write(int b) throws IOException {
-            if (!lastWasCr && b == '\n') {
-                out.write('\r');
-                out.write('\n');
+            lock.lock();
+            try {
+                if (!lastWasCr && b == '\n') {
+                    append('\r');
+                }
+                append(b);
+                lastWasCr = b == '\r';
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || off + len > b.length) {
+                throw new IndexOutOfBoundsException();
+            }
+            lock.lock();
+            try {
+                int start = off;
+                int end = off + len;
+                boolean cr = lastWasCr;
+                for (int i = off; i < end; i++) {
+                    if (b[i] == '\n' && !cr) {
+                        append(b, start, i - start);
+                        append('\r');
+                        start = i;
+                    }
+                    cr = b[i] == '\r';
+                }
+                append(b, start, end - start);
+                lastWasCr = cr;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                if (flushDelay <= 0 || now - lastFlush >= flushDelay) {
+                    doFlush(now);
+                } else if (!flushScheduled) {
+                    flushScheduled = true;
+                    FLUSHER.schedule(new Runnable() {
+                        public void run() {
+                            scheduledFlush();
+                        }
+                    }, flushDelay - (now - lastFlush), TimeUnit.NANOSECONDS);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    doFlush(System.nanoTime());
+                } finally {
+                    out.close();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void scheduledFlush() {
+            lock.lock();
+            try {
+                flushScheduled = false;
+                if (!closed) {
+                    try {
+                        doFlush(System.nanoTime());
+                    } catch (IOException e) {
+                        // Ignore
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void doFlush(long now) throws IOException {
+            writeBuffer();
+            out.flush();
+            lastFlush = now;
+        }
+
+        private void append(int b) throws IOException {
+            if (count == buffer.length) {
+                writeBuffer();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        private void append(byte[] b, int off, int len) throws IOException {
+            if (len >= buffer.length) {
+                writeBuffer();
+                out.write(b, off, len);
             } else {
-                out.write(b);
+                if (len > buffer.length - count) {
+                    writeBuffer();
+                }
+                System.arraycopy(b, off, buffer, count, len);
+                count += len;
+            }
+        }
+
+        private void writeBuffer() throws IOException {
+            if (count > 0) {
+                out.write(buffer, 0, count);
+                count = 0;
             }
-            lastWasCr = b == '\r';
         }
 
     }
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.ssh;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.apache.karaf.shell.ssh.ShellFactoryImpl.LfToCrLfFilterOutputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LfToCrLfFilterOutputStreamTest {
+
+    @Test
+    public void testConversion() throws IOException {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        LfToCrLfFilterOutputStream out = new LfToCrLfFilterOutputStream(target, 16, 0);
+        out.write("a\nb\r\nc".getBytes());
+        out.write('\r');
+        out.write("\n\nd\r".getBytes());
+        out.write('\n');
+        out.write("a line longer than the buffer\n".getBytes());
+        out.flush();
+        Assert.assertEquals("a\r\nb\r\nc\r\n\r\nd\r\na line longer than the buffer\r\n", target.toString());
+    }
+
+    @Test
+    public void testDelayedFlush() throws Exception {
+        CountingOutputStream target = new CountingOutputStream();
+        LfToCrLfFilterOutputStream out = new LfToCrLfFilterOutputStream(target, 1024, 200);
+        out.write("first\n".getBytes());
+        out.flush();
+        Assert.assertEquals(1, target.flushes);
+        Assert.assertEquals("first\r\n", target.toString());
+
+        // following flushes are coalesced
+        for (int i = 0; i < 10; i++) {
+            out.write("line\n".getBytes());
+            out.flush();
+        }
+        Assert.assertEquals(1, target.flushes);
+        Assert.assertEquals("first\r\n", target.toString());
+        Thread.sleep(500);
+        Assert.assertEquals(2, target.flushes);
+        Assert.assertEquals(7 + 10 * 6, target.size());
+
+        // pending output is written when closed
+        out.write("last\n".getBytes());
+        out.flush();
+        out.close();
+        Assert.assertTrue(target.toString().endsWith("line\r\nlast\r\n"));
+    }
+
+    private static class CountingOutputStream extends ByteArrayOutputStream {
+        int flushes;
+
+        @Override
+        public synchronized void flush() {
+            flushes++;
+        }
+    }
+
+}
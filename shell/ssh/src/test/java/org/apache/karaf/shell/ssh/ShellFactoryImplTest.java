@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.ssh;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.karaf.shell.api.console.Session;
+import org.apache.karaf.shell.api.console.SessionFactory;
+import org.apache.karaf.shell.api.console.Terminal;
+import org.apache.sshd.server.Command;
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.ExitCallback;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ShellFactoryImplTest {
+
+    @Test
+    public void testMaxSessionsFailFast() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch exit = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        Session session = EasyMock.createNiceMock(Session.class);
+        session.run();
+        EasyMock.expectLastCall().andAnswer(new IAnswer<Object>() {
+            public Object answer() throws Throwable {
+                started.countDown();
+                exit.await(10, TimeUnit.SECONDS);
+                return null;
+            }
+        }).once();
+        session.run();
+        EasyMock.expectLastCall().andAnswer(new IAnswer<Object>() {
+            public Object answer() throws Throwable {
+                done.countDown();
+                return null;
+            }
+        }).once();
+        SessionFactory sessionFactory = EasyMock.createMock(SessionFactory.class);
+        EasyMock.expect(sessionFactory.create(EasyMock.<InputStream>anyObject(), EasyMock.<PrintStream>anyObject(),
+                EasyMock.<PrintStream>anyObject(), EasyMock.<Terminal>anyObject(), EasyMock.<String>anyObject(),
+                EasyMock.<Runnable>anyObject())).andReturn(session).times(2);
+        Environment env = EasyMock.createNiceMock(Environment.class);
+        EasyMock.expect(env.getEnv()).andReturn(Collections.<String, String>emptyMap()).anyTimes();
+        EasyMock.replay(session, sessionFactory, env);
+
+        ShellFactoryImpl factory = new ShellFactoryImpl(sessionFactory, 1024, 0, 1, false);
+        try {
+            start(factory, env, new ByteArrayOutputStream());
+            Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            // the only slot is used: the session is refused without waiting for it
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            try {
+                start(factory, env, err);
+                Assert.fail("The session should have been refused");
+            } catch (IOException e) {
+                // expected
+            }
+            Assert.assertEquals("Too many concurrent sessions, please retry later\r\n", err.toString());
+
+            // the slot is released once the first session ends
+            exit.countDown();
+            long timeout = System.currentTimeMillis() + 10000;
+            while (true) {
+                try {
+                    start(factory, env, new ByteArrayOutputStream());
+                    break;
+                } catch (IOException e) {
+                    Assert.assertTrue("The slot was not released", System.currentTimeMillis() < timeout);
+                    Thread.sleep(10);
+                }
+            }
+            Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+            EasyMock.verify(sessionFactory);
+        } finally {
+            factory.close();
+        }
+    }
+
+    private static void start(ShellFactoryImpl factory, Environment env, ByteArrayOutputStream err) throws IOException {
+        Command shell = factory.create();
+        shell.setInputStream(new ByteArrayInputStream(new byte[0]));
+        shell.setOutputStream(new ByteArrayOutputStream());
+        shell.setErrorStream(err);
+        shell.setExitCallback(EasyMock.createNiceMock(ExitCallback.class));
+        shell.start(env);
+    }
+
+}
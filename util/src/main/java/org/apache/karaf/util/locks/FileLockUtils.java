@@ -24,6 +24,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.channels.FileLock;
+import java.util.Arrays;
 import org.apache.felix.utils.properties.Properties;
 
 public final class FileLockUtils {
@@ -84,15 +85,25 @@ public final class FileLockUtils {
                 props.load(new ByteArrayInputStream(buffer));
                 callback.run(props);
                 if (writeToFile) {
-                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                    props.store(baos, null);
-                    file.setLength(0);
-                    file.write(baos.toByteArray());
+                    write(file, buffer, props);
                 }
             }
         });
     }
 
+    /**
+     * Stores the properties, leaving the file untouched if its content does not change.
+     */
+    private static void write(RandomAccessFile file, byte[] previous, Properties props) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        props.store(baos, null);
+        byte[] data = baos.toByteArray();
+        if (!Arrays.equals(data, previous)) {
+            file.setLength(0);
+            file.write(data);
+        }
+    }
+
     public static <T> T execute(File file, final CallableWithProperties<T> callback, final boolean writeToFile) throws IOException {
         return execute(file, new Callable<T>() {
             public T call(RandomAccessFile file) throws IOException {
@@ -102,10 +113,7 @@ public final class FileLockUtils {
                 props.load(new ByteArrayInputStream(buffer));
                 T result = callback.call(props);
                 if (writeToFile) {
-                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                    props.store(baos, null);
-                    file.setLength(0);
-                    file.write(baos.toByteArray());
+                    write(file, buffer, props);
                 }
                 return result;
             }
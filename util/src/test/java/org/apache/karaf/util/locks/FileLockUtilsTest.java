@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.util.locks;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.felix.utils.properties.Properties;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FileLockUtilsTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testUnchangedPropertiesAreNotWritten() throws Exception {
+        File file = tempFolder.newFile("test.properties");
+        setProperty(file, "key", "value");
+        assertTrue(file.setLastModified(file.lastModified() - 60000));
+        long lastModified = file.lastModified();
+        long length = file.length();
+
+        setProperty(file, "key", "value");
+        assertEquals(lastModified, file.lastModified());
+        assertEquals(length, file.length());
+
+        setProperty(file, "key", "other");
+        assertTrue(file.lastModified() != lastModified);
+        String value = FileLockUtils.execute(file, new FileLockUtils.CallableWithProperties<String>() {
+            public String call(Properties properties) throws IOException {
+                return properties.get("key");
+            }
+        }, false);
+        assertEquals("other", value);
+    }
+
+    private static void setProperty(File file, final String key, final String value) throws IOException {
+        FileLockUtils.execute(file, new FileLockUtils.RunnableWithProperties() {
+            public void run(Properties properties) throws IOException {
+                properties.put(key, value);
+            }
+        }, true);
+    }
+
+}